@@ -0,0 +1,248 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * 自适应替换缓存
+ * ARC (adaptive replacement cache).
+ *
+ * <p>
+ * Resident objects are kept in two LRU lists: T1 holds objects seen only once recently,
+ * T2 holds objects seen at least twice. Keys of objects evicted from T1 and T2 are remembered
+ * in ghost lists B1 and B2. A miss that hits a ghost list means that the corresponding
+ * resident list was too small, so the target size of T1 (<code>p</code>) is adapted: it grows
+ * on B1 hits and shrinks on B2 hits. This way cache continuously balances between recency
+ * (LRU) and frequency (LFU) for the current workload. Hits, inserts and replacements
+ * are constant time; ghost lists contain only keys, at most <code>cacheSize</code> of them
+ * in total. When timeout is used, pruning scans the whole cache for expired objects.
+ * <p>
+ * Hits move objects between lists, so <code>get</code> uses the write lock.
+ * Timeouts work as in other caches: expired objects are removed on access or on prune.
+ * <p>
+ * Summary for ARC: fast, adaptive, scan resistant.
+ */
+public class ARCCache<K, V> extends AbstractCacheMap<K, V> {
+
+	// 常驻列表, 最近最少使用的在最前面
+	protected final LinkedHashSet<K> t1 = new LinkedHashSet<K>();
+	protected final LinkedHashSet<K> t2 = new LinkedHashSet<K>();
+
+	// 幽灵列表, 只存键
+	protected final LinkedHashSet<K> b1 = new LinkedHashSet<K>();
+	protected final LinkedHashSet<K> b2 = new LinkedHashSet<K>();
+
+	// target size of t1
+	protected int p;
+
+	// state of the current insert
+	private K insertKey;
+	private boolean insertToT2;
+	private boolean ghostHitB2;
+	private boolean dropFromT1;
+
+	public ARCCache(int cacheSize) {
+		this(cacheSize, 0);
+	}
+
+	/**
+	 * Creates a new ARC cache. Cache size must be positive,
+	 * since adaptation is relative to it.
+	 */
+	public ARCCache(int cacheSize, long timeout) {
+		if (cacheSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+		}
+		this.cacheSize = cacheSize;
+		this.timeout = timeout;
+		this.exclusiveHit = true;
+		cacheMap = new HashMap<K, CacheObject<V>>(cacheSize + 1);
+	}
+
+	/**
+	 * Returns current target size of the recency list.
+	 */
+	public int getTargetRecencySize() {
+		return p;
+	}
+
+	// ---------------------------------------------------------------- hooks
+
+	/**
+	 * Adapts target size on ghost hit and trims ghost lists on complete miss.
+	 */
+	@Override
+	protected void beforeInsert(K key) {
+		insertKey = key;
+		insertToT2 = false;
+		ghostHitB2 = false;
+		dropFromT1 = false;
+
+		if (cacheMap.containsKey(key)) {
+			insertToT2 = true;		// update of resident object counts as a hit
+			return;
+		}
+		if (b1.contains(key)) {
+			p = Math.min(cacheSize, p + Math.max(b2.size() / b1.size(), 1));
+			b1.remove(key);
+			insertToT2 = true;
+			return;
+		}
+		if (b2.contains(key)) {
+			p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+			b2.remove(key);
+			insertToT2 = true;
+			ghostHitB2 = true;
+			return;
+		}
+
+		// complete miss
+		int l1 = t1.size() + b1.size();
+		if (l1 >= cacheSize) {
+			if (t1.size() < cacheSize) {
+				removeFirst(b1);
+			} else {
+				dropFromT1 = true;	// b1 is empty, evict from t1 without ghost
+			}
+		} else {
+			int total = l1 + t2.size() + b2.size();
+			if (total >= 2 * cacheSize) {
+				removeFirst(b2);
+			}
+		}
+	}
+
+	@Override
+	protected void onInsert(K key, CacheObject<V> co) {
+		t1.remove(key);
+		t2.remove(key);
+		if (insertToT2) {
+			t2.add(key);
+		} else {
+			t1.add(key);
+		}
+		insertKey = null;
+		insertToT2 = false;
+		ghostHitB2 = false;
+		dropFromT1 = false;
+	}
+
+	/**
+	 * Moves hit object to the most recently used position of T2.
+	 */
+	@Override
+	protected void onAccess(K key, CacheObject<V> co) {
+		if (t1.remove(key) == false) {
+			t2.remove(key);
+		}
+		t2.add(key);
+	}
+
+	/**
+	 * Removes object from resident lists, unless it is replaced with a new one.
+	 */
+	@Override
+	protected void onRemoval(K key, CacheObject<V> co, RemovalCause cause) {
+		super.onRemoval(key, co, cause);
+		if (cause != RemovalCause.REPLACED) {
+			if (t1.remove(key) == false) {
+				t2.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the history, too.
+	 */
+	@Override
+	protected void onClear() {
+		b1.clear();
+		b2.clear();
+		p = 0;
+	}
+
+	/**
+	 * Forgets the history when all objects are invalidated by epoch.
+	 */
+	@Override
+	protected void onInvalidate() {
+		onClear();
+	}
+
+	private static <T> T removeFirst(LinkedHashSet<T> set) {
+		return removeFirst(set, null);
+	}
+
+	/**
+	 * Removes the first element that is not the skipped one.
+	 * Returns <code>null</code> if there is no such element.
+	 */
+	private static <T> T removeFirst(LinkedHashSet<T> set, T skip) {
+		Iterator<T> iterator = set.iterator();
+		while (iterator.hasNext()) {
+			T first = iterator.next();
+			if ((skip != null) && skip.equals(first)) {
+				continue;
+			}
+			iterator.remove();
+			return first;
+		}
+		return null;
+	}
+
+	// ---------------------------------------------------------------- prune
+
+	/**
+	 * Prunes expired objects and, if cache is still full,
+	 * replaces one object according to ARC rules.
+	 */
+	@Override
+	protected int pruneCache() {
+		int count = 0;
+		if (isPruneExpiredActive()) {
+			Iterator<Map.Entry<K, CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<K, CacheObject<V>> entry = entries.next();
+				if (entry.getValue().isExpired() == true) {
+					entries.remove();
+					onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
+					count++;
+				}
+			}
+		}
+		if (isFull() && replace()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Evicts LRU object of T1 or T2, depending on the target size,
+	 * and remembers its key in the corresponding ghost list.
+	 * The key being inserted is never chosen as a victim.
+	 */
+	private boolean replace() {
+		boolean fromT1 = (t1.isEmpty() == false) && ((t1.size() > p) || (ghostHitB2 && (t1.size() == p)) || t2.isEmpty());
+		K victim = removeFirst(fromT1 ? t1 : t2, insertKey);
+		if (victim == null) {
+			fromT1 = !fromT1;		// 只剩下正在插入的键, 换另一个列表
+			victim = removeFirst(fromT1 ? t1 : t2, insertKey);
+			if (victim == null) {
+				return false;
+			}
+		}
+		if (fromT1) {
+			if (dropFromT1 == false) {
+				b1.add(victim);
+			}
+		} else {
+			b2.add(victim);
+		}
+		onEvict(victim, cacheMap.remove(victim));
+		return true;
+	}
+}
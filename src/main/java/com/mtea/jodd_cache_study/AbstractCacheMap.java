@@ -2,10 +2,34 @@
 
 package com.mtea.jodd_cache_study;
 
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Default implementation of timed and size cache map.
@@ -22,53 +46,348 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 
 	/**
 	 * 缓存对象
+	 * <p>
+	 * Base cache object holds just the cached value: key is already stored
+	 * in the cache map. Expiration and access counting are added by subclasses,
+	 * only when needed, see {@link #createCacheObject(Object, Object, long)}.
+	 * Measured sizes (HotSpot, compressed oops, see <code>CacheObjectTest</code>):
+	 * 16 bytes for this class, 24 bytes with access count, 32 bytes with timeout
+	 * and 40 bytes with both; compared to 48 bytes of the former single,
+	 * all-fields object. Without compressed oops each layout takes 8 bytes more.
 	 * @author 	liangqiye@gz.iscas.ac.cn
 	 * @version 1.0 , 2012-12-19 上午10:11:10
 	 */
-	class CacheObject<K2,V2> {
-		CacheObject(K2 key, V2 object, long ttl) {
-			this.key = key;
+	static class CacheObject<V2> {
+		CacheObject(Object object) {
 			this.cachedObject = object;
-			this.ttl = ttl;
-			//当一个缓存对象被生成的时候,自动设置最后访问时间为当前时间
-			this.lastAccess = System.currentTimeMillis();
 		}
 
-		final K2 key;
-		final V2 cachedObject;
-		long lastAccess;		// 最后访问时间
-		long accessCount;		// 访问次数,涉及到缓存命中率的问题
-		long ttl;				// 存活时间 (time-to-live), 0表示永久存活
+		private final Object cachedObject;		// value or its soft/weak reference
 
 		/**
 		 * 是否过期
-		 * @return
-		 * @author liangqiye / 2012-12-19 上午10:11:05
 		 */
 		boolean isExpired() {
-			//永久
-			if (ttl == 0) {
-				return false;
-			}
-			
-			//若最后访问时间+存活时间小于当前时间,则说明过期
-			return lastAccess + ttl < System.currentTimeMillis();
+			return false;
 		}
-		
+
 		/**
 		 * 获得缓存对象
-		 * @return
-		 * @author liangqiye / 2012-12-19 上午10:12:41
 		 */
+		V2 getObject() {
+			return peekObject();
+		}
+
+		/**
+		 * Returns cached object without updating access statistics.
+		 * Returns <code>null</code> if referenced value has been cleared.
+		 */
+		@SuppressWarnings("unchecked")
+		V2 peekObject() {
+			if (cachedObject instanceof ValueReference) {
+				return ((ValueReference<?, V2>) cachedObject).get();
+			}
+			return (V2) cachedObject;
+		}
+
+		/**
+		 * Returns <code>true</code> if referenced value has been cleared by GC.
+		 */
+		boolean isCleared() {
+			return (cachedObject instanceof ValueReference) && (((ValueReference<?, ?>) cachedObject).get() == null);
+		}
+
+		/**
+		 * Returns <code>true</code> if this object holds the given value reference.
+		 */
+		boolean holdsReference(Object reference) {
+			return cachedObject == reference;
+		}
+
+		/**
+		 * Returns <code>true</code> if object has been invalidated by a newer generation.
+		 */
+		boolean isStale() {
+			return false;
+		}
+
+		/**
+		 * Returns time-to-live, 0 if object never expires.
+		 */
+		long getTtl() {
+			return 0;
+		}
+
+		/**
+		 * Returns last access time, available only for objects with timeout.
+		 */
+		long getLastAccess() {
+			return 0;
+		}
+
+		void setLastAccess(long lastAccess) {
+		}
+
+		/**
+		 * Returns access count, available only if cache counts accesses.
+		 */
+		long getAccessCount() {
+			return 0;
+		}
+
+		void setAccessCount(long accessCount) {
+		}
+	}
+
+	/**
+	 * Cache object that counts accesses.
+	 */
+	static class CountedCacheObject<V2> extends CacheObject<V2> {
+		CountedCacheObject(Object object) {
+			super(object);
+		}
+
+		long accessCount;		// 访问次数,涉及到缓存命中率的问题
+
+		@Override
+		V2 getObject() {
+			accessCount++;
+			return peekObject();
+		}
+
+		@Override
+		long getAccessCount() {
+			return accessCount;
+		}
+
+		@Override
+		void setAccessCount(long accessCount) {
+			this.accessCount = accessCount;
+		}
+	}
+
+	/**
+	 * Cache object with a timeout.
+	 */
+	static class TimedCacheObject<V2> extends CacheObject<V2> {
+		TimedCacheObject(Object object, long ttl) {
+			super(object);
+			this.ttl = ttl;
+			//当一个缓存对象被生成的时候,自动设置最后访问时间为当前时间
+			this.lastAccess = System.currentTimeMillis();
+		}
+
+		long lastAccess;		// 最后访问时间
+		final long ttl;			// 存活时间 (time-to-live)
+
+		@Override
+		boolean isExpired() {
+			//若最后访问时间+存活时间小于当前时间,则说明过期
+			return lastAccess + ttl < System.currentTimeMillis();
+		}
+
+		@Override
 		V2 getObject() {
 			//更新对象状态信息
 			lastAccess = System.currentTimeMillis();
+			return peekObject();
+		}
+
+		@Override
+		long getTtl() {
+			return ttl;
+		}
+
+		@Override
+		long getLastAccess() {
+			return lastAccess;
+		}
+
+		@Override
+		void setLastAccess(long lastAccess) {
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * Cache object with a timeout that counts accesses.
+	 */
+	static class TimedCountedCacheObject<V2> extends TimedCacheObject<V2> {
+		TimedCountedCacheObject(Object object, long ttl) {
+			super(object, ttl);
+		}
+
+		long accessCount;
+
+		@Override
+		V2 getObject() {
 			accessCount++;
-			return cachedObject;
+			return super.getObject();
+		}
+
+		@Override
+		long getAccessCount() {
+			return accessCount;
+		}
+
+		@Override
+		void setAccessCount(long accessCount) {
+			this.accessCount = accessCount;
+		}
+	}
+
+	/**
+	 * Cache object that wraps another one, so implementations may attach
+	 * their own fields to objects of any layout.
+	 */
+	static class DelegatingCacheObject<V2> extends CacheObject<V2> {
+		DelegatingCacheObject(CacheObject<V2> delegate) {
+			super(null);
+			this.delegate = delegate;
+		}
+
+		final CacheObject<V2> delegate;
+
+		@Override
+		boolean isExpired() {
+			return delegate.isExpired();
+		}
+
+		@Override
+		boolean isStale() {
+			return delegate.isStale();
+		}
+
+		@Override
+		V2 getObject() {
+			return delegate.getObject();
+		}
+
+		@Override
+		V2 peekObject() {
+			return delegate.peekObject();
+		}
+
+		@Override
+		boolean isCleared() {
+			return delegate.isCleared();
+		}
+
+		@Override
+		boolean holdsReference(Object reference) {
+			return delegate.holdsReference(reference);
+		}
+
+		@Override
+		long getTtl() {
+			return delegate.getTtl();
+		}
+
+		@Override
+		long getLastAccess() {
+			return delegate.getLastAccess();
+		}
+
+		@Override
+		void setLastAccess(long lastAccess) {
+			delegate.setLastAccess(lastAccess);
+		}
+
+		@Override
+		long getAccessCount() {
+			return delegate.getAccessCount();
 		}
-    }
 
-	protected Map<K,CacheObject<K,V>> cacheMap;
+		@Override
+		void setAccessCount(long accessCount) {
+			delegate.setAccessCount(accessCount);
+		}
+	}
+
+	/**
+	 * Generation counter of the whole cache or of a namespace.
+	 */
+	static final class Generation {
+		Generation(Object key) {
+			this.key = key;
+		}
+
+		volatile int current;
+		final Object key;		// 命名空间的第一个键, 在日志中代表命名空间
+
+		// 只在写锁下访问: 命名空间在全局代 liveGlobal 中未失效的对象数
+		int live;
+		int liveGlobal;
+	}
+
+	/**
+	 * Cache object stamped with generations it was added in.
+	 * Becomes stale, i.e. expired, as soon as any of the generations changes.
+	 */
+	static class EpochCacheObject<V2> extends DelegatingCacheObject<V2> {
+		EpochCacheObject(CacheObject<V2> delegate, Generation global, Generation namespace) {
+			super(delegate);
+			this.global = global;
+			this.globalStamp = global.current;
+			this.namespace = namespace;
+			this.namespaceStamp = namespace != null ? namespace.current : 0;
+		}
+
+		final Generation global;
+		final int globalStamp;
+		final Generation namespace;
+		final int namespaceStamp;
+
+		@Override
+		boolean isStale() {
+			return (global.current != globalStamp) || ((namespace != null) && (namespace.current != namespaceStamp));
+		}
+
+		@Override
+		boolean isExpired() {
+			return isStale() || delegate.isExpired();
+		}
+	}
+
+	/**
+	 * Soft or weak reference to the cached value. Remembers the key,
+	 * so entry can be removed when reference is enqueued.
+	 */
+	interface ValueReference<K2,V2> {
+		V2 get();
+		K2 getKey();
+	}
+
+	static class SoftValueReference<K2,V2> extends SoftReference<V2> implements ValueReference<K2,V2> {
+		private final K2 key;
+
+		SoftValueReference(K2 key, V2 value, ReferenceQueue<? super V2> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+
+		public K2 getKey() {
+			return key;
+		}
+	}
+
+	static class WeakValueReference<K2,V2> extends WeakReference<V2> implements ValueReference<K2,V2> {
+		private final K2 key;
+
+		WeakValueReference(K2 key, V2 value, ReferenceQueue<? super V2> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+
+		public K2 getKey() {
+			return key;
+		}
+	}
+
+	protected Map<K,CacheObject<V>> cacheMap;
+
+	// 与 cacheMap 同步维护, 用于分块扫描
+	final CacheScanTable<K,V> scanTable = new CacheScanTable<K,V>();
 
 	private final ReentrantReadWriteLock cacheLock = new ReentrantReadWriteLock();
 	private final Lock readLock = cacheLock.readLock();
@@ -87,6 +406,62 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 	public int getCacheSize() {
 		return cacheSize;
 	}
+
+	/**
+	 * Number of objects evicted at once, under a single write lock,
+	 * when cache is shrunk.
+	 */
+	protected static final int TRIM_BATCH = 256;
+
+	/**
+	 * Changes max cache size at runtime. When cache is shrunk, objects are
+	 * evicted by the cache strategy in small batches, releasing the lock
+	 * between them, so readers are not blocked for the whole eviction.
+	 * Returns number of evicted objects.
+	 */
+	public int setCacheSize(int cacheSize) {
+		writeLock.lock();
+		try {
+			this.cacheSize = cacheSize;
+		}
+		finally {
+			writeLock.unlock();
+		}
+		int total = 0;
+		while (true) {
+			int count;
+			writeLock.lock();
+			try {
+				count = trim(TRIM_BATCH);
+			}
+			finally {
+				writeLock.unlock();
+				dispatchRemovals();
+			}
+			total += count;
+			if (count < TRIM_BATCH) {
+				return total;
+			}
+		}
+	}
+
+	/**
+	 * Evicts objects while cache is larger than its size, but not more than
+	 * given number of objects. By default, prune strategy is invoked
+	 * as long as it removes something. Must be called under the write lock.
+	 * Returns number of evicted objects.
+	 */
+	protected int trim(int maxCount) {
+		int count = 0;
+		while ((count < maxCount) && (cacheSize != 0) && (cacheMap.size() > cacheSize)) {
+			int removed = pruneCache();
+			if (removed == 0) {
+				break;
+			}
+			count += removed;
+		}
+		return count;
+	}
 	
 	//默认超时时间,0表示没有限制
 	protected long timeout;     // default timeout, 0 = no timeout
@@ -99,6 +474,19 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 		return timeout;
 	}
 
+	/**
+	 * Identifies if cache objects should count accesses.
+	 * Set by implementations that need it for their prune strategy.
+	 */
+	protected boolean countAccess;
+
+	/**
+	 * Identifies if implementation modifies its structures on every hit,
+	 * in {@link #onAccess(Object, CacheObject)}, so <code>get</code>
+	 * has to use the write lock.
+	 */
+	protected boolean exclusiveHit;
+
 	/**
 	 * Identifies if objects has custom timeouts.
 	 * Should be used to determine if prune for existing objects is needed.
@@ -116,7 +504,8 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 		//当timeout!=0说明超时被修改过
 		//若existCustomTimeout存在自定义的超时
 		//则返回true
-		return (timeout != 0) || existCustomTimeout;
+		//失效的代尚未回收时, 也需要清除过期(stale)对象
+		return (timeout != 0) || existCustomTimeout || ((globalGeneration != null) && (reclaimedInvalidations != invalidations));
 	}
 
 
@@ -135,59 +524,193 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 	 * {@inheritDoc}
 	 */
 	public void put(K key, V object, long timeout) {
+		putObject(key, object, timeout, 0, null);
+	}
+
+	/**
+	 * Adds an object with default timeout and marks it with given tags.
+	 * @see #invalidateTag(Object)
+	 */
+	public void put(K key, V object, Object... tags) {
+		putObject(key, object, timeout, 0, tags);
+	}
+
+	/**
+	 * Adds an object with specified timeout and marks it with given tags.
+	 * @see #invalidateTag(Object)
+	 */
+	public void put(K key, V object, long timeout, Object[] tags) {
+		putObject(key, object, timeout, 0, tags);
+	}
+
+	/**
+	 * Adds an object that expires at given time, unless it is accessed before.
+	 * Used for restoring objects with their remaining time-to-live.
+	 */
+	void putExpiring(K key, V object, long timeout, long expireAt) {
+		putObject(key, object, timeout, expireAt, null);
+	}
+
+	private void putObject(K key, V object, long timeout, long expireAt, Object[] tags) {
+		// 在加锁之前编码日志记录, 编码失败时缓存不变
+		CacheJournal<K,V> journal = this.journal;
+		CacheJournal.Record<K> record = journal != null ? journal.encodePut(key, object) : null;
+		Object event = CacheEvents.beginAccess();
+		CacheLatencyStats stats = latencyStats;
+		long start = stats != null ? System.nanoTime() : 0;
 		
 		//添加缓存对象需要开启写锁
-		writeLock.lock();
+		long acquired = acquire(writeLock, stats);
 
 		try {
-			CacheObject<K,V> co = new CacheObject<K,V>(key, object, timeout);
-			
-			//是否存在自定义的超时设置
-			if (timeout != 0) {
-				existCustomTimeout = true;
+			CacheObject<V> co = createCacheObject(key, object, timeout);
+			if ((expireAt != 0) && (timeout != 0)) {
+				co.setLastAccess(expireAt - timeout);
 			}
-			
-			//是否缓存已经满了(每次写的时候都校验缓存大小是否足够,若不足够则删减,无需线程跟踪)
-			if (isFull()) {
-				pruneCache();
+			insertObject(key, co, stats);
+			if ((tags != null) && (tags.length != 0)) {
+				addTags(key, tags);
+			}
+
+			if (overflowStore != null) {
+				overflowStore.remove(key);
+			}
+
+			if (record != null) {
+				record.ttl = timeout;
+				record.expireAt = timeout == 0 ? 0 : co.getLastAccess() + timeout;
+				journal.append(record);
 			}
-			cacheMap.put(key, co);
 		}
 		finally {
 			
 			//解写锁
-			writeLock.unlock();
+			release(writeLock, stats, acquired);
+			dispatchRemovals();
+			if (journal != null) {
+				journal.write();
+			}
+		}
+		if (stats != null) {
+			stats.put.record(System.nanoTime() - start);
+		}
+		CacheEvents.commitAccess(event, this, "put", key, false);
+
+		AccessTraceRecorder recorder = traceRecorder;
+		if (recorder != null) {
+			recorder.record(key, AccessTraceRecorder.PUT);
 		}
 	}
 
 
+	/**
+	 * Adds created cache object, pruning the cache first if it is full.
+	 * Must be called under the write lock.
+	 */
+	private void insertObject(K key, CacheObject<V> co, CacheLatencyStats stats) {
+		
+		//是否存在自定义的超时设置
+		if (co.getTtl() != 0) {
+			existCustomTimeout = true;
+		}
+		
+		//先回收已被GC清除的缓存对象
+		if (referenceQueue != null) {
+			drainReferenceQueue();
+		}
+
+		beforeInsert(key);
+
+		//是否缓存已经满了(每次写的时候都校验缓存大小是否足够,若不足够则删减,无需线程跟踪)
+		if (isFull()) {
+			timedPruneCache(stats);
+		}
+		CacheObject<V> old = cacheMap.put(key, co);
+		scanTable.put(key, co);
+		if (globalGeneration != null) {
+			countAdded(key, co);
+		}
+		if (old != null) {
+			onRemoval(key, old, RemovalCause.REPLACED);
+		}
+		onInsert(key, co);
+		version++;
+	}
+
+
 	// ---------------------------------------------------------------- get
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public V get(K key) {
+		Object event = CacheEvents.beginAccess();
+		CacheLatencyStats stats = latencyStats;
+		V value;
+		if (stats == null) {
+			value = lookup(key, null);
+		} else {
+			long start = System.nanoTime();
+			value = lookup(key, stats);
+			(value != null ? stats.getHit : stats.getMiss).record(System.nanoTime() - start);
+		}
+		CacheEvents.commitAccess(event, this, "get", key, value != null);
+		return recordGet(key, value);
+	}
+
+	private V recordGet(K key, V value) {
+		(value != null ? hitCount : missCount).increment();
+		HotKeyTracker<K> tracker = hotKeyTracker;
+		if (tracker != null) {
+			tracker.offer(key);
+		}
+		AccessTraceRecorder recorder = traceRecorder;
+		if (recorder != null) {
+			recorder.record(key, value != null ? AccessTraceRecorder.GET_HIT : AccessTraceRecorder.GET_MISS);
+		}
+		return value;
+	}
+
+	private V lookup(K key, CacheLatencyStats stats) {
 		
-		//获取缓存对象需要开启读锁
-		readLock.lock();
+		//获取缓存对象需要开启读锁, 命中时需要修改内部结构的实现则开启写锁
+		Lock lock = exclusiveHit ? writeLock : readLock;
+		CacheObject<V> expired = null;
+		long acquired = acquire(lock, stats);
 
 		try {
-			CacheObject<K,V> co = cacheMap.get(key);
-			if (co == null) {
-				return null;
-			}
-			
-			//当对象已经过期则返回null
-			if (co.isExpired() == true) {
-				// remove(key);		// can't upgrade the lock
-				cacheMap.remove(key);
-				return null;
+			CacheObject<V> co = cacheMap.get(key);
+			if (co != null) {
+				//当对象已经过期则返回null
+				if (co.isExpired() == true) {
+					if (lock == readLock) {
+						expired = co;		// can't upgrade the lock, removed below
+					} else {
+						cacheMap.remove(key);
+						onRemoval(key, co, RemovalCause.EXPIRED);
+						return null;
+					}
+				} else {
+					onAccess(key, co);
+					return co.getObject();
+				}
 			}
-			return co.getObject();
 		}
 		finally {
-			readLock.unlock();
+			release(lock, stats, acquired);
+			dispatchRemovals();
+		}
+
+		if (expired != null) {
+			removeExpired(key, expired);
+			return null;
+		}
+
+		//内存中没有,再去二级缓存中找
+		if (overflowStore != null) {
+			return promote(key, stats);
 		}
+		return null;
 	}
 
 	/**
@@ -197,6 +720,186 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 		return new CacheValuesIterator<V>(this);
 	}
 
+	// ---------------------------------------------------------------- iteration
+
+	/**
+	 * Number of scan table slots copied under a single read lock by iterators.
+	 */
+	static final int SCAN_CHUNK = 256;
+
+	/**
+	 * Returns the number of scan table slots that may hold entries, used as
+	 * the end of iteration: objects added later in new slots are not visited.
+	 */
+	int scanLimit() {
+		readLock.lock();
+		try {
+			return scanTable.limit();
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Copies key and cache object references in chunks of {@link CacheScanTable scan table}
+	 * slots, releasing the read lock between them, so writers are not blocked for
+	 * the whole copy. Objects cached for the whole copy are copied exactly once,
+	 * whatever is changed meanwhile; objects added meanwhile may be missed.
+	 */
+	Object[][] snapshotReferences(int chunkSize) {
+		Object[] keys = new Object[chunkSize];
+		CacheObject<?>[] objects = new CacheObject<?>[chunkSize];
+		int count = 0;
+		int position = 0;
+		while (true) {
+			if (keys.length - count < chunkSize) {
+				keys = Arrays.copyOf(keys, Math.max(keys.length << 1, count + chunkSize));
+				objects = Arrays.copyOf(objects, keys.length);
+			}
+			int copied = scanReferences(position, chunkSize, keys, objects, count);
+			if (copied == -1) {
+				break;
+			}
+			count += copied;
+			position += chunkSize;
+		}
+		return new Object[][] {Arrays.copyOf(keys, count), Arrays.copyOf(objects, count)};
+	}
+
+	/**
+	 * Copies references of <code>slots</code> scan table slots from given position,
+	 * under the read lock. Arrays must have room for <code>slots</code> references
+	 * from the offset. Returns the number of copied references, or -1 if there are
+	 * no slots from the position.
+	 */
+	int scanReferences(int position, int slots, Object[] keys, CacheObject<?>[] objects, int offset) {
+		readLock.lock();
+		try {
+			if (position >= scanTable.limit()) {
+				return -1;
+			}
+			return scanTable.copy(position, position + slots, keys, objects, offset);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the object only if key is still mapped to it.
+	 */
+	boolean removeObject(K key, CacheObject<V> co) {
+		CacheJournal<K,V> journal = this.journal;
+		CacheJournal.Record<K> record = journal != null ? journal.encodeRemove(key) : null;
+		writeLock.lock();
+		try {
+			if (cacheMap.remove(key, co) == false) {
+				return false;
+			}
+			onRemoval(key, co, RemovalCause.EXPLICIT);
+			version++;
+			if (record != null) {
+				journal.append(record);
+			}
+			return true;
+		}
+		finally {
+			writeLock.unlock();
+			dispatchRemovals();
+			if (journal != null) {
+				journal.write();
+			}
+		}
+	}
+
+	/**
+	 * Returns weakly consistent, splittable spliterator over non-expired entries.
+	 * References are copied in chunks of {@link #SCAN_CHUNK} slots, each under
+	 * a short read lock, so writers are never blocked for the whole traversal.
+	 * Traversal doesn't update access statistics.
+	 */
+	public Spliterator<Map.Entry<K,V>> spliterator() {
+		return new CacheEntrySpliterator<K,V>(this, 0, scanLimit());
+	}
+
+	/**
+	 * Returns stream of non-expired entries, see {@link #spliterator()}.
+	 * Use <code>stream().parallel()</code> to scan huge caches.
+	 */
+	public Stream<Map.Entry<K,V>> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * Returns weakly consistent iterator over non-expired entries.
+	 */
+	public Iterator<Map.Entry<K,V>> entryIterator() {
+		return Spliterators.iterator(spliterator());
+	}
+
+	/**
+	 * Returns weakly consistent iterator over keys of non-expired entries.
+	 */
+	public Iterator<K> keyIterator() {
+		final Iterator<Map.Entry<K,V>> entries = entryIterator();
+		return new Iterator<K>() {
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+
+			public K next() {
+				return entries.next().getKey();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	// ---------------------------------------------------------------- hooks
+
+	/**
+	 * Invoked under the write lock when an object is about to be added,
+	 * before cache is pruned to make room for it. Does nothing by default.
+	 */
+	protected void beforeInsert(K key) {
+	}
+
+	/**
+	 * Invoked under the write lock after an object has been added to the cache map.
+	 * Does nothing by default.
+	 */
+	protected void onInsert(K key, CacheObject<V> co) {
+	}
+
+	/**
+	 * Invoked on cache hit, under the read lock, or under the write lock
+	 * if cache requires {@link #exclusiveHit exclusive hits}.
+	 * Does nothing by default.
+	 */
+	protected void onAccess(K key, CacheObject<V> co) {
+	}
+
+	/**
+	 * Invoked under the write lock after the cache map has been cleared.
+	 * Does nothing by default.
+	 */
+	protected void onClear() {
+	}
+
+	/**
+	 * Invoked under the write lock after {@link #clear()} invalidated all objects,
+	 * when {@link #setEpochInvalidation(boolean) epochs} are enabled. Invalidated
+	 * objects are still in the cache map, they are reported to
+	 * {@link #onRemoval(Object, CacheObject, RemovalCause)} when reclaimed. Implementations
+	 * should forget only the history that doesn't refer to them, like ghost entries.
+	 * Does nothing by default.
+	 */
+	protected void onInvalidate() {
+	}
+
 	// ---------------------------------------------------------------- prune
 
 	/**
@@ -211,15 +914,976 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 	 * {@inheritDoc}
 	 */
 	public final int prune() {
+		CacheLatencyStats stats = latencyStats;
+		long acquired = acquire(writeLock, stats);
+		try {
+			int count = 0;
+			if (referenceQueue != null) {
+				count += drainReferenceQueue();
+			}
+			return count + timedPruneCache(stats);
+		}
+		finally {
+			release(writeLock, stats, acquired);
+			dispatchRemovals();
+		}
+	}
+
+	private int timedPruneCache(CacheLatencyStats stats) {
+		Object event = CacheEvents.beginPrune();
+		long start = stats != null ? System.nanoTime() : 0;
+		int removed = pruneCache();
+		if (stats != null) {
+			stats.prune.record(System.nanoTime() - start);
+		}
+		CacheEvents.commitPrune(event, this, removed, cacheMap.size());
+		return removed;
+	}
+
+	// ---------------------------------------------------------------- references
+
+	protected ValueStrength valueStrength = ValueStrength.STRONG;
+
+	private ReferenceQueue<V> referenceQueue;
+
+	/**
+	 * Returns strength of references to cached values.
+	 */
+	public ValueStrength getValueStrength() {
+		return valueStrength;
+	}
+
+	/**
+	 * Sets strength of references to values of subsequently added objects.
+	 * With soft or weak values, objects whose values are cleared by the garbage
+	 * collector are removed in bulk on the next <code>put</code> or <code>prune</code>.
+	 * Until then, <code>get</code> simply returns <code>null</code> for them.
+	 */
+	public void setValueStrength(ValueStrength valueStrength) {
+		writeLock.lock();
+		try {
+			this.valueStrength = valueStrength;
+			if ((valueStrength != ValueStrength.STRONG) && (referenceQueue == null)) {
+				referenceQueue = new ReferenceQueue<V>();
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all objects whose values were cleared by the garbage collector.
+	 * Must be called under the write lock. Returns the number of removed objects.
+	 */
+	@SuppressWarnings("unchecked")
+	protected int drainReferenceQueue() {
+		int count = 0;
+		Reference<? extends V> reference;
+		while ((reference = referenceQueue.poll()) != null) {
+			K key = ((ValueReference<K,V>) reference).getKey();
+			CacheObject<V> co = cacheMap.get(key);
+			// key may be mapped to a newer object meanwhile
+			if ((co != null) && co.holdsReference(reference)) {
+				cacheMap.remove(key);
+				onRemoval(key, co, RemovalCause.COLLECTED);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// ---------------------------------------------------------------- removal
+
+	private volatile RemovalDispatcher<K,V> removalDispatcher;
+
+	/**
+	 * Sets listener notified on every removal, with the removal cause.
+	 * Notifications are delivered in batches on the shared daemon thread.
+	 * Use <code>null</code> to remove the listener.
+	 */
+	public void setRemovalListener(RemovalListener<K,V> listener) {
+		setRemovalListener(listener, null);
+	}
+
+	/**
+	 * Sets listener notified on every removal. Notifications are collected
+	 * while the lock is held and delivered in batches on given executor,
+	 * after the lock is released, so slow listener doesn't slow down the cache.
+	 */
+	public void setRemovalListener(RemovalListener<K,V> listener, Executor executor) {
+		writeLock.lock();
+		try {
+			removalDispatcher = listener == null ? null : new RemovalDispatcher<K,V>(listener, executor);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Invoked for every object removed from the cache map, while the lock
+	 * is held. All removal paths, including prune strategies of implementations,
+	 * must report removed objects here.
+	 */
+	protected void onRemoval(K key, CacheObject<V> co, RemovalCause cause) {
+		if (cause != RemovalCause.REPLACED) {
+			scanTable.remove(key, co);
+		}
+		if (globalGeneration != null) {
+			countRemoved(key, co);
+		}
+		if (cause == RemovalCause.SIZE) {
+			evictionCount.increment();
+		} else if ((cause == RemovalCause.EXPIRED) && (co.isStale() == false)) {
+			expirationCount.increment();
+		}
+		if (keyTags != null) {
+			removeTags(key);
+		}
+		RemovalDispatcher<K,V> dispatcher = removalDispatcher;
+		if (dispatcher != null) {
+			if ((cause == RemovalCause.EXPIRED) && co.isStale()) {
+				cause = RemovalCause.EXPLICIT;		// lazily cleared
+			}
+			dispatcher.add(key, co.peekObject(), cause);
+		}
+	}
+
+	/**
+	 * Delivers collected removal notifications.
+	 * Must be called after the lock is released.
+	 */
+	protected void dispatchRemovals() {
+		RemovalDispatcher<K,V> dispatcher = removalDispatcher;
+		if (dispatcher != null) {
+			dispatcher.dispatch();
+		}
+	}
+
+	// ---------------------------------------------------------------- tags
+
+	// 标签索引, 只在写锁下访问, 在第一次使用标签时创建
+	private Map<Object, Set<K>> tagIndex;
+	private Map<K, Object[]> keyTags;
+
+	private void addTags(K key, Object[] tags) {
+		if (keyTags == null) {
+			tagIndex = new HashMap<Object, Set<K>>();
+			keyTags = new HashMap<K, Object[]>();
+		}
+		keyTags.put(key, tags);
+		for (Object tag : tags) {
+			Set<K> keys = tagIndex.get(tag);
+			if (keys == null) {
+				keys = new HashSet<K>();
+				tagIndex.put(tag, keys);
+			}
+			keys.add(key);
+		}
+	}
+
+	private void removeTags(K key) {
+		Object[] tags = keyTags.remove(key);
+		if (tags == null) {
+			return;
+		}
+		for (Object tag : tags) {
+			Set<K> keys = tagIndex.get(tag);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					tagIndex.remove(tag);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all objects marked with given tag. Tag index is maintained on
+	 * every removal, including eviction and expiration, so the cost depends only
+	 * on the number of tagged objects. Evicted tagged objects are not written to
+	 * the {@link #setOverflowStore(DiskOverflowStore) disk tier}, so they can't be
+	 * promoted back after their tag is invalidated. Tags are not journaled nor saved in snapshots.
+	 * Returns the number of removed objects.
+	 */
+	public int invalidateTag(Object tag) {
+		CacheJournal<K,V> journal = this.journal;
+		writeLock.lock();
+		try {
+			if (tagIndex == null) {
+				return 0;
+			}
+			Set<K> keys = tagIndex.remove(tag);
+			if (keys == null) {
+				return 0;
+			}
+			int count = 0;
+			for (K key : keys) {
+				CacheObject<V> co = cacheMap.remove(key);
+				if (co != null) {
+					onRemoval(key, co, RemovalCause.EXPLICIT);
+					count++;
+				}
+				if (overflowStore != null) {
+					overflowStore.remove(key);
+				}
+				if (journal != null) {
+					journal.appendRemove(key);
+				}
+			}
+			version++;
+			return count;
+		}
+		finally {
+			writeLock.unlock();
+			dispatchRemovals();
+			if (journal != null) {
+				journal.write();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of objects marked with given tag.
+	 */
+	public int getTagSize(Object tag) {
+		writeLock.lock();
+		try {
+			if (tagIndex == null) {
+				return 0;
+			}
+			Set<K> keys = tagIndex.get(tag);
+			return keys == null ? 0 : keys.size();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	// ---------------------------------------------------------------- overflow
+
+	protected DiskOverflowStore<K,V> overflowStore;
+
+	/**
+	 * Attaches {@link DiskOverflowStore disk tier} that receives evicted objects.
+	 * On a miss, object is looked up on the disk and promoted back to the memory.
+	 * Use <code>null</code> to detach it.
+	 */
+	public void setOverflowStore(DiskOverflowStore<K,V> overflowStore) {
+		writeLock.lock();
+		try {
+			this.overflowStore = overflowStore;
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Invoked by prune strategies when a non-expired object is evicted
+	 * to make room for new ones. Must be called under the write lock.
+	 * Tagged objects are not moved to the disk tier: tags are indexed only
+	 * for objects in the memory, so disk copy would survive {@link #invalidateTag(Object)}.
+	 * Disk copy is stamped with the namespace generation, so it is not promoted
+	 * after the {@link #invalidateNamespace(Object) namespace is invalidated}.
+	 */
+	protected void onEvict(K key, CacheObject<V> co) {
+		boolean tagged = (keyTags != null) && keyTags.containsKey(key);
+		onRemoval(key, co, RemovalCause.SIZE);
+		if ((overflowStore != null) && (tagged == false) && (co.isExpired() == false)) {
+			long ttl = co.getTtl();
+			long expireAt = ttl == 0 ? 0 : co.getLastAccess() + ttl;
+			V object = co.peekObject();
+			if (object != null) {
+				overflowStore.put(key, object, ttl, expireAt, namespaceStamp(key));
+			}
+		}
+	}
+
+	/**
+	 * Returns the current generation of the key namespace,
+	 * 0 if epochs are disabled or key has no namespace.
+	 */
+	private int namespaceStamp(K key) {
+		Generation namespace = globalGeneration != null ? namespaceGeneration(key) : null;
+		return namespace != null ? namespace.current : 0;
+	}
+
+	/**
+	 * Removes expired object found under the read lock,
+	 * unless it has been replaced in the meantime.
+	 */
+	private void removeExpired(K key, CacheObject<V> expired) {
+		writeLock.lock();
+		try {
+			if (cacheMap.get(key) == expired) {
+				cacheMap.remove(key);
+				onRemoval(key, expired, RemovalCause.EXPIRED);
+			}
+		}
+		finally {
+			writeLock.unlock();
+			dispatchRemovals();
+		}
+	}
+
+	/**
+	 * Moves object from the disk tier back to the memory, with the remaining
+	 * time-to-live it had when evicted. Done under the write lock and only
+	 * if the key is still absent: object put or promoted meanwhile by another
+	 * thread is returned instead, and is never overwritten by the disk copy.
+	 */
+	private V promote(K key, CacheLatencyStats stats) {
+		long acquired = acquire(writeLock, stats);
+		try {
+			CacheObject<V> co = cacheMap.get(key);
+			if (co != null) {
+				if (co.isExpired() == true) {
+					return null;
+				}
+				onAccess(key, co);
+				return co.getObject();
+			}
+			if (overflowStore == null) {
+				return null;
+			}
+			DiskOverflowStore.StoredObject<V> stored = overflowStore.takeStored(key);
+			if (stored == null) {
+				return null;
+			}
+			if ((stored.ttl != 0) && (stored.expireAt <= System.currentTimeMillis())) {
+				return null;
+			}
+			if (stored.stamp != namespaceStamp(key)) {
+				return null;		// 命名空间已失效
+			}
+			co = createCacheObject(key, stored.object, stored.ttl);
+			if (stored.ttl != 0) {
+				co.setLastAccess(stored.expireAt - stored.ttl);		// 保留剩余的存活时间
+			}
+			insertObject(key, co, stats);
+			return stored.object;
+		}
+		finally {
+			release(writeLock, stats, acquired);
+			dispatchRemovals();
+		}
+	}
+
+	// ---------------------------------------------------------------- snapshot
+
+	protected CacheJournal<K,V> journal;
+
+	/**
+	 * Attaches {@link CacheJournal journal} that records all modifications made
+	 * after the last {@link CacheSnapshot snapshot}. Use <code>null</code> to detach it.
+	 */
+	public void setJournal(CacheJournal<K,V> journal) {
+		writeLock.lock();
+		try {
+			this.journal = journal;
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Creates cache object with only the fields needed: timeout
+	 * fields only when object may expire and access count only when
+	 * cache {@link #countAccess counts accesses}. Value is wrapped
+	 * in a reference, if {@link #setValueStrength(ValueStrength) requested}.
+	 */
+	CacheObject<V> createCacheObject(K key, V value, long ttl) {
+		Object object = wrapValue(key, value);
+		CacheObject<V> co;
+		if (ttl == 0) {
+			co = countAccess ? new CountedCacheObject<V>(object) : new CacheObject<V>(object);
+		} else {
+			co = countAccess ? new TimedCountedCacheObject<V>(object, ttl) : new TimedCacheObject<V>(object, ttl);
+		}
+		Generation global = globalGeneration;
+		if (global != null) {
+			co = new EpochCacheObject<V>(co, global, namespaceGeneration(key));
+		}
+		return co;
+	}
+
+	/**
+	 * Returns the value itself or its soft/weak reference,
+	 * as stored in the cache object.
+	 */
+	Object wrapValue(K key, V value) {
+		if (valueStrength == ValueStrength.SOFT) {
+			return new SoftValueReference<K,V>(key, value, referenceQueue);
+		}
+		if (valueStrength == ValueStrength.WEAK) {
+			return new WeakValueReference<K,V>(key, value, referenceQueue);
+		}
+		return value;
+	}
+
+	/**
+	 * Captures all cached objects in the policy order and rotates the journal.
+	 * Write lock is used, so that journal is rotated exactly at the snapshot point.
+	 */
+	List<Map.Entry<K,CacheObject<V>>> snapshotObjects() throws IOException {
+		writeLock.lock();
+		try {
+			List<Map.Entry<K,CacheObject<V>>> objects = new ArrayList<Map.Entry<K,CacheObject<V>>>(cacheMap.size());
+			for (Map.Entry<K,CacheObject<V>> entry : cacheMap.entrySet()) {
+				if (entry.getValue().isStale()) {
+					continue;
+				}
+				objects.add(new AbstractMap.SimpleImmutableEntry<K,CacheObject<V>>(entry));
+			}
+			if (journal != null) {
+				journal.rotate();
+			}
+			return objects;
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Bulk inserts restored cache objects, without invoking prune.
+	 * Objects that don't fit into the cache are ignored.
+	 * Returns number of restored objects.
+	 */
+	int restoreObjects(List<Map.Entry<K,CacheObject<V>>> objects) {
+		writeLock.lock();
+		try {
+			int count = 0;
+			for (Map.Entry<K,CacheObject<V>> entry : objects) {
+				if (isFull()) {
+					break;
+				}
+				if (entry.getValue().getTtl() != 0) {
+					existCustomTimeout = true;
+				}
+				beforeInsert(entry.getKey());
+				CacheObject<V> old = cacheMap.put(entry.getKey(), entry.getValue());
+				scanTable.put(entry.getKey(), entry.getValue());
+				if (globalGeneration != null) {
+					countAdded(entry.getKey(), entry.getValue());
+				}
+				if (old != null) {
+					onRemoval(entry.getKey(), old, RemovalCause.REPLACED);
+				}
+				onInsert(entry.getKey(), entry.getValue());
+				count++;
+			}
+			version++;
+			return count;
+		}
+		finally {
+			writeLock.unlock();
+			dispatchRemovals();
+		}
+	}
+
+	// ---------------------------------------------------------------- sweep
+
+	/**
+	 * Removes expired objects using the common fork/join pool.
+	 * @see #sweepExpired(ForkJoinPool)
+	 */
+	public int sweepExpired() {
+		return sweepExpired(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Removes expired objects in parallel. References are copied in chunks under
+	 * the read lock, then ranges of them are checked on the given pool and expired
+	 * objects are removed in one batch per range. Writers are blocked only
+	 * for each chunk and for each batch, not for the whole sweep.
+	 * Returns the number of removed objects.
+	 */
+	@SuppressWarnings("unchecked")
+	public int sweepExpired(ForkJoinPool pool) {
+		Object[][] snapshot = snapshotReferences(ExpirySweepTask.RANGE);
+		CacheObject<?>[] objects = (CacheObject<?>[]) snapshot[1];
+		if (objects.length == 0) {
+			return 0;
+		}
+		Object event = CacheEvents.beginSweep();
+		ExpirySweepTask task = new ExpirySweepTask((AbstractCacheMap<Object, ?>) this, snapshot[0], objects, 0, objects.length);
+		int removed = pool.invoke(task).intValue();
+		CacheEvents.commitSweep(event, this, objects.length, removed);
+		return removed;
+	}
+
+	/**
+	 * Removes batch of expired objects, unless they were replaced or accessed meanwhile.
+	 */
+	@SuppressWarnings("unchecked")
+	int removeExpired(Object[] keys, CacheObject<?>[] objects, int[] indexes, int count) {
+		int removed = 0;
+		writeLock.lock();
+		try {
+			for (int i = 0; i < count; i++) {
+				K key = (K) keys[indexes[i]];
+				CacheObject<V> co = (CacheObject<V>) objects[indexes[i]];
+				if ((co.isExpired() == true) && cacheMap.remove(key, co)) {
+					onRemoval(key, co, RemovalCause.EXPIRED);
+					removed++;
+				}
+			}
+			return removed;
+		}
+		finally {
+			writeLock.unlock();
+			dispatchRemovals();
+		}
+	}
+
+	// ---------------------------------------------------------------- epochs
+
+	private volatile Generation globalGeneration;		// null = epochs disabled
+	private final ConcurrentHashMap<Object, Generation> namespaces = new ConcurrentHashMap<Object, Generation>();
+	private final AtomicBoolean reclaimScheduled = new AtomicBoolean();
+	private volatile Executor reclaimExecutor;
+	// 只在写锁下修改
+	private long invalidations;
+	private long reclaimedInvalidations;
+	private int staleCount;		// 已失效但尚未回收的对象数
+
+	/**
+	 * Shared daemon thread that reclaims invalidated objects.
+	 */
+	static class ReclaimExecutor {
+		static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cache-epoch-reclaimer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns <code>true</code> if {@link #clear()} and namespace invalidation are lazy.
+	 */
+	public boolean isEpochInvalidation() {
+		return globalGeneration != null;
+	}
+
+	/**
+	 * Enables or disables epoch invalidation; cache must be empty.
+	 * With epochs, {@link #clear()} and {@link #invalidateNamespace(Object)} just
+	 * bump a generation counter in constant time. Objects stamped with an old
+	 * generation are treated as expired misses and are reclaimed lazily: on access,
+	 * on prune and by a background thread. Until then they take room in the cache,
+	 * but they are not counted by {@link #size()}.
+	 * Prune looks for stale objects only until the background reclaim is done.
+	 */
+	public void setEpochInvalidation(boolean enabled) {
+		setEpochInvalidation(enabled, null);
+	}
+
+	/**
+	 * Enables or disables epoch invalidation, with stale objects reclaimed
+	 * on given executor. Use <code>null</code> for the shared daemon thread.
+	 */
+	public void setEpochInvalidation(boolean enabled, Executor executor) {
 		writeLock.lock();
 		try {
-			return pruneCache();
+			if (cacheMap.isEmpty() == false) {
+				throw new IllegalStateException("Epoch invalidation can be changed only on empty cache");
+			}
+			globalGeneration = enabled ? new Generation(null) : null;
+			reclaimExecutor = executor;
+			reclaimedInvalidations = invalidations;
+			staleCount = 0;
+			namespaces.clear();
 		}
 		finally {
 			writeLock.unlock();
 		}
 	}
 
+	/**
+	 * Returns the namespace of a key, used for namespace invalidation.
+	 * Returns <code>null</code> by default, i.e. no namespaces.
+	 */
+	protected Object namespaceOf(K key) {
+		return null;
+	}
+
+	/**
+	 * Returns the global generation, <code>null</code> if epochs are disabled.
+	 */
+	Generation globalGeneration() {
+		return globalGeneration;
+	}
+
+	/**
+	 * Returns the generation of the key namespace, <code>null</code> if key has none.
+	 */
+	Generation namespaceGeneration(K key) {
+		Object namespace = namespaceOf(key);
+		if (namespace == null) {
+			return null;
+		}
+		Generation generation = namespaces.get(namespace);
+		if (generation == null) {
+			generation = new Generation(key);
+			Generation existing = namespaces.putIfAbsent(namespace, generation);
+			if (existing != null) {
+				generation = existing;
+			}
+		}
+		return generation;
+	}
+
+	/**
+	 * Counts object added to the cache map, so {@link #size()} doesn't have
+	 * to scan for stale objects. Must be called under the write lock, when epochs are enabled.
+	 */
+	private void countAdded(K key, CacheObject<V> co) {
+		if (co.isStale()) {
+			staleCount++;		// invalidated before it was added, e.g. restored
+			return;
+		}
+		Generation namespace = namespaceGeneration(key);
+		if (namespace != null) {
+			int global = globalGeneration.current;
+			if (namespace.liveGlobal != global) {
+				namespace.live = 0;
+				namespace.liveGlobal = global;
+			}
+			namespace.live++;
+		}
+	}
+
+	/**
+	 * Counts object removed from the cache map, see {@link #countAdded(Object, CacheObject)}.
+	 */
+	private void countRemoved(K key, CacheObject<V> co) {
+		if (co.isStale()) {
+			staleCount--;
+			return;
+		}
+		Generation namespace = namespaceGeneration(key);
+		if (namespace != null) {
+			namespace.live--;
+		}
+	}
+
+	/**
+	 * Invalidates all objects of a namespace in constant time, including
+	 * their copies on the disk tier. Requires {@link #setEpochInvalidation(boolean) epoch invalidation}.
+	 */
+	public void invalidateNamespace(Object namespace) {
+		if (globalGeneration == null) {
+			throw new IllegalStateException("Epoch invalidation is not enabled");
+		}
+		Generation generation = namespaces.get(namespace);
+		if (generation != null) {
+			invalidate(generation);
+		}
+	}
+
+	/**
+	 * Invalidates the namespace of given key, used by the journal replay.
+	 * Without epoch invalidation, objects of the namespace are removed
+	 * from the memory and from the disk tier.
+	 */
+	@SuppressWarnings("unchecked")
+	void invalidateNamespaceOf(K key) {
+		Object namespace = namespaceOf(key);
+		if (namespace == null) {
+			return;
+		}
+		if (globalGeneration != null) {
+			invalidateNamespace(namespace);
+			return;
+		}
+		Object[][] snapshot = snapshotReferences(SCAN_CHUNK);
+		for (int i = 0; i < snapshot[0].length; i++) {
+			K k = (K) snapshot[0][i];
+			if (namespace.equals(namespaceOf(k))) {
+				removeObject(k, (CacheObject<V>) snapshot[1][i]);
+			}
+		}
+		DiskOverflowStore<K,V> store = overflowStore;
+		if (store != null) {
+			for (K k : store.keys()) {
+				if (namespace.equals(namespaceOf(k))) {
+					store.remove(k);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void invalidate(Generation generation) {
+		CacheJournal<K,V> journal = this.journal;
+		writeLock.lock();
+		try {
+			generation.current++;
+			invalidations++;
+			version++;
+
+			if (generation == globalGeneration) {
+				staleCount = cacheMap.size();
+				onInvalidate();
+				if (overflowStore != null) {
+					overflowStore.clear();
+				}
+				if (journal != null) {
+					journal.appendClear();
+				}
+			} else {
+				if (generation.liveGlobal == globalGeneration.current) {
+					staleCount += generation.live;
+				}
+				generation.live = 0;
+				// 磁盘上的副本带有命名空间的代, 提升时被丢弃
+				if (journal != null) {
+					journal.appendInvalidate((K) generation.key);
+				}
+			}
+		}
+		finally {
+			writeLock.unlock();
+			if (journal != null) {
+				journal.write();
+			}
+		}
+
+		if (reclaimScheduled.compareAndSet(false, true)) {
+			Executor executor = reclaimExecutor;
+			if (executor == null) {
+				executor = ReclaimExecutor.INSTANCE;
+			}
+			executor.execute(new Runnable() {
+				public void run() {
+					reclaimScheduled.set(false);
+					reclaim();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Removes all stale objects, chunk by chunk of {@link CacheScanTable scan table}
+	 * slots: each chunk is checked after a short read lock and its stale objects
+	 * are removed under a short write lock, so there is no pause for the whole scan.
+	 * Objects added during the reclaim are not stale, so they may be skipped.
+	 * Returns the number of removed objects.
+	 */
+	@SuppressWarnings("unchecked")
+	public int reclaim() {
+		long reclaimed;
+		int fence;
+		readLock.lock();
+		try {
+			reclaimed = invalidations;
+			fence = scanTable.limit();
+		}
+		finally {
+			readLock.unlock();
+		}
+
+		Object[] keys = new Object[SCAN_CHUNK];
+		CacheObject<?>[] objects = new CacheObject<?>[SCAN_CHUNK];
+		int count = 0;
+		for (int position = 0; position < fence; position += SCAN_CHUNK) {
+			int copied = scanReferences(position, Math.min(SCAN_CHUNK, fence - position), keys, objects, 0);
+			if (copied == -1) {
+				break;
+			}
+			int stale = 0;
+			for (int i = 0; i < copied; i++) {
+				if (objects[i].isStale()) {
+					keys[stale] = keys[i];
+					objects[stale] = objects[i];
+					stale++;
+				}
+			}
+			if (stale == 0) {
+				continue;
+			}
+			writeLock.lock();
+			try {
+				for (int i = 0; i < stale; i++) {
+					K key = (K) keys[i];
+					CacheObject<V> co = (CacheObject<V>) objects[i];
+					// remove only if not replaced meanwhile
+					if (cacheMap.remove(key, co)) {
+						onRemoval(key, co, RemovalCause.EXPLICIT);
+						count++;
+					}
+				}
+			}
+			finally {
+				writeLock.unlock();
+				dispatchRemovals();
+			}
+		}
+
+		// objects invalidated later are left for the next reclaim
+		writeLock.lock();
+		try {
+			if (reclaimed > reclaimedInvalidations) {
+				reclaimedInvalidations = reclaimed;
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		return count;
+	}
+
+	// ---------------------------------------------------------------- version
+
+	private volatile long version;		// 版本号, 只在写锁下修改
+
+	/**
+	 * Returns the version stamp, changed on every put, remove and clear.
+	 * May be used by front tiers to detect that their copies are stale.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	// ---------------------------------------------------------------- trace
+
+	private volatile AccessTraceRecorder traceRecorder;
+
+	/**
+	 * Sets the recorder of gets, puts and removes, or <code>null</code> to detach it.
+	 * Accesses are recorded outside of the cache lock.
+	 */
+	public void setTraceRecorder(AccessTraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+
+	public AccessTraceRecorder getTraceRecorder() {
+		return traceRecorder;
+	}
+
+	// ---------------------------------------------------------------- statistics
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expirationCount = new LongAdder();
+
+	/**
+	 * Returns number of gets that found the object.
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Returns number of gets that didn't find the object.
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Returns hits divided by all gets, or 0 if there were none.
+	 */
+	public double getHitRatio() {
+		long hits = hitCount.sum();
+		long total = hits + missCount.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Returns number of objects evicted because the cache was full.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Returns number of objects removed because they expired.
+	 */
+	public long getExpirationCount() {
+		return expirationCount.sum();
+	}
+
+	/**
+	 * Resets hit, miss, eviction and expiration counters.
+	 */
+	public void resetStatistics() {
+		hitCount.reset();
+		missCount.reset();
+		evictionCount.reset();
+		expirationCount.reset();
+	}
+
+	// ---------------------------------------------------------------- hot keys
+
+	private volatile HotKeyTracker<K> hotKeyTracker;
+
+	/**
+	 * Sets the tracker of the most frequently read keys, or <code>null</code>
+	 * to detach it. Keys of all gets, hits and misses, are offered to it
+	 * outside of the cache lock.
+	 */
+	public void setHotKeyTracker(HotKeyTracker<K> hotKeyTracker) {
+		this.hotKeyTracker = hotKeyTracker;
+	}
+
+	public HotKeyTracker<K> getHotKeyTracker() {
+		return hotKeyTracker;
+	}
+
+	// ---------------------------------------------------------------- latency
+
+	private volatile CacheLatencyStats latencyStats;
+
+	/**
+	 * Turns latency histograms of gets, puts, prunes and of the cache lock on or off.
+	 * Turning them on again starts with empty histograms.
+	 */
+	public void setLatencyTracking(boolean enabled) {
+		latencyStats = enabled ? new CacheLatencyStats() : null;
+	}
+
+	/**
+	 * Returns latency histograms or <code>null</code> if they are not tracked.
+	 */
+	public CacheLatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
+	/**
+	 * Locks and records the wait, also as a flight recorder event.
+	 * Returns the time of acquiring the lock.
+	 */
+	private long acquire(Lock lock, CacheLatencyStats stats) {
+		Object event = CacheEvents.beginLockWait();
+		long start = stats != null ? System.nanoTime() : 0;
+		lock.lock();
+		CacheEvents.commitLockWait(event, this, lock == writeLock);
+		if (stats == null) {
+			return 0;
+		}
+		long acquired = System.nanoTime();
+		stats.lockWait.record(acquired - start);
+		return acquired;
+	}
+
+	/**
+	 * Unlocks and records how long the lock was held.
+	 */
+	private void release(Lock lock, CacheLatencyStats stats, long acquired) {
+		lock.unlock();
+		if (stats != null) {
+			stats.lockHold.record(System.nanoTime() - acquired);
+		}
+	}
+
 	// ---------------------------------------------------------------- common
 
 	/**
@@ -236,12 +1900,35 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 	 * {@inheritDoc}
 	 */
 	public void remove(K key) {
-		writeLock.lock();
+		CacheJournal<K,V> journal = this.journal;
+		CacheJournal.Record<K> record = journal != null ? journal.encodeRemove(key) : null;
+		CacheLatencyStats stats = latencyStats;
+		long acquired = acquire(writeLock, stats);
 		try {
-			cacheMap.remove(key);
+			CacheObject<V> co = cacheMap.remove(key);
+			if (co != null) {
+				onRemoval(key, co, RemovalCause.EXPLICIT);
+			}
+			version++;
+
+			if (overflowStore != null) {
+				overflowStore.remove(key);
+			}
+			if (record != null) {
+				journal.append(record);
+			}
 		}
 		finally {
-			writeLock.unlock();
+			release(writeLock, stats, acquired);
+			dispatchRemovals();
+			if (journal != null) {
+				journal.write();
+			}
+		}
+
+		AccessTraceRecorder recorder = traceRecorder;
+		if (recorder != null) {
+			recorder.record(key, AccessTraceRecorder.REMOVE);
 		}
 	}
 
@@ -249,21 +1936,53 @@ public abstract class AbstractCacheMap<K,V> implements Cache<K,V> {
 	 * {@inheritDoc}
 	 */
 	public void clear() {
+		if (globalGeneration != null) {
+			invalidate(globalGeneration);
+			return;
+		}
+		CacheJournal<K,V> journal = this.journal;
 		writeLock.lock();
 		try {
+			for (Map.Entry<K,CacheObject<V>> entry : cacheMap.entrySet()) {
+				onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPLICIT);
+			}
 			cacheMap.clear();
+			scanTable.clear();
+			onClear();
+			version++;
+
+			if (overflowStore != null) {
+				overflowStore.clear();
+			}
+			if (journal != null) {
+				journal.appendClear();
+			}
 		}
 		finally {
 			writeLock.unlock();
+			dispatchRemovals();
+			if (journal != null) {
+				journal.write();
+			}
 		}
 	}
 
 
 	/**
-	 * {@inheritDoc}
+	 * Returns the number of cached objects. With {@link #setEpochInvalidation(boolean) epochs},
+	 * invalidated objects are not counted, even before they are reclaimed.
 	 */
 	public int size() {
-		return cacheMap.size();
+		if (globalGeneration == null) {
+			return cacheMap.size();
+		}
+		readLock.lock();
+		try {
+			return cacheMap.size() - staleCount;
+		}
+		finally {
+			readLock.unlock();
+		}
 	}
 
 	/**
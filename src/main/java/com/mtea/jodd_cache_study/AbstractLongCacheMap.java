@@ -0,0 +1,405 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size limited cache with primitive <code>long</code> keys.
+ * Same contract as {@link AbstractCacheMap}, but without boxing keys and
+ * without any per-entry objects: entries live in parallel arrays indexed by
+ * entry id, and an open addressing hash table (linear probing, backward shift
+ * deletion) maps keys to entry ids. Entries are linked in a doubly linked list,
+ * stored in <code>prev</code>/<code>next</code> arrays, that subclasses use for
+ * their eviction order. Arrays for timeouts are created only when the first
+ * timeout is used, so caches without timeouts don't pay for them.
+ * <p>
+ * All arrays are allocated upfront for the cache size, so size can't be <code>0</code>
+ * and <code>get</code>/<code>put</code> never allocate. Single lock is used, since
+ * eviction order may change on every access.
+ */
+public abstract class AbstractLongCacheMap<V> {
+
+	protected static final int NONE = -1;
+
+	protected final int cacheSize;
+	protected final long timeout;
+
+	// hash table: entry id + 1, 0 = empty slot
+	private final int[] table;
+	private final int mask;
+
+	// entries
+	protected final long[] keys;
+	protected final Object[] values;
+	protected final int[] prev;
+	protected final int[] next;
+	protected long[] lastAccess;		// created on first timeout
+	protected long[] ttl;
+
+	protected int head = NONE;		// eldest
+	protected int tail = NONE;		// youngest
+	private int size;
+	private int unused;				// first never used entry id
+	private int freeHead = NONE;	// free entries, linked by next
+
+	private final Lock lock = new ReentrantLock();
+
+	protected AbstractLongCacheMap(int cacheSize, long timeout) {
+		if (cacheSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+		}
+		this.cacheSize = cacheSize;
+		this.timeout = timeout;
+
+		int tableSize = Integer.highestOneBit(cacheSize) << 2;		// load factor below 0.5
+		table = new int[tableSize];
+		mask = tableSize - 1;
+
+		keys = new long[cacheSize];
+		values = new Object[cacheSize];
+		prev = new int[cacheSize];
+		next = new int[cacheSize];
+		if (timeout != 0) {
+			createTimeouts();
+		}
+	}
+
+	private void createTimeouts() {
+		lastAccess = new long[cacheSize];
+		ttl = new long[cacheSize];
+	}
+
+	// ---------------------------------------------------------------- properties
+
+	/**
+	 * Returns max cache size.
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Returns default timeout or <code>0</code> if it is not set.
+	 */
+	public long getCacheTimeout() {
+		return timeout;
+	}
+
+	// ---------------------------------------------------------------- hash table
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Returns table slot of the key or <code>-1</code> if key is not found.
+	 */
+	private int findSlot(long key) {
+		int slot = hash(key) & mask;
+		while (true) {
+			int e = table[slot];
+			if (e == 0) {
+				return NONE;
+			}
+			if (keys[e - 1] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void insertSlot(long key, int id) {
+		int slot = hash(key) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = id + 1;
+	}
+
+	/**
+	 * Removes slot by shifting following entries of the probe sequence back.
+	 */
+	private void deleteSlot(int hole) {
+		int i = hole;
+		while (true) {
+			i = (i + 1) & mask;
+			int e = table[i];
+			if (e == 0) {
+				break;
+			}
+			int home = hash(keys[e - 1]) & mask;
+			// move entry only if the hole is between its home and current slot
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				table[hole] = e;
+				hole = i;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	// ---------------------------------------------------------------- list
+
+	protected void linkLast(int id) {
+		prev[id] = tail;
+		next[id] = NONE;
+		if (tail == NONE) {
+			head = id;
+		} else {
+			next[tail] = id;
+		}
+		tail = id;
+	}
+
+	protected void unlink(int id) {
+		int p = prev[id];
+		int n = next[id];
+		if (p == NONE) {
+			head = n;
+		} else {
+			next[p] = n;
+		}
+		if (n == NONE) {
+			tail = p;
+		} else {
+			prev[n] = p;
+		}
+	}
+
+	// ---------------------------------------------------------------- put
+
+	/**
+	 * Adds an object to the cache with default timeout.
+	 */
+	public void put(long key, V object) {
+		put(key, object, timeout);
+	}
+
+	/**
+	 * Adds an object to the cache with specified timeout.
+	 * If cache is full, {@link #prune()} is invoked to make room for new object.
+	 */
+	public void put(long key, V object, long timeout) {
+		lock.lock();
+		try {
+			int slot = findSlot(key);
+			int id;
+			if (slot != NONE) {
+				id = table[slot] - 1;
+				unlink(id);
+				onRemove(id);
+			} else {
+				if (isFull()) {
+					pruneCache();
+				}
+				id = allocate();
+				keys[id] = key;
+				insertSlot(key, id);
+				size++;
+			}
+			values[id] = object;
+			if ((timeout != 0) && (ttl == null)) {
+				createTimeouts();
+			}
+			if (ttl != null) {
+				ttl[id] = timeout;
+				lastAccess[id] = System.currentTimeMillis();
+			}
+			linkLast(id);
+			onInsert(id);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private int allocate() {
+		if (freeHead != NONE) {
+			int id = freeHead;
+			freeHead = next[id];
+			return id;
+		}
+		return unused++;
+	}
+
+	// ---------------------------------------------------------------- get
+
+	/**
+	 * Retrieves an object from the cache. Returns <code>null</code> if object
+	 * is not in the cache or if it is expired.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		lock.lock();
+		try {
+			int slot = findSlot(key);
+			if (slot == NONE) {
+				return null;
+			}
+			int id = table[slot] - 1;
+			if (ttl != null) {
+				long now = System.currentTimeMillis();
+				if (isExpired(id, now)) {
+					removeEntry(slot, id);
+					return null;
+				}
+				lastAccess[id] = now;
+			}
+			onAccess(id);
+			return (V) values[id];
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	protected boolean isExpired(int id, long now) {
+		if ((ttl == null) || (ttl[id] == 0)) {
+			return false;
+		}
+		return lastAccess[id] + ttl[id] < now;
+	}
+
+	// ---------------------------------------------------------------- prune
+
+	/**
+	 * Prunes objects from cache and returns the number of removed objects.
+	 */
+	public int prune() {
+		lock.lock();
+		try {
+			return pruneCache();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes expired entries and, if cache is still full,
+	 * the entry selected by {@link #selectVictim()}.
+	 */
+	protected int pruneCache() {
+		int count = 0;
+		if (ttl != null) {
+			long now = System.currentTimeMillis();
+			int id = head;
+			while (id != NONE) {
+				int nextId = next[id];
+				if (isExpired(id, now)) {
+					removeEntry(findSlot(keys[id]), id);
+					count++;
+				}
+				id = nextId;
+			}
+		}
+		if (isFull()) {
+			int victim = selectVictim();
+			if (victim != NONE) {
+				removeEntry(findSlot(keys[victim]), victim);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void removeEntry(int slot, int id) {
+		deleteSlot(slot);
+		unlink(id);
+		onRemove(id);
+		values[id] = null;
+		next[id] = freeHead;
+		freeHead = id;
+		size--;
+	}
+
+	// ---------------------------------------------------------------- policy
+
+	/**
+	 * Invoked when entry is (re)inserted, after it is linked as the youngest one.
+	 */
+	protected void onInsert(int id) {
+	}
+
+	/**
+	 * Invoked on cache hit.
+	 */
+	protected void onAccess(int id) {
+	}
+
+	/**
+	 * Invoked when entry is unlinked, before its id is reused.
+	 */
+	protected void onRemove(int id) {
+	}
+
+	/**
+	 * Returns id of the entry to evict.
+	 */
+	protected abstract int selectVictim();
+
+	// ---------------------------------------------------------------- common
+
+	/**
+	 * Returns <code>true</code> if max cache capacity has been reached.
+	 */
+	public boolean isFull() {
+		return size >= cacheSize;
+	}
+
+	/**
+	 * Removes an object from the cache.
+	 */
+	public void remove(long key) {
+		lock.lock();
+		try {
+			int slot = findSlot(key);
+			if (slot != NONE) {
+				removeEntry(slot, table[slot] - 1);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Clears current cache.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			Arrays.fill(table, 0);
+			Arrays.fill(values, null);
+			head = tail = freeHead = NONE;
+			unused = 0;
+			size = 0;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns current cache size.
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return size;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if cache is empty.
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+}
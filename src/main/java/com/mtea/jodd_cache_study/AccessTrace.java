@@ -0,0 +1,317 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 访问轨迹
+ * Sequence of cache accesses, each one with a key and an object size in bytes,
+ * used by {@link CacheSimulator}. Traces are read from files or generated.
+ * <p>
+ * Text format: one access per line, key and optional size separated by whitespace;
+ * empty lines and lines starting with <code>#</code> are ignored. Keys that are not
+ * numbers are hashed. Binary format: magic, number of accesses and then pairs
+ * of long key and int size.
+ */
+public class AccessTrace {
+
+	static final int MAGIC = 0x4A435431;		// JCT1
+
+	protected final String name;
+	protected final long[] keys;
+	protected final int[] sizes;
+
+	public AccessTrace(String name, long[] keys, int[] sizes) {
+		if (keys.length != sizes.length) {
+			throw new IllegalArgumentException("Keys and sizes differ in length");
+		}
+		this.name = name;
+		this.keys = keys;
+		this.sizes = sizes;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns number of accesses.
+	 */
+	public int length() {
+		return keys.length;
+	}
+
+	public long getKey(int index) {
+		return keys[index];
+	}
+
+	public int getSize(int index) {
+		return sizes[index];
+	}
+
+	// ---------------------------------------------------------------- files
+
+	/**
+	 * Reads text trace. Accesses without size have size 1.
+	 */
+	public static AccessTrace readText(File file) throws IOException {
+		long[] keys = new long[1024];
+		int[] sizes = new int[1024];
+		int count = 0;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.charAt(0) == '#') {
+					continue;
+				}
+				String[] tokens = line.split("\\s+");
+				if (count == keys.length) {
+					keys = Arrays.copyOf(keys, count << 1);
+					sizes = Arrays.copyOf(sizes, count << 1);
+				}
+				keys[count] = parseKey(tokens[0]);
+				sizes[count] = tokens.length > 1 ? Integer.parseInt(tokens[1]) : 1;
+				count++;
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return new AccessTrace(file.getName(), Arrays.copyOf(keys, count), Arrays.copyOf(sizes, count));
+	}
+
+	private static long parseKey(String token) {
+		try {
+			return Long.parseLong(token);
+		}
+		catch (NumberFormatException ignore) {
+			long hash = 1125899906842597L;
+			for (int i = 0; i < token.length(); i++) {
+				hash = 31 * hash + token.charAt(i);
+			}
+			return hash;
+		}
+	}
+
+	/**
+	 * Reads binary trace.
+	 */
+	public static AccessTrace readBinary(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			ChannelInput in = new ChannelInput(raf.getChannel(), 64 * 1024);
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a trace file: " + file);
+			}
+			int count = in.readInt();
+			long[] keys = new long[count];
+			int[] sizes = new int[count];
+			for (int i = 0; i < count; i++) {
+				keys[i] = in.readLong();
+				sizes[i] = in.readInt();
+			}
+			return new AccessTrace(file.getName(), keys, sizes);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes trace in binary format.
+	 */
+	public void writeBinary(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			ChannelOutput out = new ChannelOutput(raf.getChannel(), 64 * 1024);
+			out.writeInt(MAGIC);
+			out.writeInt(keys.length);
+			for (int i = 0; i < keys.length; i++) {
+				out.writeLong(keys[i]);
+				out.writeInt(sizes[i]);
+			}
+			out.flush();
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads the file written by {@link AccessTraceRecorder}. Only gets, both hits and misses,
+	 * are taken as accesses, ordered by their timestamps. Sizes are set to 1.
+	 */
+	public static AccessTrace readRecording(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			ChannelInput in = new ChannelInput(raf.getChannel(), 64 * 1024);
+			if (in.readInt() != AccessTraceRecorder.MAGIC) {
+				throw new IOException("Not a recording: " + file);
+			}
+			long remaining = (raf.length() - 4) / 17;
+			long[] times = new long[(int) remaining];
+			long[] ids = new long[(int) remaining];
+			int count = 0;
+			for (long i = 0; i < remaining; i++) {
+				byte operation = in.readByte();
+				long key = in.readLong();
+				long time = in.readLong();
+				if ((operation == AccessTraceRecorder.GET_HIT) || (operation == AccessTraceRecorder.GET_MISS)) {
+					times[count] = time;
+					ids[count] = key;
+					count++;
+				}
+			}
+
+			// per-thread buffers are drained one by one, so records are sorted here
+			sortByTime(times, ids, count);
+			long[] keys = Arrays.copyOf(ids, count);
+			int[] sizes = new int[count];
+			Arrays.fill(sizes, 1);
+			return new AccessTrace(file.getName(), keys, sizes);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Sorts keys by their times, on primitive arrays: bottom-up merge sort,
+	 * stable, so accesses of one thread with the same time keep their order.
+	 */
+	static void sortByTime(long[] times, long[] keys, int count) {
+		long[] t = times;
+		long[] k = keys;
+		long[] tt = new long[count];
+		long[] kk = new long[count];
+		for (int width = 1; width < count; width <<= 1) {
+			for (int lo = 0; lo < count; lo += width << 1) {
+				int mid = Math.min(lo + width, count);
+				int hi = Math.min(lo + (width << 1), count);
+				int i = lo;
+				int j = mid;
+				int o = lo;
+				while ((i < mid) && (j < hi)) {
+					if (t[j] < t[i]) {
+						tt[o] = t[j];
+						kk[o++] = k[j++];
+					} else {
+						tt[o] = t[i];
+						kk[o++] = k[i++];
+					}
+				}
+				System.arraycopy(t, i, tt, o, mid - i);
+				System.arraycopy(k, i, kk, o, mid - i);
+				o += mid - i;
+				System.arraycopy(t, j, tt, o, hi - j);
+				System.arraycopy(k, j, kk, o, hi - j);
+			}
+			long[] swap = t;
+			t = tt;
+			tt = swap;
+			swap = k;
+			k = kk;
+			kk = swap;
+		}
+		if (t != times) {
+			System.arraycopy(t, 0, times, 0, count);
+			System.arraycopy(k, 0, keys, 0, count);
+		}
+	}
+
+	// ---------------------------------------------------------------- generators
+
+	/**
+	 * Generates accesses to <code>items</code> keys with Zipf distribution:
+	 * key of rank <i>k</i> is accessed with probability proportional to
+	 * 1/<i>k</i><sup>skew</sup>. Key sizes are random, up to <code>maxSize</code>.
+	 */
+	public static AccessTrace zipf(int items, int count, double skew, int maxSize, long seed) {
+		double[] cumulative = new double[items];
+		double sum = 0;
+		for (int i = 0; i < items; i++) {
+			sum += 1.0 / Math.pow(i + 1, skew);
+			cumulative[i] = sum;
+		}
+		Random random = new Random(seed);
+		int[] itemSizes = randomSizes(items, maxSize, random);
+		long[] keys = new long[count];
+		int[] sizes = new int[count];
+		for (int i = 0; i < count; i++) {
+			int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+			if (rank < 0) {
+				rank = -rank - 1;
+			}
+			if (rank >= items) {
+				rank = items - 1;
+			}
+			keys[i] = rank;
+			sizes[i] = itemSizes[rank];
+		}
+		return new AccessTrace("zipf-" + skew, keys, sizes);
+	}
+
+	/**
+	 * Generates one-time scan over <code>count</code> distinct keys, starting with <code>first</code>.
+	 */
+	public static AccessTrace scan(long first, int count, int size) {
+		long[] keys = new long[count];
+		int[] sizes = new int[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = first + i;
+			sizes[i] = size;
+		}
+		return new AccessTrace("scan", keys, sizes);
+	}
+
+	/**
+	 * Generates <code>count</code> accesses looping over <code>loopSize</code> keys.
+	 */
+	public static AccessTrace loop(int loopSize, int count, int size) {
+		long[] keys = new long[count];
+		int[] sizes = new int[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = i % loopSize;
+			sizes[i] = size;
+		}
+		return new AccessTrace("loop-" + loopSize, keys, sizes);
+	}
+
+	/**
+	 * Concatenates traces, e.g. to mix a scan into a Zipf workload.
+	 */
+	public static AccessTrace concat(String name, AccessTrace... traces) {
+		int count = 0;
+		for (AccessTrace trace : traces) {
+			count += trace.length();
+		}
+		long[] keys = new long[count];
+		int[] sizes = new int[count];
+		int offset = 0;
+		for (AccessTrace trace : traces) {
+			System.arraycopy(trace.keys, 0, keys, offset, trace.length());
+			System.arraycopy(trace.sizes, 0, sizes, offset, trace.length());
+			offset += trace.length();
+		}
+		return new AccessTrace(name, keys, sizes);
+	}
+
+	private static int[] randomSizes(int items, int maxSize, Random random) {
+		int[] sizes = new int[items];
+		for (int i = 0; i < items; i++) {
+			sizes[i] = maxSize <= 1 ? 1 : 1 + random.nextInt(maxSize);
+		}
+		return sizes;
+	}
+}
@@ -0,0 +1,302 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 访问轨迹记录器
+ * Low overhead recorder of cache accesses, for later simulation.
+ *
+ * <p>
+ * Each access is recorded as a hashed key id, operation and timestamp into a ring
+ * buffer of the calling thread. Buffers are single producer, single consumer and
+ * lock-free: the owner thread only writes its buffer, a background thread drains
+ * all buffers to a binary file through NIO. If a buffer is full, records are
+ * dropped and counted, the cache is never slowed down by the disk.
+ * <p>
+ * Recording may be sampled by key: with sample rate <i>n</i>, only about one of
+ * <i>n</i> keys is recorded, but with all its accesses, so the recorded sequences
+ * stay usable for policy simulation, see {@link AccessTrace#readRecording(File)}.
+ * Recorder is switched on and off at runtime with {@link #start(File)} and {@link #stop()}.
+ * <p>
+ * File format: magic and then records of operation byte, long key id and
+ * long timestamp in nanoseconds from the start.
+ */
+public class AccessTraceRecorder {
+
+	static final int MAGIC = 0x4A435231;		// JCR1
+
+	public static final byte GET_HIT = 1;
+	public static final byte GET_MISS = 2;
+	public static final byte PUT = 3;
+	public static final byte REMOVE = 4;
+
+	/**
+	 * Per-thread ring buffer. Only the owner thread advances the head,
+	 * only the drainer advances the tail.
+	 */
+	static final class RecordBuffer {
+		RecordBuffer(int capacity, Thread owner) {
+			keys = new long[capacity];
+			meta = new long[capacity];
+			mask = capacity - 1;
+			this.owner = new WeakReference<Thread>(owner);
+		}
+
+		final WeakReference<Thread> owner;
+		final long[] keys;
+		final long[] meta;		// timestamp << 8 | operation
+		final int mask;
+		final AtomicLong head = new AtomicLong();
+		final AtomicLong tail = new AtomicLong();
+		long dropped;
+
+		void add(long key, long meta) {
+			long h = head.get();
+			if (h - tail.get() > mask) {
+				dropped++;
+				return;
+			}
+			int index = (int) h & mask;
+			keys[index] = key;
+			this.meta[index] = meta;
+			head.lazySet(h + 1);
+		}
+
+		/**
+		 * Returns <code>true</code> if owner thread has terminated,
+		 * so no more records will be added.
+		 */
+		boolean isOrphan() {
+			Thread thread = owner.get();
+			return (thread == null) || (thread.isAlive() == false);
+		}
+	}
+
+	protected final int bufferSize;
+	final Queue<RecordBuffer> buffers = new ConcurrentLinkedQueue<RecordBuffer>();
+	private final ThreadLocal<RecordBuffer> buffer = new ThreadLocal<RecordBuffer>() {
+		@Override
+		protected RecordBuffer initialValue() {
+			RecordBuffer recordBuffer = new RecordBuffer(bufferSize, Thread.currentThread());
+			buffers.add(recordBuffer);
+			return recordBuffer;
+		}
+	};
+
+	private volatile boolean enabled;
+	private volatile int sampleMask;
+	private long startNanos;
+	private long written;
+	private volatile long orphanDropped;		// dropped by removed buffers
+
+	private final Object lifecycleLock = new Object();
+
+	private ScheduledExecutorService executor;
+	private RandomAccessFile raf;
+	private ChannelOutput out;
+
+	public AccessTraceRecorder() {
+		this(8192);
+	}
+
+	/**
+	 * Creates recorder with per-thread buffers of given size, rounded up to the power of two.
+	 */
+	public AccessTraceRecorder(int bufferSize) {
+		int n = 2;
+		while (n < bufferSize) {
+			n <<= 1;
+		}
+		this.bufferSize = n;
+	}
+
+	/**
+	 * Records only about one of <code>rate</code> keys, rounded up to the power of two.
+	 * Rate of 1 records all accesses.
+	 */
+	public void setSampleRate(int rate) {
+		int n = 1;
+		while (n < rate) {
+			n <<= 1;
+		}
+		this.sampleMask = n - 1;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// ---------------------------------------------------------------- record
+
+	/**
+	 * Records an access. Does nothing when recorder is not started.
+	 */
+	public void record(Object key, byte operation) {
+		if (enabled == false) {
+			return;
+		}
+		long id = keyId(key);
+		if ((id & sampleMask) != 0) {
+			return;
+		}
+		buffer.get().add(id, ((System.nanoTime() - startNanos) << 8) | operation);
+	}
+
+	/**
+	 * Returns well mixed 64-bit id of a key.
+	 */
+	static long keyId(Object key) {
+		long h = key == null ? 0 : key.hashCode();
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	// ---------------------------------------------------------------- lifecycle
+
+	/**
+	 * Starts recording into the file, draining buffers every 10 milliseconds.
+	 */
+	public void start(File file) throws IOException {
+		synchronized (lifecycleLock) {
+			if (enabled) {
+				throw new IllegalStateException("Recorder already started");
+			}
+			open(file);
+			startDrainer();
+			enabled = true;
+		}
+	}
+
+	private synchronized void open(File file) throws IOException {
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		out = new ChannelOutput(raf.getChannel(), 64 * 1024);
+		out.writeInt(MAGIC);
+		written = 0;
+		orphanDropped = 0;
+		for (RecordBuffer recordBuffer : buffers) {
+			recordBuffer.tail.set(recordBuffer.head.get());		// forget old records
+			recordBuffer.dropped = 0;
+		}
+		startNanos = System.nanoTime();
+	}
+
+	private void startDrainer() {
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cache-trace-recorder");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					drain();
+				}
+				catch (IOException ignore) {
+					// recording is best effort
+				}
+			}
+		}, 10, 10, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops recording, drains remaining records and closes the file.
+	 * Waits for the background drain without holding the drain monitor.
+	 */
+	public void stop() throws IOException {
+		synchronized (lifecycleLock) {
+			if (enabled == false) {
+				return;
+			}
+			enabled = false;
+			executor.shutdown();
+			try {
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+			close();
+		}
+	}
+
+	private synchronized void close() throws IOException {
+		try {
+			drain();
+			out.flush();
+		}
+		finally {
+			raf.close();
+			raf = null;
+			out = null;
+		}
+	}
+
+	/**
+	 * Writes records of all buffers to the file.
+	 * Buffers of terminated threads are removed once drained.
+	 */
+	private synchronized void drain() throws IOException {
+		if (out == null) {
+			return;
+		}
+		Iterator<RecordBuffer> iterator = buffers.iterator();
+		while (iterator.hasNext()) {
+			RecordBuffer recordBuffer = iterator.next();
+			boolean orphan = recordBuffer.isOrphan();		// checked first, no records can follow
+			long t = recordBuffer.tail.get();
+			long h = recordBuffer.head.get();
+			for (; t < h; t++) {
+				int index = (int) t & recordBuffer.mask;
+				long meta = recordBuffer.meta[index];
+				out.writeByte((byte) (meta & 0xFF));
+				out.writeLong(recordBuffer.keys[index]);
+				out.writeLong(meta >>> 8);
+				written++;
+			}
+			recordBuffer.tail.lazySet(h);
+			if (orphan) {
+				orphanDropped += recordBuffer.dropped;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns number of records written to the file.
+	 */
+	public synchronized long getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * Returns approximate number of records dropped because buffers were full.
+	 */
+	public long getDroppedCount() {
+		long dropped = orphanDropped;
+		for (RecordBuffer recordBuffer : buffers) {
+			dropped += recordBuffer.dropped;
+		}
+		return dropped;
+	}
+}
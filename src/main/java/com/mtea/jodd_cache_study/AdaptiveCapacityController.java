@@ -0,0 +1,276 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Adapts capacity of registered caches to the heap pressure.
+ * <p>
+ * Controller sets usage threshold on heap memory pools that support it and listens
+ * for threshold notifications: when heap usage crosses the high watermark, all
+ * caches are shrunk. It also listens for garbage collection notifications and
+ * checks heap usage after collection: above high watermark caches are shrunk,
+ * below low watermark they are grown. Capacity always stays between the floor and
+ * the ceiling given on registration; unbounded caches (capacity 0) are left alone.
+ * When growing, capacity increases by at least one. Resizing is done on
+ * a background thread and caches evict incrementally down to the new size.
+ * <p>
+ * For {@link AbstractCacheMap}s capacity is the number of objects, for
+ * {@link FileLFUCache} it is the number of bytes.
+ */
+public class AdaptiveCapacityController {
+
+	private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+	/**
+	 * Registered cache.
+	 */
+	abstract static class Registration {
+		final int floor;
+		final int ceiling;
+
+		Registration(int floor, int ceiling) {
+			if ((floor <= 0) || (floor > ceiling)) {
+				throw new IllegalArgumentException("Invalid floor or ceiling: " + floor + ", " + ceiling);
+			}
+			this.floor = floor;
+			this.ceiling = ceiling;
+		}
+
+		abstract int getCapacity();
+
+		abstract void setCapacity(int capacity);
+
+		void scale(double factor) {
+			int capacity = getCapacity();
+			if (capacity <= 0) {
+				return;		// 无限容量的缓存不参与调整
+			}
+			long scaled = Math.round(capacity * factor);
+			if (factor > 1) {
+				scaled = Math.max(capacity + 1L, scaled);	// 小容量时也要能增长
+			}
+			int newCapacity = (int) Math.min(ceiling, Math.max(floor, scaled));
+			if (newCapacity != capacity) {
+				setCapacity(newCapacity);
+			}
+		}
+	}
+
+	protected final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+	protected double lowWatermark = 0.5;
+	protected double highWatermark = 0.8;
+	protected double growFactor = 1.25;
+	protected double shrinkFactor = 0.75;
+
+	private final NotificationListener listener = new NotificationListener() {
+		public void handleNotification(Notification notification, Object handback) {
+			String type = notification.getType();
+			if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)) {
+				submit(shrinkFactor);
+			} else if (GC_NOTIFICATION.equals(type)) {
+				onMemoryUsage(heapUsageAfterGc());
+			}
+		}
+	};
+
+	private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+	private ExecutorService executor;
+
+	// ---------------------------------------------------------------- register
+
+	/**
+	 * Registers cache with capacity limited by floor and ceiling,
+	 * in number of objects. Floor must be positive and not above the ceiling.
+	 */
+	public void register(final AbstractCacheMap<?, ?> cache, int floor, int ceiling) {
+		registrations.add(new Registration(floor, ceiling) {
+			@Override
+			int getCapacity() {
+				return cache.getCacheSize();
+			}
+
+			@Override
+			void setCapacity(int capacity) {
+				cache.setCacheSize(capacity);
+			}
+		});
+	}
+
+	/**
+	 * Registers file cache with capacity limited by floor and ceiling, in bytes.
+	 * Floor must be positive and not above the ceiling.
+	 */
+	public void register(final FileLFUCache cache, int floor, int ceiling) {
+		registrations.add(new Registration(floor, ceiling) {
+			@Override
+			int getCapacity() {
+				return cache.getMaxSize();
+			}
+
+			@Override
+			void setCapacity(int capacity) {
+				cache.setMaxSize(capacity);
+			}
+		});
+	}
+
+	// ---------------------------------------------------------------- settings
+
+	/**
+	 * Sets heap usage ratio below which caches are grown.
+	 */
+	public void setLowWatermark(double lowWatermark) {
+		this.lowWatermark = lowWatermark;
+	}
+
+	/**
+	 * Sets heap usage ratio above which caches are shrunk.
+	 * Takes effect for threshold notifications on next {@link #start()}.
+	 */
+	public void setHighWatermark(double highWatermark) {
+		this.highWatermark = highWatermark;
+	}
+
+	/**
+	 * Sets factor by which capacity is multiplied when heap has room.
+	 */
+	public void setGrowFactor(double growFactor) {
+		this.growFactor = growFactor;
+	}
+
+	/**
+	 * Sets factor by which capacity is multiplied under heap pressure.
+	 */
+	public void setShrinkFactor(double shrinkFactor) {
+		this.shrinkFactor = shrinkFactor;
+	}
+
+	// ---------------------------------------------------------------- lifecycle
+
+	/**
+	 * Starts listening for memory and GC notifications.
+	 */
+	public synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cache-capacity-controller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ((pool.getType() == MemoryType.HEAP) && pool.isUsageThresholdSupported()) {
+				long max = pool.getUsage().getMax();
+				if (max > 0) {
+					pool.setUsageThreshold((long) (max * highWatermark));
+				}
+			}
+		}
+		addListener(ManagementFactory.getMemoryMXBean());
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			addListener(gc);
+		}
+	}
+
+	private void addListener(Object bean) {
+		if (bean instanceof NotificationEmitter) {
+			NotificationEmitter emitter = (NotificationEmitter) bean;
+			emitter.addNotificationListener(listener, null, null);
+			emitters.add(emitter);
+		}
+	}
+
+	/**
+	 * Stops listening for notifications.
+	 */
+	public synchronized void stop() {
+		for (NotificationEmitter emitter : emitters) {
+			try {
+				emitter.removeNotificationListener(listener);
+			} catch (ListenerNotFoundException ignore) {
+			}
+		}
+		emitters.clear();
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	// ---------------------------------------------------------------- adapt
+
+	/**
+	 * Returns highest usage ratio of heap pools after last collection.
+	 */
+	protected double heapUsageAfterGc() {
+		double ratio = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ((pool.getType() != MemoryType.HEAP) || (pool.isCollectionUsageThresholdSupported() == false)) {
+				continue;
+			}
+			MemoryUsage usage = pool.getCollectionUsage();
+			if ((usage != null) && (usage.getMax() > 0)) {
+				ratio = Math.max(ratio, (double) usage.getUsed() / usage.getMax());
+			}
+		}
+		return ratio;
+	}
+
+	/**
+	 * Adapts cache capacities to the heap usage ratio:
+	 * shrinks above the high watermark and grows below the low one.
+	 */
+	public void onMemoryUsage(double usageRatio) {
+		if (usageRatio > highWatermark) {
+			submit(shrinkFactor);
+		} else if (usageRatio < lowWatermark) {
+			submit(growFactor);
+		}
+	}
+
+	private synchronized void submit(final double factor) {
+		Runnable task = new Runnable() {
+			public void run() {
+				resize(factor);
+			}
+		};
+		if (executor != null) {
+			executor.execute(task);
+		} else {
+			task.run();
+		}
+	}
+
+	/**
+	 * Multiplies capacity of all registered caches by the factor,
+	 * within their floor and ceiling.
+	 */
+	protected void resize(double factor) {
+		for (Registration registration : registrations) {
+			registration.scale(factor);
+		}
+	}
+}
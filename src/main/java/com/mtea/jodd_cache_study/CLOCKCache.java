@@ -0,0 +1,183 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.HashMap;
+
+/**
+ * 时钟缓存
+ * CLOCK cache, an approximation of LRU.
+ *
+ * <p>
+ * Cached objects are placed in a circular array of slots. A hit only sets the
+ * reference bit of the object, so <code>get</code> never takes the write lock and
+ * doesn't touch any shared list. When cache is full, the clock hand sweeps
+ * the slots: referenced objects get their bit cleared (second chance), the first
+ * unreferenced object is evicted. Eviction is amortized constant time.
+ * <p>
+ * Clock grows if cache size is changed to a bigger one or if cache has no limit.
+ * <p>
+ * Summary for CLOCK: fast reads, approximate recency, not scan resistant.
+ */
+public class CLOCKCache<K, V> extends AbstractCacheMap<K, V> {
+
+	/**
+	 * Cache object with a reference bit and a slot in the clock.
+	 * Wraps the object created by the base cache.
+	 */
+	static class ClockCacheObject<V2> extends DelegatingCacheObject<V2> {
+		ClockCacheObject(CacheObject<V2> delegate) {
+			super(delegate);
+		}
+
+		volatile boolean referenced;	// 引用位
+		int slot = -1;
+	}
+
+	// 时钟
+	private Object[] keys;
+	private ClockCacheObject<?>[] slots;
+	private int used;		// slots ever taken, [used, length) are never used
+	private int hand;
+
+	// released slots
+	private int[] free;
+	private int freeCount;
+
+	public CLOCKCache(int cacheSize) {
+		this(cacheSize, 0);
+	}
+
+	public CLOCKCache(int cacheSize, long timeout) {
+		this.cacheSize = cacheSize;
+		this.timeout = timeout;
+		cacheMap = new HashMap<K, CacheObject<V>>(cacheSize + 1);
+		reset(cacheSize > 0 ? cacheSize : 16);
+	}
+
+	private void reset(int capacity) {
+		keys = new Object[capacity];
+		slots = new ClockCacheObject<?>[capacity];
+		free = new int[capacity];
+		used = 0;
+		hand = 0;
+		freeCount = 0;
+	}
+
+	@Override
+	CacheObject<V> createCacheObject(K key, V value, long ttl) {
+		return new ClockCacheObject<V>(super.createCacheObject(key, value, ttl));
+	}
+
+	// ---------------------------------------------------------------- hooks
+
+	@Override
+	protected void onInsert(K key, CacheObject<V> co) {
+		ClockCacheObject<V> cco = (ClockCacheObject<V>) co;
+		int slot = takeSlot();
+		keys[slot] = key;
+		slots[slot] = cco;
+		cco.slot = slot;
+	}
+
+	/**
+	 * Sets the reference bit. Called under the read lock;
+	 * written only when not already set, to keep the cache line clean.
+	 */
+	@Override
+	protected void onAccess(K key, CacheObject<V> co) {
+		ClockCacheObject<V> cco = (ClockCacheObject<V>) co;
+		if (cco.referenced == false) {
+			cco.referenced = true;
+		}
+	}
+
+	/**
+	 * Releases the slot of removed object.
+	 */
+	@Override
+	protected void onRemoval(K key, CacheObject<V> co, RemovalCause cause) {
+		super.onRemoval(key, co, cause);
+		int slot = ((ClockCacheObject<V>) co).slot;
+		if ((slot != -1) && (slots[slot] == co)) {
+			release(slot);
+		}
+	}
+
+	@Override
+	protected void onClear() {
+		reset(slots.length);
+	}
+
+	/**
+	 * Returns free slot, growing the clock when needed.
+	 */
+	private int takeSlot() {
+		if (freeCount == 0) {
+			if (used == slots.length) {
+				int capacity = slots.length << 1;
+				Object[] newKeys = new Object[capacity];
+				ClockCacheObject<?>[] newSlots = new ClockCacheObject<?>[capacity];
+				System.arraycopy(keys, 0, newKeys, 0, used);
+				System.arraycopy(slots, 0, newSlots, 0, used);
+				keys = newKeys;
+				slots = newSlots;
+				free = new int[capacity];
+			}
+			return used++;
+		}
+		return free[--freeCount];
+	}
+
+	private void release(int slot) {
+		keys[slot] = null;
+		slots[slot] = null;
+		free[freeCount++] = slot;
+	}
+
+	// ---------------------------------------------------------------- prune
+
+	/**
+	 * Prunes expired objects and, if cache is still full, advances the clock hand
+	 * until an unreferenced object is found and evicts it.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected int pruneCache() {
+		int count = 0;
+		if (isPruneExpiredActive()) {
+			for (int i = 0; i < used; i++) {
+				ClockCacheObject<?> cco = slots[i];
+				if ((cco != null) && (cco.isExpired() == true)) {
+					K key = (K) keys[i];
+					cacheMap.remove(key);
+					onRemoval(key, (ClockCacheObject<V>) cco, RemovalCause.EXPIRED);
+					count++;
+				}
+			}
+		}
+		if (isFull() == false || used == 0) {
+			return count;
+		}
+
+		// at most two rounds: the first one may only clear reference bits
+		for (int n = 2 * used; n > 0; n--) {
+			if (hand >= used) {
+				hand = 0;
+			}
+			int slot = hand++;
+			ClockCacheObject<?> cco = slots[slot];
+			if (cco == null) {
+				continue;
+			}
+			if (cco.referenced) {
+				cco.referenced = false;		// second chance
+				continue;
+			}
+			K key = (K) keys[slot];
+			onEvict(key, cacheMap.remove(key));
+			return count + 1;
+		}
+		return count;
+	}
+}
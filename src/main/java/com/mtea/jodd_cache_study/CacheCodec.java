@@ -0,0 +1,22 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.IOException;
+
+/**
+ * Converts cache keys or values to bytes and back.
+ * Used when cache content leaves the heap, e.g. for snapshots and journals.
+ */
+public interface CacheCodec<T> {
+
+	/**
+	 * Encodes an object to bytes.
+	 */
+	byte[] encode(T object) throws IOException;
+
+	/**
+	 * Decodes an object from bytes previously created by {@link #encode(Object)}.
+	 */
+	T decode(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,102 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Weakly consistent spliterator over a range of {@link CacheScanTable scan table} slots.
+ * References are copied chunk by chunk, each chunk under a short read lock;
+ * traversal of a chunk doesn't lock. Objects that expire, or whose values are
+ * collected, before they are reached are skipped. Splits the range not yet copied
+ * in halves, for parallel streams.
+ */
+final class CacheEntrySpliterator<K, V> implements Spliterator<Map.Entry<K, V>> {
+
+	private final AbstractCacheMap<K, V> cache;
+	private int position;		// next slot to copy
+	private final int fence;
+
+	private Object[] keys;
+	private AbstractCacheMap.CacheObject<?>[] objects;
+	private int index;
+	private int count;
+
+	CacheEntrySpliterator(AbstractCacheMap<K, V> cache, int position, int fence) {
+		this.cache = cache;
+		this.position = position;
+		this.fence = fence;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+		while (true) {
+			while (index < count) {
+				int i = index++;
+				AbstractCacheMap.CacheObject<V> co = (AbstractCacheMap.CacheObject<V>) objects[i];
+				objects[i] = null;
+				if (co.isExpired() == true) {
+					continue;
+				}
+				V value = co.peekObject();
+				if (value == null && co.isCleared()) {
+					continue;
+				}
+				action.accept(new AbstractMap.SimpleImmutableEntry<K, V>((K) keys[i], value));
+				return true;
+			}
+			if (nextChunk() == false) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Copies references of the next chunk of slots.
+	 * Returns <code>false</code> if there are no more slots.
+	 */
+	private boolean nextChunk() {
+		if (position >= fence) {
+			return false;
+		}
+		int slots = Math.min(AbstractCacheMap.SCAN_CHUNK, fence - position);
+		if (keys == null) {
+			keys = new Object[AbstractCacheMap.SCAN_CHUNK];
+			objects = new AbstractCacheMap.CacheObject<?>[AbstractCacheMap.SCAN_CHUNK];
+		}
+		index = 0;
+		count = cache.scanReferences(position, slots, keys, objects, 0);
+		if (count == -1) {
+			count = 0;
+			position = fence;
+			return false;
+		}
+		position += slots;
+		return true;
+	}
+
+	public Spliterator<Map.Entry<K, V>> trySplit() {
+		if (fence - position <= AbstractCacheMap.SCAN_CHUNK) {
+			return null;
+		}
+		int mid = (position + fence) >>> 1;
+		CacheEntrySpliterator<K, V> prefix = new CacheEntrySpliterator<K, V>(cache, position, mid);
+		position = mid;
+		return prefix;
+	}
+
+	/**
+	 * Returns the number of remaining slots, including empty ones and objects
+	 * that will be skipped.
+	 */
+	public long estimateSize() {
+		return (fence - position) + (count - index);
+	}
+
+	public int characteristics() {
+		return NONNULL | CONCURRENT;
+	}
+}
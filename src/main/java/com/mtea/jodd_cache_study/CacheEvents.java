@@ -0,0 +1,121 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 飞行记录事件
+ * Java Flight Recorder events of caches.
+ *
+ * <p>
+ * Events follow the usual JFR pattern: begun and ended around the operation and
+ * filled only if they should be committed. When no recording has them enabled,
+ * they are not committed and their allocation is optimized away. Each event has
+ * a default duration threshold, that recordings may change. Gets and puts are
+ * additionally sampled, see {@link #setAccessSampleRate(int)}.
+ * <p>
+ * Event classes are in {@link FlightRecorderEvents}, which is loaded only when
+ * the <code>jdk.jfr</code> module is present. Without it, begin methods return
+ * <code>null</code> and commit methods ignore it, so caches work on any Java 8.
+ */
+public final class CacheEvents {
+
+	/**
+	 * <code>true</code> if <code>jdk.jfr</code> is available (JDK 11, or 8u262 and later).
+	 */
+	static final boolean AVAILABLE = isAvailable();
+
+	private static volatile int accessSampleRate = 100;
+
+	private CacheEvents() {
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, CacheEvents.class.getClassLoader());
+			return true;
+		}
+		catch (ClassNotFoundException cnfex) {
+			return false;
+		}
+		catch (LinkageError lerr) {
+			return false;
+		}
+	}
+
+	/**
+	 * Sets how many gets and puts are recorded: one of <code>rate</code>. Default is 100.
+	 */
+	public static void setAccessSampleRate(int rate) {
+		if (rate <= 0) {
+			throw new IllegalArgumentException("Invalid sample rate: " + rate);
+		}
+		accessSampleRate = rate;
+	}
+
+	/**
+	 * Returns <code>true</code> for sampled gets and puts.
+	 */
+	static boolean sampled() {
+		int rate = accessSampleRate;
+		return (rate == 1) || (ThreadLocalRandom.current().nextInt(rate) == 0);
+	}
+
+	// ---------------------------------------------------------------- begin
+
+	// 事件对象以 Object 传递, 调用方不引用 jdk.jfr 的类
+
+	static Object beginAccess() {
+		return AVAILABLE ? FlightRecorderEvents.beginAccess() : null;
+	}
+
+	static Object beginPrune() {
+		return AVAILABLE ? FlightRecorderEvents.beginPrune() : null;
+	}
+
+	static Object beginSweep() {
+		return AVAILABLE ? FlightRecorderEvents.beginSweep() : null;
+	}
+
+	static Object beginLockWait() {
+		return AVAILABLE ? FlightRecorderEvents.beginLockWait() : null;
+	}
+
+	static Object beginFileLoad() {
+		return AVAILABLE ? FlightRecorderEvents.beginFileLoad() : null;
+	}
+
+	// ---------------------------------------------------------------- commit
+
+	static void commitAccess(Object event, Object cache, String operation, Object key, boolean hit) {
+		if (event != null) {
+			FlightRecorderEvents.commitAccess(event, cache, operation, key, hit);
+		}
+	}
+
+	static void commitPrune(Object event, Object cache, int removed, int size) {
+		if (event != null) {
+			FlightRecorderEvents.commitPrune(event, cache, removed, size);
+		}
+	}
+
+	static void commitSweep(Object event, Object cache, int checked, int removed) {
+		if (event != null) {
+			FlightRecorderEvents.commitSweep(event, cache, checked, removed);
+		}
+	}
+
+	static void commitLockWait(Object event, Object cache, boolean exclusive) {
+		if (event != null) {
+			FlightRecorderEvents.commitLockWait(event, cache, exclusive);
+		}
+	}
+
+	static void commitFileLoad(Object event, File file, int bytes, boolean cached) {
+		if (event != null) {
+			FlightRecorderEvents.commitFileLoad(event, file, bytes, cached);
+		}
+	}
+}
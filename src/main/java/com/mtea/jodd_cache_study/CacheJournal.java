@@ -0,0 +1,335 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only journal of cache modifications made between two full
+ * {@link CacheSnapshot snapshots}. Attach it to the cache with
+ * {@link AbstractCacheMap#setJournal(CacheJournal)}; every <code>put</code>,
+ * <code>remove</code>, <code>clear</code> and namespace invalidation is then appended
+ * to the journal file. Namespace is recorded by one of its keys.
+ * Puts are recorded with their expiration time, so replayed objects keep
+ * their remaining time-to-live.
+ * <p>
+ * Keys and values are encoded before the cache lock is taken; if encoding
+ * fails, the cache operation fails and the cache is not changed. Under the lock
+ * encoded records are only queued, in the order of modifications, and they are
+ * written to the file after the lock is released. Write failures don't fail cache
+ * operations: the error is available from {@link #getLastError()} and further
+ * records are dropped until the journal is rotated by the next snapshot.
+ * <p>
+ * Records are buffered, call {@link #flush()} (or {@link #close()}) to
+ * write them to the disk. When a snapshot is taken, journal is rotated:
+ * current file is renamed to <code>*.old</code> and deleted once the snapshot
+ * is safely written. On restart, load the snapshot first and then
+ * {@link #replay(AbstractCacheMap) replay} the journal, before attaching it.
+ */
+public class CacheJournal<K, V> {
+
+	static final byte OP_PUT = 1;
+	static final byte OP_REMOVE = 2;
+	static final byte OP_CLEAR = 3;
+	static final byte OP_INVALIDATE = 4;
+
+	/**
+	 * Journal record, encoded before the cache lock is taken.
+	 */
+	static final class Record<K2> {
+		final byte op;
+		final K2 key;			// key still to encode, when it's known only under the lock
+		final byte[] keyBytes;
+		final byte[] valueBytes;
+		long ttl;
+		long expireAt;
+
+		Record(byte op, K2 key, byte[] keyBytes, byte[] valueBytes) {
+			this.op = op;
+			this.key = key;
+			this.keyBytes = keyBytes;
+			this.valueBytes = valueBytes;
+		}
+	}
+
+	protected final File file;
+	protected final File oldFile;
+	protected final CacheCodec<K> keyCodec;
+	protected final CacheCodec<V> valueCodec;
+	protected final int bufferSize;
+
+	private RandomAccessFile raf;
+	private ChannelOutput output;
+
+	// 等待写入的记录, 在缓存锁内按修改顺序加入
+	private final Object pendingLock = new Object();
+	private List<Record<K>> pending = new ArrayList<Record<K>>();
+	private volatile IOException lastError;
+
+	public CacheJournal(File file, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) throws IOException {
+		this(file, keyCodec, valueCodec, 64 * 1024);
+	}
+
+	/**
+	 * Opens journal file for appending.
+	 * @param bufferSize size of the write buffer in bytes
+	 */
+	public CacheJournal(File file, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec, int bufferSize) throws IOException {
+		this.file = file;
+		this.oldFile = new File(file.getPath() + ".old");
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.bufferSize = bufferSize;
+		open();
+	}
+
+	private void open() throws IOException {
+		raf = new RandomAccessFile(file, "rw");
+		FileChannel channel = raf.getChannel();
+		channel.position(channel.size());
+		output = new ChannelOutput(channel, bufferSize);
+	}
+
+	/**
+	 * Returns journal file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the last write failure, or <code>null</code> if records
+	 * are written since the last rotation.
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+
+	// ---------------------------------------------------------------- log
+
+	/**
+	 * Encodes put record. Invoked by the cache before it takes the lock;
+	 * expiration is set under the lock, before the record is appended.
+	 */
+	Record<K> encodePut(K key, V object) {
+		try {
+			return new Record<K>(OP_PUT, null, keyCodec.encode(key), valueCodec.encode(object));
+		} catch (IOException ioex) {
+			throw new IllegalStateException("Journal encoding failed: " + file, ioex);
+		}
+	}
+
+	/**
+	 * Encodes remove record. Invoked by the cache before it takes the lock.
+	 */
+	Record<K> encodeRemove(K key) {
+		try {
+			return new Record<K>(OP_REMOVE, null, keyCodec.encode(key), null);
+		} catch (IOException ioex) {
+			throw new IllegalStateException("Journal encoding failed: " + file, ioex);
+		}
+	}
+
+	/**
+	 * Queues encoded record. Invoked under the cache write lock,
+	 * so records are queued in the order of modifications.
+	 */
+	void append(Record<K> record) {
+		synchronized (pendingLock) {
+			pending.add(record);
+		}
+	}
+
+	/**
+	 * Queues remove record of a key found under the cache write lock,
+	 * e.g. by tag invalidation. Key is encoded when the record is written.
+	 */
+	void appendRemove(K key) {
+		append(new Record<K>(OP_REMOVE, key, null, null));
+	}
+
+	/**
+	 * Queues invalidation of the namespace of given key.
+	 * Invoked under the cache write lock.
+	 */
+	void appendInvalidate(K key) {
+		append(new Record<K>(OP_INVALIDATE, key, null, null));
+	}
+
+	/**
+	 * Queues clear record. Invoked under the cache write lock.
+	 */
+	void appendClear() {
+		append(new Record<K>(OP_CLEAR, null, null, null));
+	}
+
+	/**
+	 * Writes queued records to the journal buffer. Invoked by the cache
+	 * after the lock is released. Failure is kept as the last error.
+	 */
+	synchronized void write() {
+		List<Record<K>> records;
+		synchronized (pendingLock) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			records = pending;
+			pending = new ArrayList<Record<K>>();
+		}
+		if (lastError != null) {
+			return;		// 记录已不完整, 等待下一次快照
+		}
+		try {
+			for (Record<K> record : records) {
+				writeRecord(record);
+			}
+		} catch (IOException ioex) {
+			lastError = ioex;
+		}
+	}
+
+	private void writeRecord(Record<K> record) throws IOException {
+		output.writeByte(record.op);
+		if (record.op == OP_CLEAR) {
+			return;
+		}
+		output.writeBytes(record.keyBytes != null ? record.keyBytes : keyCodec.encode(record.key));
+		if (record.op == OP_PUT) {
+			output.writeBytes(record.valueBytes);
+			output.writeLong(record.ttl);
+			output.writeLong(record.expireAt);
+		}
+	}
+
+	/**
+	 * Writes buffered records to the journal file.
+	 */
+	public synchronized void flush() throws IOException {
+		write();
+		output.flush();
+	}
+
+	/**
+	 * Flushes and closes the journal.
+	 */
+	public synchronized void close() throws IOException {
+		flush();
+		raf.close();
+	}
+
+	// ---------------------------------------------------------------- rotate
+
+	/**
+	 * Moves current journal aside and starts a new, empty one.
+	 * Invoked while snapshot content is captured, under cache write lock.
+	 */
+	synchronized void rotate() throws IOException {
+		close();
+		lastError = null;		// new journal continues the snapshot
+		if (oldFile.exists()) {
+			// previous snapshot never completed, keep both journals
+			appendTo(file, oldFile);
+			if (file.delete() == false) {
+				throw new IOException("Unable to delete: " + file);
+			}
+		} else if (file.renameTo(oldFile) == false) {
+			throw new IOException("Unable to rename: " + file);
+		}
+		open();
+	}
+
+	/**
+	 * Deletes rotated journal once the snapshot is written.
+	 */
+	synchronized void commitRotation() throws IOException {
+		if (oldFile.exists() && (oldFile.delete() == false)) {
+			throw new IOException("Unable to delete: " + oldFile);
+		}
+	}
+
+	private static void appendTo(File source, File target) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(source, "r");
+		RandomAccessFile out = new RandomAccessFile(target, "rw");
+		try {
+			FileChannel outChannel = out.getChannel();
+			FileChannel inChannel = in.getChannel();
+			long position = 0;
+			long size = inChannel.size();
+			while (position < size) {
+				position += inChannel.transferTo(position, size - position, outChannel.position(outChannel.size()));
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	// ---------------------------------------------------------------- replay
+
+	/**
+	 * Applies journal records to the cache: first from the rotated journal
+	 * left by an interrupted snapshot, if any, then from the current one.
+	 * Objects get the remaining time-to-live, the expired ones are removed.
+	 * Replaying rotated records on top of already completed snapshot is harmless,
+	 * since they lead to the same content. Should be invoked before the journal
+	 * is attached to the cache, otherwise replayed records are logged again.
+	 * Truncated record at the end of the file (i.e. after a crash) is ignored.
+	 * Returns number of replayed records.
+	 */
+	public int replay(AbstractCacheMap<K, V> cache) throws IOException {
+		flush();
+		int count = 0;
+		if (oldFile.exists()) {
+			count += replay(oldFile, cache);
+		}
+		count += replay(file, cache);
+		return count;
+	}
+
+	protected int replay(File journalFile, AbstractCacheMap<K, V> cache) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(journalFile, "r");
+		int count = 0;
+		try {
+			ChannelInput input = new ChannelInput(in.getChannel(), bufferSize);
+			while (input.isEof() == false) {
+				byte op = input.readByte();
+				switch (op) {
+					case OP_PUT:
+						K key = keyCodec.decode(input.readBytes());
+						V value = valueCodec.decode(input.readBytes());
+						long ttl = input.readLong();
+						long expireAt = input.readLong();
+						if ((ttl != 0) && (expireAt <= System.currentTimeMillis())) {
+							cache.remove(key);		// expired meanwhile, also any older object
+						} else {
+							cache.putExpiring(key, value, ttl, expireAt);
+						}
+						break;
+					case OP_REMOVE:
+						cache.remove(keyCodec.decode(input.readBytes()));
+						break;
+					case OP_CLEAR:
+						cache.clear();
+						break;
+					case OP_INVALIDATE:
+						cache.invalidateNamespaceOf(keyCodec.decode(input.readBytes()));
+						break;
+					default:
+						throw new IOException("Corrupted journal " + journalFile + ", unknown record: " + op);
+				}
+				count++;
+			}
+		} catch (EOFException eofex) {
+			// truncated last record
+		} finally {
+			in.close();
+		}
+		return count;
+	}
+}
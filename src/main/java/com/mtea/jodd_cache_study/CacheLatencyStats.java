@@ -0,0 +1,72 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * 缓存延迟统计
+ * Latency histograms of one cache.
+ *
+ * <p>
+ * Operation histograms hold the whole call, as seen by the caller. Time spent
+ * waiting for the cache lock and time spent holding it, doing the work, are kept
+ * in separate histograms for all operations together.
+ */
+public class CacheLatencyStats {
+
+	protected final LatencyHistogram getHit = new LatencyHistogram();
+	protected final LatencyHistogram getMiss = new LatencyHistogram();
+	protected final LatencyHistogram put = new LatencyHistogram();
+	protected final LatencyHistogram prune = new LatencyHistogram();
+	protected final LatencyHistogram lockWait = new LatencyHistogram();
+	protected final LatencyHistogram lockHold = new LatencyHistogram();
+
+	public LatencyHistogram getGetHit() {
+		return getHit;
+	}
+
+	public LatencyHistogram getGetMiss() {
+		return getMiss;
+	}
+
+	public LatencyHistogram getPut() {
+		return put;
+	}
+
+	/**
+	 * Returns histogram of prunes, both explicit ones and
+	 * ones triggered by a put into the full cache.
+	 */
+	public LatencyHistogram getPrune() {
+		return prune;
+	}
+
+	public LatencyHistogram getLockWait() {
+		return lockWait;
+	}
+
+	public LatencyHistogram getLockHold() {
+		return lockHold;
+	}
+
+	/**
+	 * Clears all histograms.
+	 */
+	public void reset() {
+		getHit.reset();
+		getMiss.reset();
+		put.reset();
+		prune.reset();
+		lockWait.reset();
+		lockHold.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "get-hit: " + getHit.snapshot() +
+				"\nget-miss: " + getMiss.snapshot() +
+				"\nput: " + put.snapshot() +
+				"\nprune: " + prune.snapshot() +
+				"\nlock-wait: " + lockWait.snapshot() +
+				"\nlock-hold: " + lockHold.snapshot();
+	}
+}
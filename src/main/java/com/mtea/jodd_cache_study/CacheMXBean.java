@@ -0,0 +1,67 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * JMX view of a cache registered in {@link CacheRegistry}.
+ * Sizes of file caches are in bytes, of other caches in objects.
+ */
+public interface CacheMXBean {
+
+	/**
+	 * Returns the registered name.
+	 */
+	String getName();
+
+	/**
+	 * Returns the cache class name.
+	 */
+	String getType();
+
+	/**
+	 * Returns number of cached objects.
+	 */
+	int getSize();
+
+	/**
+	 * Returns the capacity, 0 means no limit.
+	 */
+	int getCacheSize();
+
+	/**
+	 * Changes the capacity at runtime, evicting objects when it is shrunk.
+	 */
+	void setCacheSize(int cacheSize);
+
+	/**
+	 * Returns used capacity.
+	 */
+	int getUsedSize();
+
+	long getCacheTimeout();
+
+	long getHitCount();
+
+	long getMissCount();
+
+	double getHitRatio();
+
+	long getEvictionCount();
+
+	long getExpirationCount();
+
+	/**
+	 * Returns up to 10 hottest keys with their counts and shares,
+	 * empty if cache has no {@link HotKeyTracker}.
+	 */
+	String[] getHotKeys();
+
+	/**
+	 * Prunes the cache, returns number of removed objects.
+	 */
+	int prune();
+
+	void clear();
+
+	void resetStatistics();
+}
@@ -0,0 +1,228 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import jodd.exception.UncheckedException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存注册表
+ * Registry of named caches in the JVM, each one exposed as a {@link CacheMXBean}
+ * in the platform MBean server, under the <code>com.mtea.jodd_cache_study:type=Cache</code> domain.
+ * <p>
+ * Registry holds caches strongly, caches that are not used anymore should be
+ * {@link #unregister(String) unregistered}.
+ */
+public class CacheRegistry {
+
+	public static final String DOMAIN = "com.mtea.jodd_cache_study";
+
+	private static final Map<String, CacheMXBean> caches = new ConcurrentHashMap<String, CacheMXBean>();
+
+	/**
+	 * Registers cache under the unique name.
+	 */
+	public static CacheMXBean register(String name, AbstractCacheMap<?, ?> cache) {
+		return register(new MapCacheBean(name, cache));
+	}
+
+	/**
+	 * Registers file cache under the unique name.
+	 */
+	public static CacheMXBean register(String name, FileLFUCache cache) {
+		return register(new FileCacheBean(name, cache));
+	}
+
+	private static synchronized CacheMXBean register(CacheMXBean bean) {
+		String name = bean.getName();
+		if (caches.containsKey(name)) {
+			throw new IllegalArgumentException("Cache already registered: " + name);
+		}
+		try {
+			server().registerMBean(bean, objectName(name));
+		}
+		catch (JMException jmex) {
+			throw new UncheckedException(jmex);
+		}
+		caches.put(name, bean);
+		return bean;
+	}
+
+	/**
+	 * Unregisters the cache. Returns <code>false</code> if there was no such cache.
+	 */
+	public static synchronized boolean unregister(String name) {
+		if (caches.remove(name) == null) {
+			return false;
+		}
+		try {
+			server().unregisterMBean(objectName(name));
+		}
+		catch (JMException jmex) {
+			throw new UncheckedException(jmex);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns registered cache or <code>null</code>.
+	 */
+	public static CacheMXBean lookup(String name) {
+		return caches.get(name);
+	}
+
+	/**
+	 * Returns all registered caches, sorted by name.
+	 */
+	public static Map<String, CacheMXBean> getCaches() {
+		return new TreeMap<String, CacheMXBean>(caches);
+	}
+
+	/**
+	 * Returns JMX name of a cache.
+	 */
+	public static ObjectName objectName(String name) {
+		try {
+			return new ObjectName(DOMAIN + ":type=Cache,name=" + ObjectName.quote(name));
+		}
+		catch (JMException jmex) {
+			throw new IllegalArgumentException(jmex);
+		}
+	}
+
+	private static MBeanServer server() {
+		return ManagementFactory.getPlatformMBeanServer();
+	}
+
+	// ---------------------------------------------------------------- beans
+
+	static class MapCacheBean implements CacheMXBean {
+
+		private final String name;
+		private final AbstractCacheMap<?, ?> cache;
+
+		MapCacheBean(String name, AbstractCacheMap<?, ?> cache) {
+			this.name = name;
+			this.cache = cache;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getType() {
+			return cache.getClass().getName();
+		}
+
+		public int getSize() {
+			return cache.size();
+		}
+
+		public int getCacheSize() {
+			return cache.getCacheSize();
+		}
+
+		public void setCacheSize(int cacheSize) {
+			cache.setCacheSize(cacheSize);
+		}
+
+		public int getUsedSize() {
+			return cache.size();
+		}
+
+		public long getCacheTimeout() {
+			return cache.getCacheTimeout();
+		}
+
+		public long getHitCount() {
+			return cache.getHitCount();
+		}
+
+		public long getMissCount() {
+			return cache.getMissCount();
+		}
+
+		public double getHitRatio() {
+			return cache.getHitRatio();
+		}
+
+		public long getEvictionCount() {
+			return cache.getEvictionCount();
+		}
+
+		public long getExpirationCount() {
+			return cache.getExpirationCount();
+		}
+
+		public String[] getHotKeys() {
+			HotKeyTracker<?> tracker = cache.getHotKeyTracker();
+			if (tracker == null) {
+				return new String[0];
+			}
+			List<? extends HotKeyTracker.HotKey<?>> hotKeys = tracker.getTopKeys(10);
+			String[] result = new String[hotKeys.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = hotKeys.get(i).toString();
+			}
+			return result;
+		}
+
+		public int prune() {
+			return cache.prune();
+		}
+
+		public void clear() {
+			cache.clear();
+		}
+
+		public void resetStatistics() {
+			cache.resetStatistics();
+		}
+	}
+
+	/**
+	 * File cache bean, sizes are in bytes.
+	 */
+	static class FileCacheBean extends MapCacheBean {
+
+		private final FileLFUCache fileCache;
+
+		FileCacheBean(String name, FileLFUCache fileCache) {
+			super(name, fileCache.cache);
+			this.fileCache = fileCache;
+		}
+
+		@Override
+		public String getType() {
+			return FileLFUCache.class.getName();
+		}
+
+		@Override
+		public int getCacheSize() {
+			return fileCache.getMaxSize();
+		}
+
+		@Override
+		public void setCacheSize(int cacheSize) {
+			fileCache.setMaxSize(cacheSize);
+		}
+
+		@Override
+		public int getUsedSize() {
+			return fileCache.getUsedSize();
+		}
+
+		@Override
+		public void clear() {
+			fileCache.clear();
+		}
+	}
+}
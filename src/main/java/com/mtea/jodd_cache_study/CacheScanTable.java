@@ -0,0 +1,188 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.Arrays;
+
+/**
+ * Keys and cache objects kept in slots that never move, for scans in chunks.
+ * <p>
+ * Iterators of the cache map fail on any change, and access ordered maps
+ * change even on a hit. Here every entry stays in its slot for as long as it
+ * is cached: replacing an object keeps the slot and the key index is rehashed
+ * without moving slots. So a scan may release the lock between chunks and
+ * continue from a slot position; entries cached for the whole scan are copied
+ * exactly once. Freed slots are reused, so entries added meanwhile may be missed.
+ * <p>
+ * Key index is an open addressing table of slot numbers (plus one; 0 = empty,
+ * -1 = deleted), no objects are created per entry. Not thread-safe.
+ */
+class CacheScanTable<K, V> {
+
+	private Object[] keys = new Object[16];
+	private AbstractCacheMap.CacheObject<?>[] objects = new AbstractCacheMap.CacheObject<?>[16];
+	private int[] free = new int[16];		// freed slots below the limit
+	private int freeCount;
+	private int limit;						// slots from here on were never used
+
+	private int[] index = new int[32];
+	private int size;
+	private int deleted;
+
+	/**
+	 * Returns the number of slots that may hold entries.
+	 */
+	int limit() {
+		return limit;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an entry or replaces the object of existing one, in the same slot.
+	 */
+	void put(K key, AbstractCacheMap.CacheObject<V> co) {
+		int i = find(key);
+		if (i != -1) {
+			objects[index[i] - 1] = co;
+			return;
+		}
+		if ((size + deleted + 1) << 1 > index.length) {
+			rehash();
+		}
+		int slot;
+		if (freeCount > 0) {
+			slot = free[--freeCount];
+		} else {
+			if (limit == keys.length) {
+				keys = Arrays.copyOf(keys, limit << 1);
+				objects = Arrays.copyOf(objects, limit << 1);
+				free = Arrays.copyOf(free, limit << 1);
+			}
+			slot = limit++;
+		}
+		keys[slot] = key;
+		objects[slot] = co;
+		size++;
+
+		int mask = index.length - 1;
+		i = hash(key) & mask;
+		while (index[i] > 0) {
+			i = (i + 1) & mask;
+		}
+		if (index[i] == -1) {
+			deleted--;
+		}
+		index[i] = slot + 1;
+	}
+
+	/**
+	 * Removes the entry, only if key is mapped to the given object.
+	 */
+	void remove(K key, AbstractCacheMap.CacheObject<V> co) {
+		int i = find(key);
+		if (i == -1) {
+			return;
+		}
+		int slot = index[i] - 1;
+		if (objects[slot] != co) {
+			return;
+		}
+		index[i] = -1;
+		deleted++;
+		keys[slot] = null;
+		objects[slot] = null;
+		free[freeCount++] = slot;
+		size--;
+	}
+
+	/**
+	 * Removes all entries, capacity is kept.
+	 */
+	void clear() {
+		Arrays.fill(keys, 0, limit, null);
+		Arrays.fill(objects, 0, limit, null);
+		Arrays.fill(index, 0);
+		limit = 0;
+		freeCount = 0;
+		size = 0;
+		deleted = 0;
+	}
+
+	/**
+	 * Copies entries of slots <code>[from, to)</code> into given arrays,
+	 * which must have room for <code>to - from</code> entries.
+	 * Returns the number of copied entries.
+	 */
+	int copy(int from, int to, Object[] keysCopy, AbstractCacheMap.CacheObject<?>[] objectsCopy, int offset) {
+		if (to > limit) {
+			to = limit;
+		}
+		int count = 0;
+		for (int slot = from; slot < to; slot++) {
+			if (objects[slot] != null) {
+				keysCopy[offset + count] = keys[slot];
+				objectsCopy[offset + count] = objects[slot];
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// ---------------------------------------------------------------- index
+
+	/**
+	 * Returns the index position of the key, -1 if key is not in the table.
+	 */
+	private int find(Object key) {
+		int mask = index.length - 1;
+		int i = hash(key) & mask;
+		while (true) {
+			int value = index[i];
+			if (value == 0) {
+				return -1;
+			}
+			if (value > 0) {
+				Object k = keys[value - 1];
+				if ((k == key) || ((key != null) && key.equals(k))) {
+					return i;
+				}
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * Rebuilds the index without deleted marks, with room for one more key.
+	 * Only the index is rebuilt, slots don't move.
+	 */
+	private void rehash() {
+		int length = index.length;
+		while ((size + 1) << 1 > length) {
+			length <<= 1;
+		}
+		index = new int[length];
+		deleted = 0;
+		int mask = length - 1;
+		for (int slot = 0; slot < limit; slot++) {
+			if (objects[slot] == null) {
+				continue;
+			}
+			int i = hash(keys[slot]) & mask;
+			while (index[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			index[i] = slot + 1;
+		}
+	}
+
+	private static int hash(Object key) {
+		if (key == null) {
+			return 0;
+		}
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
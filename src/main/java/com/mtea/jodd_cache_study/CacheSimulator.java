@@ -0,0 +1,319 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 缓存策略模拟器
+ * Trace driven cache simulator, for comparing policies and sizes on real traffic.
+ *
+ * <p>
+ * Trace is replayed against every registered policy and every cache size, each
+ * combination on its own cache instance, in parallel. On every access, object
+ * is read from the cache and, on a miss, put into it. Results contain hit ratio,
+ * byte hit ratio (sizes are taken from the trace), number of evictions and time
+ * spent in puts, i.e. simulated eviction cost.
+ * <p>
+ * Time is wall-clock, so it is not measured in the parallel run: after it,
+ * each combination is replayed once more to warm up and then once timed,
+ * one at a time. Use {@link #setMeasureCost(boolean)} to skip it.
+ * <p>
+ * Cache sizes are given in number of objects.
+ */
+public class CacheSimulator {
+
+	/**
+	 * Creates caches of a policy.
+	 */
+	public interface CacheFactory {
+		AbstractCacheMap<Long, Integer> create(int cacheSize);
+	}
+
+	/**
+	 * Result of one policy and size.
+	 */
+	public static class Result {
+		public final String policy;
+		public final int cacheSize;
+		public final long requests;
+		public final long hits;
+		public final long bytes;
+		public final long hitBytes;
+		public final long evictions;
+		public final long putNanos;
+
+		Result(String policy, int cacheSize, long requests, long hits, long bytes, long hitBytes, long evictions, long putNanos) {
+			this.policy = policy;
+			this.cacheSize = cacheSize;
+			this.requests = requests;
+			this.hits = hits;
+			this.bytes = bytes;
+			this.hitBytes = hitBytes;
+			this.evictions = evictions;
+			this.putNanos = putNanos;
+		}
+
+		public double getHitRatio() {
+			return requests == 0 ? 0 : (double) hits / requests;
+		}
+
+		public double getByteHitRatio() {
+			return bytes == 0 ? 0 : (double) hitBytes / bytes;
+		}
+
+		/**
+		 * Returns average time of a put on miss, including eviction, in nanoseconds.
+		 */
+		public double getPutCost() {
+			long misses = requests - hits;
+			return misses == 0 ? 0 : (double) putNanos / misses;
+		}
+	}
+
+	protected final Map<String, CacheFactory> policies = new LinkedHashMap<String, CacheFactory>();
+	protected int threads = Runtime.getRuntime().availableProcessors();
+	protected boolean measureCost = true;
+
+	/**
+	 * Registers a policy under given name.
+	 */
+	public CacheSimulator addPolicy(String name, CacheFactory factory) {
+		policies.put(name, factory);
+		return this;
+	}
+
+	/**
+	 * Registers all cache implementations of this package.
+	 */
+	public CacheSimulator addDefaultPolicies() {
+		addPolicy("LRU", new CacheFactory() {
+			public AbstractCacheMap<Long, Integer> create(int cacheSize) {
+				return new LRUCache<Long, Integer>(cacheSize);
+			}
+		});
+		addPolicy("LFU", new CacheFactory() {
+			public AbstractCacheMap<Long, Integer> create(int cacheSize) {
+				return new LFUCache<Long, Integer>(cacheSize);
+			}
+		});
+		addPolicy("FIFO", new CacheFactory() {
+			public AbstractCacheMap<Long, Integer> create(int cacheSize) {
+				return new FIFOCache<Long, Integer>(cacheSize);
+			}
+		});
+		addPolicy("ARC", new CacheFactory() {
+			public AbstractCacheMap<Long, Integer> create(int cacheSize) {
+				return new ARCCache<Long, Integer>(cacheSize);
+			}
+		});
+		addPolicy("2Q", new CacheFactory() {
+			public AbstractCacheMap<Long, Integer> create(int cacheSize) {
+				return new TwoQueueCache<Long, Integer>(cacheSize);
+			}
+		});
+		addPolicy("CLOCK", new CacheFactory() {
+			public AbstractCacheMap<Long, Integer> create(int cacheSize) {
+				return new CLOCKCache<Long, Integer>(cacheSize);
+			}
+		});
+		addPolicy("SAMPLED-LFU", new CacheFactory() {
+			public AbstractCacheMap<Long, Integer> create(int cacheSize) {
+				return new SampledCache<Long, Integer>(cacheSize, SampledCache.Metric.ACCESS_COUNT);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Sets number of simulation threads.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets whether put cost is measured, in sequential, timed replays.
+	 * Without it, put cost in results is 0.
+	 */
+	public void setMeasureCost(boolean measureCost) {
+		this.measureCost = measureCost;
+	}
+
+	// ---------------------------------------------------------------- run
+
+	/**
+	 * Replays trace against all policies and sizes. Results are ordered
+	 * by policy and then by size.
+	 */
+	public List<Result> run(final AccessTrace trace, int... cacheSizes) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for (final Map.Entry<String, CacheFactory> policy : policies.entrySet()) {
+				for (final int cacheSize : cacheSizes) {
+					futures.add(executor.submit(new Callable<Result>() {
+						public Result call() {
+							return simulate(policy.getKey(), policy.getValue().create(cacheSize), trace, false);
+						}
+					}));
+				}
+			}
+			List<Result> results = new ArrayList<Result>(futures.size());
+			for (Future<Result> future : futures) {
+				results.add(future.get());
+			}
+			if (measureCost) {
+				measureCost(results, trace, cacheSizes);
+			}
+			return results;
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(iex);
+		}
+		catch (ExecutionException eex) {
+			throw new IllegalStateException(eex.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Times puts of every combination, one at a time, after a warm-up replay,
+	 * so measurements are not disturbed by other simulations and by the JIT.
+	 */
+	private void measureCost(List<Result> results, AccessTrace trace, int[] cacheSizes) {
+		int index = 0;
+		for (Map.Entry<String, CacheFactory> policy : policies.entrySet()) {
+			for (int cacheSize : cacheSizes) {
+				simulate(policy.getKey(), policy.getValue().create(cacheSize), trace, false);
+				Result timed = simulate(policy.getKey(), policy.getValue().create(cacheSize), trace, true);
+				Result result = results.get(index);
+				results.set(index, new Result(result.policy, result.cacheSize, result.requests, result.hits,
+						result.bytes, result.hitBytes, result.evictions, timed.putNanos));
+				index++;
+			}
+		}
+	}
+
+	/**
+	 * Replays trace against single cache, timing the puts.
+	 */
+	public static Result simulate(String policy, AbstractCacheMap<Long, Integer> cache, AccessTrace trace) {
+		return simulate(policy, cache, trace, true);
+	}
+
+	/**
+	 * Replays trace against single cache. Put time is 0, if not timed.
+	 */
+	static Result simulate(String policy, AbstractCacheMap<Long, Integer> cache, AccessTrace trace, boolean timed) {
+		final long[] evictions = new long[1];
+		cache.setRemovalListener(new RemovalListener<Long, Integer>() {
+			public void onRemoval(Long key, Integer value, RemovalCause cause) {
+				if (cause == RemovalCause.SIZE) {
+					evictions[0]++;
+				}
+			}
+		}, new Executor() {
+			public void execute(Runnable command) {
+				command.run();		// on the simulation thread
+			}
+		});
+
+		long hits = 0;
+		long bytes = 0;
+		long hitBytes = 0;
+		long putNanos = 0;
+		int length = trace.length();
+		for (int i = 0; i < length; i++) {
+			Long key = Long.valueOf(trace.getKey(i));
+			int size = trace.getSize(i);
+			bytes += size;
+			if (cache.get(key) != null) {
+				hits++;
+				hitBytes += size;
+				continue;
+			}
+			if (timed == false) {
+				cache.put(key, Integer.valueOf(size));
+				continue;
+			}
+			long start = System.nanoTime();
+			cache.put(key, Integer.valueOf(size));
+			putNanos += System.nanoTime() - start;
+		}
+		return new Result(policy, cache.getCacheSize(), length, hits, bytes, hitBytes, evictions[0], putNanos);
+	}
+
+	// ---------------------------------------------------------------- report
+
+	/**
+	 * Writes results as CSV, with header. Column <code>putCostNanos</code> is
+	 * the average time of a put on a miss, see {@link Result#getPutCost()}.
+	 */
+	public static void writeCsv(List<Result> results, Appendable out) throws IOException {
+		out.append("policy,cacheSize,requests,hits,hitRatio,byteHitRatio,evictions,putCostNanos\n");
+		for (Result result : results) {
+			out.append(result.policy).append(',')
+				.append(String.valueOf(result.cacheSize)).append(',')
+				.append(String.valueOf(result.requests)).append(',')
+				.append(String.valueOf(result.hits)).append(',')
+				.append(format(result.getHitRatio())).append(',')
+				.append(format(result.getByteHitRatio())).append(',')
+				.append(String.valueOf(result.evictions)).append(',')
+				.append(format(result.getPutCost())).append('\n');
+		}
+	}
+
+	/**
+	 * Returns hit ratio table: one row per policy, one column per size.
+	 */
+	public static String toTable(List<Result> results) {
+		Map<String, Map<Integer, Result>> rows = new LinkedHashMap<String, Map<Integer, Result>>();
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (Result result : results) {
+			Map<Integer, Result> row = rows.get(result.policy);
+			if (row == null) {
+				row = new LinkedHashMap<Integer, Result>();
+				rows.put(result.policy, row);
+			}
+			row.put(Integer.valueOf(result.cacheSize), result);
+			if (sizes.contains(Integer.valueOf(result.cacheSize)) == false) {
+				sizes.add(Integer.valueOf(result.cacheSize));
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-12s", "hit ratio"));
+		for (Integer size : sizes) {
+			sb.append(String.format("%10d", size));
+		}
+		sb.append('\n');
+		for (Map.Entry<String, Map<Integer, Result>> row : rows.entrySet()) {
+			sb.append(String.format("%-12s", row.getKey()));
+			for (Integer size : sizes) {
+				Result result = row.getValue().get(size);
+				sb.append(result == null ? String.format("%10s", "-") : String.format(Locale.US, "%10.4f", result.getHitRatio()));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.US, "%.4f", value);
+	}
+}
@@ -0,0 +1,181 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full binary snapshot of {@link AbstractCacheMap} content, used for warm restarts.
+ * Non-expired entries are streamed through NIO in policy order (iteration order
+ * of the cache map), together with their remaining time-to-live and access count.
+ * <p>
+ * Snapshot is first written to a temporary file and then renamed, so the previous
+ * snapshot stays valid if the process dies in the middle. If cache has a
+ * {@link CacheJournal journal} attached, it is rotated at the moment when content
+ * is captured, so snapshot plus journal always describe the whole cache.
+ * <p>
+ * Restoring inserts entries in bulk batches, bypassing <code>pruneCache()</code>.
+ * If not all entries fit into the cache, the last ones in policy order are restored,
+ * i.e. the ones that the policy would evict last.
+ */
+public class CacheSnapshot<K, V> {
+
+	static final int MAGIC = 0x4A435331;		// JCS1
+	static final int BATCH_SIZE = 1024;
+
+	protected final CacheCodec<K> keyCodec;
+	protected final CacheCodec<V> valueCodec;
+	protected int bufferSize = 64 * 1024;
+
+	public CacheSnapshot(CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) {
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+	}
+
+	/**
+	 * Sets size of NIO buffer used for reading and writing.
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	// ---------------------------------------------------------------- save
+
+	/**
+	 * Writes snapshot of the cache to the file. Cache is locked only while its
+	 * content is captured, encoding and writing is done without lock.
+	 * Returns number of written entries.
+	 */
+	public int save(AbstractCacheMap<K, V> cache, File file) throws IOException {
+		List<Map.Entry<K, AbstractCacheMap.CacheObject<V>>> objects = cache.snapshotObjects();
+		long now = System.currentTimeMillis();
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+		int count = 0;
+		try {
+			raf.setLength(0);
+			ChannelOutput output = new ChannelOutput(raf.getChannel(), bufferSize);
+			output.writeInt(MAGIC);
+			output.writeLong(now);
+
+			for (Map.Entry<K, AbstractCacheMap.CacheObject<V>> entry : objects) {
+				AbstractCacheMap.CacheObject<V> co = entry.getValue();
+				long ttl = co.getTtl();
+				long remaining = 0;
+				if (ttl != 0) {
+					remaining = co.getLastAccess() + ttl - now;
+					if (remaining <= 0) {
+						continue;		// expired
+					}
+				}
+				V object = co.peekObject();
+				if ((object == null) && co.isCleared()) {
+					continue;
+				}
+				output.writeByte((byte) 1);
+				output.writeBytes(keyCodec.encode(entry.getKey()));
+				output.writeBytes(valueCodec.encode(object));
+				output.writeLong(ttl);
+				output.writeLong(remaining);
+				output.writeLong(co.getAccessCount());
+				count++;
+			}
+			output.writeByte((byte) 0);
+			output.flush();
+			raf.getChannel().force(false);
+		} finally {
+			raf.close();
+		}
+
+		if (file.exists() && (file.delete() == false)) {
+			throw new IOException("Unable to delete: " + file);
+		}
+		if (tempFile.renameTo(file) == false) {
+			throw new IOException("Unable to rename: " + tempFile);
+		}
+
+		CacheJournal<K, V> journal = cache.journal;
+		if (journal != null) {
+			journal.commitRotation();
+		}
+		return count;
+	}
+
+	// ---------------------------------------------------------------- load
+
+	/**
+	 * Restores cache content from the snapshot file. Remaining time-to-live
+	 * is counted from the moment of loading. When the cache has no room for all
+	 * entries, only the last entries that fit are kept while reading.
+	 * Returns number of restored entries.
+	 */
+	public int load(AbstractCacheMap<K, V> cache, File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		int count = 0;
+		try {
+			ChannelInput input = new ChannelInput(raf.getChannel(), bufferSize);
+			if (input.readInt() != MAGIC) {
+				throw new IOException("Not a cache snapshot: " + file);
+			}
+			input.readLong();		// saved at
+
+			int room = cache.getCacheSize() == 0 ? -1 : Math.max(0, cache.getCacheSize() - cache.size());
+			ArrayDeque<Map.Entry<K, AbstractCacheMap.CacheObject<V>>> window =
+					new ArrayDeque<Map.Entry<K, AbstractCacheMap.CacheObject<V>>>();
+			List<Map.Entry<K, AbstractCacheMap.CacheObject<V>>> batch =
+					new ArrayList<Map.Entry<K, AbstractCacheMap.CacheObject<V>>>(BATCH_SIZE);
+			while (input.readByte() != 0) {
+				K key = keyCodec.decode(input.readBytes());
+				V value = valueCodec.decode(input.readBytes());
+				long ttl = input.readLong();
+				long remaining = input.readLong();
+				long accessCount = input.readLong();
+
+				AbstractCacheMap.CacheObject<V> co = cache.createCacheObject(key, value, ttl);
+				if (ttl != 0) {
+					co.setLastAccess(co.getLastAccess() - (ttl - remaining));
+				}
+				co.setAccessCount(accessCount);
+				Map.Entry<K, AbstractCacheMap.CacheObject<V>> entry =
+						new AbstractMap.SimpleImmutableEntry<K, AbstractCacheMap.CacheObject<V>>(key, co);
+
+				if (room == -1) {
+					// no limit, restored as read
+					batch.add(entry);
+					if (batch.size() == BATCH_SIZE) {
+						count += cache.restoreObjects(batch);
+						batch.clear();
+					}
+					continue;
+				}
+				// 只保留最后 room 个
+				if (room == 0) {
+					continue;
+				}
+				if (window.size() == room) {
+					window.pollFirst();
+				}
+				window.addLast(entry);
+			}
+			while (window.isEmpty() == false) {
+				batch.add(window.pollFirst());
+				if (batch.size() == BATCH_SIZE) {
+					count += cache.restoreObjects(batch);
+					batch.clear();
+				}
+			}
+			count += cache.restoreObjects(batch);
+		} finally {
+			raf.close();
+		}
+		return count;
+	}
+}
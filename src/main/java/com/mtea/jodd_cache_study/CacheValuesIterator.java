@@ -3,58 +3,120 @@
 package com.mtea.jodd_cache_study;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Values iterator for {@link jodd.cache.AbstractCacheMap}.
+ * <p>
+ * Iterator is weakly consistent: it copies references chunk by chunk, each chunk
+ * under a short read lock, so it never throws <code>ConcurrentModificationException</code>
+ * and doesn't block writers for the whole iteration. Values put later may or may not
+ * be returned; objects that expire before they are reached are skipped.
  */
 public class CacheValuesIterator<V> implements Iterator<V> {
 
-	private Iterator<? extends AbstractCacheMap<?, V>.CacheObject<?, V>> iterator;
+	private final AbstractCacheMap<Object,V> cache;
 
-	private AbstractCacheMap<?,V>.CacheObject<?,V> nextValue;
+	private final Object[] keys = new Object[AbstractCacheMap.SCAN_CHUNK];
 
+	private final AbstractCacheMap.CacheObject<?>[] objects = new AbstractCacheMap.CacheObject<?>[AbstractCacheMap.SCAN_CHUNK];
+
+	private int count;			// references in the current chunk
+
+	private int index;			// index of the next value in the chunk
+
+	private int position;		// next scan table slot to copy
+
+	private final int fence;
+
+	private boolean hasNext;
+
+	private Object nextKey;
+
+	private AbstractCacheMap.CacheObject<V> nextValue;
+
+	private V nextObject;		// strong reference, so value can't be cleared before next()
+
+	private Object currentKey;
+
+	private AbstractCacheMap.CacheObject<V> current;
+
+	@SuppressWarnings("unchecked")
 	CacheValuesIterator(AbstractCacheMap<?,V> abstractCacheMap) {
-		iterator = abstractCacheMap.cacheMap.values().iterator();
+		this.cache = (AbstractCacheMap<Object,V>) abstractCacheMap;
+		this.fence = cache.scanLimit();
+		this.index = -1;
 		nextValue();
 	}
 
 	/**
-	 * Resolves next value. If next value doesn't exist, next value will be <code>null</code>.
+	 * Resolves next value, copying the next chunk when the current one is done.
 	 */
+	@SuppressWarnings("unchecked")
 	private void nextValue() {
-		while (iterator.hasNext()) {
-			
-			//保存到临时比较变量
-			nextValue = iterator.next();
-
-			//若发现没有过期的对象则立刻返回
-			if (nextValue.isExpired() == false) {
-				return;
+		while (true) {
+			while (++index < count) {
+				AbstractCacheMap.CacheObject<V> co = (AbstractCacheMap.CacheObject<V>) objects[index];
+
+				//若发现没有过期的对象则立刻返回
+				if (co.isExpired() == false) {
+					nextObject = co.peekObject();
+					if ((nextObject != null) || (co.isCleared() == false)) {
+						nextKey = keys[index];
+						nextValue = co;
+						hasNext = true;
+						return;
+					}
+				}
 			}
+			if (position >= fence) {
+				break;
+			}
+			int slots = Math.min(AbstractCacheMap.SCAN_CHUNK, fence - position);
+			count = cache.scanReferences(position, slots, keys, objects, 0);
+			if (count == -1) {
+				break;
+			}
+			position += slots;
+			index = -1;
 		}
+		count = 0;
+		hasNext = false;
+		nextKey = null;
 		nextValue = null;
+		nextObject = null;
 	}
 
 	/**
 	 * Returns <code>true</code> if there are more elements in the cache.
 	 */
 	public boolean hasNext() {
-		return nextValue != null;
+		return hasNext;
 	}
 
 	/**
 	 * Returns next non-expired element from the cache.
 	 */
 	public V next() {
-		V cachedObject = nextValue.cachedObject;
+		if (hasNext == false) {
+			throw new NoSuchElementException();
+		}
+		V cachedObject = nextObject;
+		currentKey = nextKey;
+		current = nextValue;
 		nextValue();
 		return cachedObject;
 	}
 
 	/**
-	 * Removes current non-expired element from the cache.
+	 * Removes current element from the cache, unless it has been replaced meanwhile.
 	 */
 	public void remove() {
-		iterator.remove();
+		if (current == null) {
+			throw new IllegalStateException();
+		}
+		cache.removeObject(currentKey, current);
+		currentKey = null;
+		current = null;
 	}
 }
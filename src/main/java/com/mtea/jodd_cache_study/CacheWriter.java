@@ -0,0 +1,25 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Backing store writer used by {@link WriteBehindCache}.
+ * Invoked from a single flushing thread at a time, with batches
+ * where each key appears only once, already coalesced to its last state.
+ * If a method throws an exception, the whole batch is retried later.
+ */
+public interface CacheWriter<K, V> {
+
+	/**
+	 * Writes (inserts or updates) the batch of objects.
+	 */
+	void write(Map<K, V> objects) throws Exception;
+
+	/**
+	 * Deletes the batch of keys.
+	 */
+	void delete(Collection<K> keys) throws Exception;
+}
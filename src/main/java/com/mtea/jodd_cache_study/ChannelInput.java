@@ -0,0 +1,94 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered binary input over NIO <code>FileChannel</code>,
+ * counterpart of {@link ChannelOutput}. Not thread-safe.
+ */
+class ChannelInput {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	ChannelInput(FileChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.buffer.flip();
+	}
+
+	/**
+	 * Returns <code>true</code> if there are no more bytes to read.
+	 */
+	boolean isEof() throws IOException {
+		return fill(1) == false;
+	}
+
+	byte readByte() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	int readInt() throws IOException {
+		require(4);
+		return buffer.getInt();
+	}
+
+	long readLong() throws IOException {
+		require(8);
+		return buffer.getLong();
+	}
+
+	/**
+	 * Reads length-prefixed bytes.
+	 */
+	byte[] readBytes() throws IOException {
+		int length = readInt();
+		if (length < 0) {
+			throw new IOException("Corrupted data, negative length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			if (buffer.hasRemaining() == false) {
+				require(1);
+			}
+			int chunk = Math.min(buffer.remaining(), length - offset);
+			buffer.get(bytes, offset, chunk);
+			offset += chunk;
+		}
+		return bytes;
+	}
+
+	private void require(int size) throws IOException {
+		if (fill(size) == false) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * Fills the buffer until it contains at least <code>size</code> bytes.
+	 * Returns <code>false</code> if channel ends before that.
+	 */
+	private boolean fill(int size) throws IOException {
+		if (buffer.remaining() >= size) {
+			return true;
+		}
+		buffer.compact();
+		try {
+			while (buffer.position() < size) {
+				if (channel.read(buffer) == -1) {
+					return false;
+				}
+			}
+		} finally {
+			buffer.flip();
+		}
+		return true;
+	}
+}
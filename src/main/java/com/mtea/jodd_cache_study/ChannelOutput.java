@@ -0,0 +1,72 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered binary output over NIO <code>FileChannel</code>.
+ * Not thread-safe.
+ */
+class ChannelOutput {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	ChannelOutput(FileChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	void writeByte(byte value) throws IOException {
+		ensure(1);
+		buffer.put(value);
+	}
+
+	void writeInt(int value) throws IOException {
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	void writeLong(long value) throws IOException {
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	/**
+	 * Writes length-prefixed bytes. Bytes larger than the buffer
+	 * are written directly to the channel.
+	 */
+	void writeBytes(byte[] bytes) throws IOException {
+		writeInt(bytes.length);
+		if (bytes.length > buffer.capacity()) {
+			flush();
+			ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+			while (wrapped.hasRemaining()) {
+				channel.write(wrapped);
+			}
+			return;
+		}
+		ensure(bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes buffered bytes to the channel.
+	 */
+	void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void ensure(int size) throws IOException {
+		if (buffer.remaining() < size) {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,541 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Disk backed second level (L2) cache tier for objects evicted from
+ * an {@link AbstractCacheMap}. Attach it with {@link AbstractCacheMap#setOverflowStore(DiskOverflowStore)}.
+ * <p>
+ * Values are serialized into append-only, memory-mapped segment files, while
+ * keys and record locations are kept in an in-memory index. Removed and promoted
+ * records leave garbage in segments; segments with too much garbage are compacted
+ * in the background by copying live records into the active segment. When total
+ * size of segments exceeds byte cap, the oldest segment is dropped together with
+ * all its records (FIFO on segment level).
+ * <p>
+ * Segment files are temporary: they are deleted on {@link #close()}.
+ */
+public class DiskOverflowStore<K, V> {
+
+	/**
+	 * Segment file, mapped into memory.
+	 */
+	class Segment {
+		final int id;
+		final File file;
+		final RandomAccessFile raf;
+		final MappedByteBuffer buffer;
+		final Set<K> keys = new HashSet<K>();		// 段内的有效记录
+		int liveBytes;
+		boolean compacting;		// being copied, deletion is left to the compactor
+
+		Segment(int id) throws IOException {
+			this.id = id;
+			this.file = new File(directory, "overflow-" + id + ".seg");
+			this.raf = new RandomAccessFile(file, "rw");
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+
+		int writtenBytes() {
+			return buffer.position();
+		}
+
+		boolean hasRoom(int length) {
+			return buffer.remaining() >= length;
+		}
+
+		void delete() {
+			if (compacting) {
+				return;
+			}
+			unmap(buffer);
+			try {
+				raf.close();
+			} catch (IOException ignore) {
+			}
+			file.delete();
+		}
+	}
+
+	/**
+	 * Location of a record in the segment.
+	 */
+	class Location {
+		final Segment segment;
+		final int offset;
+		final int length;
+		final long ttl;
+		final long expireAt;
+		final int stamp;
+
+		Location(Segment segment, int offset, int length, long ttl, long expireAt, int stamp) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.ttl = ttl;
+			this.expireAt = expireAt;
+			this.stamp = stamp;
+		}
+	}
+
+	protected final File directory;
+	protected final CacheCodec<V> valueCodec;
+	protected final long maxBytes;
+	protected final int segmentSize;
+
+	private final Map<K, Location> index = new HashMap<K, Location>();
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+	private Segment active;
+	private int nextSegmentId;
+	private long totalBytes;
+
+	protected float compactionThreshold = 0.5f;
+	private final ExecutorService compactor;
+	private boolean compactionScheduled;
+	private final Object compactLock = new Object();		// one compaction at a time
+
+	/**
+	 * Creates overflow store with 16MB segments.
+	 * @param directory directory for segment files
+	 * @param valueCodec value codec
+	 * @param maxBytes max total size of segment files
+	 */
+	public DiskOverflowStore(File directory, CacheCodec<V> valueCodec, long maxBytes) throws IOException {
+		this(directory, valueCodec, maxBytes, 16 * 1024 * 1024);
+	}
+
+	/**
+	 * Creates overflow store.
+	 * @param directory directory for segment files
+	 * @param valueCodec value codec
+	 * @param maxBytes max total size of segment files, must be at least one segment
+	 * @param segmentSize size of a single segment file in bytes
+	 */
+	public DiskOverflowStore(File directory, CacheCodec<V> valueCodec, long maxBytes, int segmentSize) throws IOException {
+		if (maxBytes < segmentSize) {
+			throw new IllegalArgumentException("Max bytes must be at least one segment: " + segmentSize);
+		}
+		this.directory = directory;
+		this.valueCodec = valueCodec;
+		this.maxBytes = maxBytes;
+		this.segmentSize = segmentSize;
+		directory.mkdirs();
+		this.active = newSegment();
+		this.compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "overflow-compactor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Sets garbage ratio of a segment after which it is compacted.
+	 */
+	public void setCompactionThreshold(float compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	// ---------------------------------------------------------------- access
+
+	/**
+	 * Stores evicted object. Objects that can't be serialized or
+	 * are larger than a segment are silently dropped.
+	 * Returns <code>true</code> if object was stored.
+	 */
+	public boolean put(K key, V object, long ttl, long expireAt) {
+		return put(key, object, ttl, expireAt, 0);
+	}
+
+	/**
+	 * Stores evicted object with a stamp, e.g. the generation of its namespace,
+	 * that is returned when the object is {@link #takeStored(Object) taken}.
+	 */
+	synchronized boolean put(K key, V object, long ttl, long expireAt, int stamp) {
+		byte[] bytes;
+		try {
+			bytes = valueCodec.encode(object);
+		} catch (IOException ioex) {
+			return false;
+		}
+		if (bytes.length > segmentSize) {
+			return false;
+		}
+		removeLocation(key, index.remove(key));
+		try {
+			Location location = append(bytes, ttl, expireAt, stamp);
+			index.put(key, location);
+			location.segment.keys.add(key);
+		} catch (IOException ioex) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Stored object with its expiration and stamp, as taken from the store.
+	 */
+	static final class StoredObject<V2> {
+		final V2 object;
+		final long ttl;
+		final long expireAt;
+		final int stamp;
+
+		StoredObject(V2 object, long ttl, long expireAt, int stamp) {
+			this.object = object;
+			this.ttl = ttl;
+			this.expireAt = expireAt;
+			this.stamp = stamp;
+		}
+	}
+
+	/**
+	 * Removes object from the store and returns it, or <code>null</code>
+	 * if object is not stored or if it is expired. Used for promoting
+	 * object back to the memory.
+	 */
+	public V take(K key) {
+		StoredObject<V> stored = takeStored(key);
+		return stored == null ? null : stored.object;
+	}
+
+	/**
+	 * Removes object from the store and returns it together with its
+	 * time-to-live, expiration time and stamp, or <code>null</code> if object
+	 * is not stored or if it is expired.
+	 */
+	synchronized StoredObject<V> takeStored(K key) {
+		Location location = index.remove(key);
+		if (location == null) {
+			return null;
+		}
+		byte[] bytes = null;
+		if ((location.expireAt == 0) || (location.expireAt >= System.currentTimeMillis())) {
+			bytes = read(location);		// before the segment may be deleted
+		}
+		removeLocation(key, location);
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			return new StoredObject<V>(valueCodec.decode(bytes), location.ttl, location.expireAt, location.stamp);
+		} catch (IOException ioex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Removes object from the store.
+	 */
+	public synchronized void remove(K key) {
+		removeLocation(key, index.remove(key));
+	}
+
+	/**
+	 * Removes all objects and all but one empty segment.
+	 */
+	public synchronized void clear() {
+		index.clear();
+		for (Segment segment : segments) {
+			segment.delete();
+		}
+		segments.clear();
+		totalBytes = 0;
+		try {
+			active = newSegment();
+		} catch (IOException ioex) {
+			throw new IllegalStateException("Unable to create segment", ioex);
+		}
+	}
+
+	/**
+	 * Returns keys of all stored objects.
+	 */
+	synchronized List<K> keys() {
+		return new ArrayList<K>(index.keySet());
+	}
+
+	/**
+	 * Returns number of stored objects.
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * Returns total size of segment files in bytes.
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Returns number of segment files.
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Stops compaction and deletes all segment files.
+	 */
+	public synchronized void close() {
+		compactor.shutdownNow();
+		index.clear();
+		for (Segment segment : segments) {
+			segment.delete();
+		}
+		segments.clear();
+		totalBytes = 0;
+	}
+
+	// ---------------------------------------------------------------- segments
+
+	private Segment newSegment() throws IOException {
+		// drop oldest segments to fit into byte cap
+		while ((segments.isEmpty() == false) && (totalBytes + segmentSize > maxBytes)) {
+			dropSegment(segments.getFirst());
+		}
+		Segment segment = new Segment(nextSegmentId++);
+		segments.add(segment);
+		totalBytes += segmentSize;
+		return segment;
+	}
+
+	private void dropSegment(Segment segment) {
+		for (K key : segment.keys) {
+			index.remove(key);
+		}
+		segment.keys.clear();
+		segments.remove(segment);
+		totalBytes -= segmentSize;
+		segment.delete();
+	}
+
+	private Location append(byte[] bytes, long ttl, long expireAt, int stamp) throws IOException {
+		if (active.hasRoom(bytes.length) == false) {
+			active = newSegment();
+		}
+		int offset = active.buffer.position();
+		active.buffer.put(bytes);
+		active.liveBytes += bytes.length;
+		return new Location(active, offset, bytes.length, ttl, expireAt, stamp);
+	}
+
+	private byte[] read(Location location) {
+		ByteBuffer buffer = location.segment.buffer.duplicate();
+		buffer.position(location.offset);
+		byte[] bytes = new byte[location.length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private void removeLocation(K key, Location location) {
+		if (location == null) {
+			return;
+		}
+		Segment segment = location.segment;
+		segment.keys.remove(key);
+		segment.liveBytes -= location.length;
+		if (segment == active) {
+			return;
+		}
+		if (segment.liveBytes == 0) {
+			// nothing points to the segment anymore
+			segments.remove(segment);
+			totalBytes -= segmentSize;
+			segment.delete();
+			return;
+		}
+		if (compactionScheduled == false && isGarbage(segment)) {
+			compactionScheduled = true;
+			compactor.execute(new Runnable() {
+				public void run() {
+					compact();
+				}
+			});
+		}
+	}
+
+	private boolean isGarbage(Segment segment) {
+		return segment.liveBytes < segment.writtenBytes() * (1 - compactionThreshold);
+	}
+
+	// ---------------------------------------------------------------- compact
+
+	/**
+	 * Compacts all inactive segments whose garbage ratio exceeds the threshold,
+	 * merging live records of as many of them, and of other half empty segments,
+	 * as fit into one new segment.
+	 * Invoked in the background. Records are copied without holding the store
+	 * lock, so cache writers are not blocked; the lock is taken only to pick the
+	 * segments and to swap the index. While compacting, total size may exceed
+	 * the byte cap by one segment. Returns number of compacted segments.
+	 */
+	public int compact() {
+		synchronized (compactLock) {
+			return compactSegments();
+		}
+	}
+
+	private int compactSegments() {
+		int count = 0;
+		while (true) {
+			List<Segment> candidates = new ArrayList<Segment>();
+			List<K> keys = new ArrayList<K>();
+			List<Location> locations = new ArrayList<Location>();
+			synchronized (this) {
+				compactionScheduled = false;
+				int live = 0;
+				for (Segment segment : segments) {
+					if ((segment != active) && (segment.compacting == false) && isGarbage(segment) && (live + segment.liveBytes <= segmentSize)) {
+						candidates.add(segment);
+						live += segment.liveBytes;
+					}
+				}
+				if (candidates.isEmpty()) {
+					return count;
+				}
+				// merge also half empty results of previous compactions
+				for (Segment segment : segments) {
+					if ((segment != active) && (candidates.contains(segment) == false) &&
+							(segment.liveBytes * 2 <= segmentSize) && (live + segment.liveBytes <= segmentSize)) {
+						candidates.add(segment);
+						live += segment.liveBytes;
+					}
+				}
+				for (Segment candidate : candidates) {
+					for (K key : candidate.keys) {
+						keys.add(key);
+						locations.add(index.get(key));
+					}
+					candidate.compacting = true;
+				}
+			}
+
+			Segment target = null;
+			try {
+				target = copy(locations);
+			} catch (IOException ignore) {
+				// candidates stay as they are
+			}
+
+			synchronized (this) {
+				for (Segment candidate : candidates) {
+					candidate.compacting = false;
+				}
+				if (target == null) {
+					for (Segment candidate : candidates) {
+						if (segments.contains(candidate) == false) {
+							candidate.delete();
+						}
+					}
+					return count;
+				}
+				swap(candidates, target, keys, locations);
+			}
+			count += candidates.size();
+		}
+	}
+
+	/**
+	 * Copies records into a new segment, that is not yet part of the store.
+	 * Candidates are not deleted meanwhile, so their buffers stay mapped.
+	 */
+	private Segment copy(List<Location> locations) throws IOException {
+		int id;
+		synchronized (this) {
+			id = nextSegmentId++;
+		}
+		Segment target = new Segment(id);
+		for (Location location : locations) {
+			target.buffer.put(read(location));
+		}
+		return target;
+	}
+
+	/**
+	 * Points index to the copied records, unless they were removed or replaced
+	 * meanwhile, and puts the new segment in place of the first candidate.
+	 */
+	private void swap(List<Segment> candidates, Segment target, List<K> keys, List<Location> locations) {
+		int offset = 0;
+		for (int i = 0; i < keys.size(); i++) {
+			K key = keys.get(i);
+			Location location = locations.get(i);
+			if (index.get(key) == location) {
+				index.put(key, new Location(target, offset, location.length, location.ttl, location.expireAt, location.stamp));
+				target.keys.add(key);
+				target.liveBytes += location.length;
+			}
+			offset += location.length;
+		}
+
+		int position = -1;
+		for (Segment candidate : candidates) {
+			int candidatePosition = segments.indexOf(candidate);
+			if (candidatePosition != -1) {
+				if (position == -1) {
+					position = candidatePosition;
+				}
+				segments.remove(candidatePosition);
+				totalBytes -= segmentSize;
+			}
+			candidate.keys.clear();
+			candidate.delete();
+		}
+		if ((position == -1) || (target.liveBytes == 0)) {
+			target.delete();		// all records were dropped meanwhile
+			return;
+		}
+		segments.add(position, target);
+		totalBytes += segmentSize;
+	}
+
+	/**
+	 * Releases the mapping right away, instead of waiting for the GC.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			// Java 9+
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			invokeCleaner.invoke(field.get(null), buffer);
+			return;
+		} catch (Exception ignore) {
+		}
+		try {
+			// Java 8
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception ignore) {
+			// left to the GC
+		}
+	}
+}
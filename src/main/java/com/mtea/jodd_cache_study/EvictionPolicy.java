@@ -0,0 +1,44 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * Eviction policy used by {@link PolicyCache}.
+ * Policy only keeps the bookkeeping of keys and selects victims; storage,
+ * locking, expiration, listeners and other features are handled by the cache.
+ * All methods are invoked under the cache write lock, except {@link #onAccess(Object)}
+ * of policies that don't {@link #isAccessOrdered() track accesses}, which is never invoked.
+ * Operations should be constant time.
+ */
+public interface EvictionPolicy<K> {
+
+	/**
+	 * Returns <code>true</code> if policy tracks accesses. Hits then take the write lock.
+	 */
+	boolean isAccessOrdered();
+
+	/**
+	 * Invoked when new key is added.
+	 */
+	void onInsert(K key);
+
+	/**
+	 * Invoked on hit and when object of existing key is replaced.
+	 */
+	void onAccess(K key);
+
+	/**
+	 * Invoked when key is removed, for any reason.
+	 */
+	void onRemove(K key);
+
+	/**
+	 * Returns the key to evict, without removing it, or <code>null</code> if there are no keys.
+	 */
+	K selectVictim();
+
+	/**
+	 * Forgets all keys.
+	 */
+	void clear();
+}
@@ -0,0 +1,55 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that sweeps a range of the cache snapshot for expired objects.
+ * Ranges are split until they are small enough; each leaf checks its objects
+ * without locking and then removes the expired ones in one short write lock.
+ * Computes the number of removed objects.
+ */
+class ExpirySweepTask extends RecursiveTask<Integer> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int RANGE = 4096;
+
+	private final AbstractCacheMap<Object, ?> cache;
+	private final Object[] keys;
+	private final AbstractCacheMap.CacheObject<?>[] objects;
+	private final int from;
+	private final int to;
+
+	ExpirySweepTask(AbstractCacheMap<Object, ?> cache, Object[] keys, AbstractCacheMap.CacheObject<?>[] objects, int from, int to) {
+		this.cache = cache;
+		this.keys = keys;
+		this.objects = objects;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected Integer compute() {
+		if (to - from > RANGE) {
+			int mid = (from + to) >>> 1;
+			ExpirySweepTask left = new ExpirySweepTask(cache, keys, objects, from, mid);
+			left.fork();
+			int right = new ExpirySweepTask(cache, keys, objects, mid, to).compute().intValue();
+			return Integer.valueOf(left.join().intValue() + right);
+		}
+
+		int[] expired = new int[to - from];
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (objects[i].isExpired() == true) {
+				expired[count++] = i;
+			}
+		}
+		if (count == 0) {
+			return Integer.valueOf(0);
+		}
+		return Integer.valueOf(cache.removeExpired(keys, objects, expired, count));
+	}
+}
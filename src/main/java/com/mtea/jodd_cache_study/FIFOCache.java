@@ -35,7 +35,7 @@ public class FIFOCache<K, V> extends AbstractCacheMap<K, V> {
 		
 		//false: 不基于访问顺序则自然排序,put 1-a ,put 2-b, put 3-c , 遍历结果: 1,2,3
 		//LinkedHashMap 提高删减更新的效率
-		cacheMap = new LinkedHashMap<K,CacheObject<K,V>>(cacheSize + 1, 1.0f, false);
+		cacheMap = new LinkedHashMap<K,CacheObject<V>>(cacheSize + 1, 1.0f, false);
 	}
 
 
@@ -49,20 +49,22 @@ public class FIFOCache<K, V> extends AbstractCacheMap<K, V> {
 		
 		//记录删除的总数
         int count = 0;
-		CacheObject<K,V> first = null;
-		Iterator<CacheObject<K,V>> values = cacheMap.values().iterator();
-		while (values.hasNext()) {
-			CacheObject<K,V> co = values.next();
+		Map.Entry<K,CacheObject<V>> first = null;
+		Iterator<Map.Entry<K,CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<K,CacheObject<V>> entry = entries.next();
 			
 			//若过期则删除
-			if (co.isExpired() == true) {
-				values.remove();
+			if (entry.getValue().isExpired() == true) {
+				entries.remove();
+				onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
 				count++;
+				continue;
 			}
 			
 			//获得第一个缓存对象
 			if (first == null) {
-				first = co;
+				first = entry;
 			}
 		}
 		
@@ -70,12 +72,34 @@ public class FIFOCache<K, V> extends AbstractCacheMap<K, V> {
 		if (isFull()) {
 			
 			if (first != null) {
-				cacheMap.remove(first.key);
+				K key = first.getKey();
+				onEvict(key, cacheMap.remove(key));
 				count++;
 			}
 		}
 		return count;
 	}
+
+	/**
+	 * Evicts the first added objects, from the head of the map.
+	 */
+	@Override
+	protected int trim(int maxCount) {
+		int count = 0;
+		Iterator<Map.Entry<K,CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+		while ((count < maxCount) && (cacheSize != 0) && (cacheMap.size() > cacheSize) && entries.hasNext()) {
+			Map.Entry<K,CacheObject<V>> entry = entries.next();
+			entries.remove();
+			if (entry.getValue().isExpired() == false) {
+				onEvict(entry.getKey(), entry.getValue());
+			} else {
+				onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
+			}
+			count++;
+		}
+		return count;
+	}
+
 	public static void main(String[] args) {
 		
 		boolean accessOrder = true;
@@ -0,0 +1,39 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * FIFO eviction policy: evicts the oldest key. Accesses are not tracked,
+ * so hits keep using the read lock.
+ */
+public class FIFOEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	protected final LinkedHashSet<K> keys = new LinkedHashSet<K>();
+
+	public boolean isAccessOrdered() {
+		return false;
+	}
+
+	public void onInsert(K key) {
+		keys.add(key);
+	}
+
+	public void onAccess(K key) {
+	}
+
+	public void onRemove(K key) {
+		keys.remove(key);
+	}
+
+	public K selectVictim() {
+		Iterator<K> iterator = keys.iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	public void clear() {
+		keys.clear();
+	}
+}
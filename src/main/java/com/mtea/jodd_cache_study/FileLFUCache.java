@@ -17,13 +17,13 @@ public class FileLFUCache {
 	protected final LFUCache<File, byte[]> cache;
 	
 	//缓存中所有文件字节总数最大值
-	protected final int maxSize;
+	protected volatile int maxSize;
 	
 	//每个文件最大的字节总数
 	protected final int maxFileSize;
 
-	//被使用的大小,指的是文件使用的大小
-	protected int usedSize;
+	//被使用的大小,指的是文件使用的大小; 只在缓存的写锁下修改
+	protected volatile int usedSize;
 
 	/**
 	 * Creates file LFU cache with specified size. Sets
@@ -50,17 +50,33 @@ public class FileLFUCache {
 	 */
 	public FileLFUCache(int maxSize, int maxFileSize, long timeout) {
 		this.cache = new LFUCache<File, byte[]>(0, timeout) {
-			
-			//从字节出发判断是否已满
+
+			private int incoming;		// size of the file being put
+
+			@Override
+			CacheObject<byte[]> createCacheObject(File key, byte[] value, long ttl) {
+				incoming = value.length;
+				return super.createCacheObject(key, value, ttl);
+			}
+
+			//从字节出发判断是否已满, 包括正在添加的文件
 			
 			@Override
 			public boolean isFull() {
-				return usedSize > FileLFUCache.this.maxSize;
+				return usedSize + incoming > FileLFUCache.this.maxSize;
 			}
 
 			@Override
-			protected void onRemove(File key, byte[] cachedObject) {
-				usedSize -= cachedObject.length;
+			protected void onInsert(File key, CacheObject<byte[]> co) {
+				super.onInsert(key, co);
+				usedSize += co.peekObject().length;
+				incoming = 0;
+			}
+
+			@Override
+			protected void onRemoval(File key, CacheObject<byte[]> co, RemovalCause cause) {
+				super.onRemoval(key, co, cause);
+				usedSize -= co.peekObject().length;
 			}
 
 		};
@@ -77,6 +93,26 @@ public class FileLFUCache {
 		return maxSize;
 	}
 
+	/**
+	 * Changes max cache size in bytes at runtime. When shrunk,
+	 * files are evicted until used size fits into the new size.
+	 * Used size is changed only under the cache lock, by insert and
+	 * removal hooks, so this is safe to call concurrently with reads.
+	 * Returns number of evicted files.
+	 */
+	public int setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		int total = 0;
+		while (usedSize > maxSize) {
+			int count = cache.prune();
+			if (count == 0) {
+				break;
+			}
+			total += count;
+		}
+		return total;
+	}
+
 	/**
 	 * Returns actually used size in bytes.
 	 */
@@ -107,12 +143,19 @@ public class FileLFUCache {
 		return cache.getCacheTimeout();
 	}
 
+	/**
+	 * Sets the recorder of file reads, or <code>null</code> to detach it.
+	 * Files are recorded by hashed path, cache hits and misses separately.
+	 */
+	public void setTraceRecorder(AccessTraceRecorder traceRecorder) {
+		cache.setTraceRecorder(traceRecorder);
+	}
+
 	/**
 	 * Clears the cache.
 	 */
 	public void clear() {
 		cache.clear();
-		usedSize = 0;
 	}
 
 	// ---------------------------------------------------------------- get
@@ -125,26 +168,77 @@ public class FileLFUCache {
 	 * Returns cached file bytes.
 	 */
 	public byte[] getFileBytes(File file) throws IOException {
+		long start = latencyTracking ? System.nanoTime() : 0;
 		byte[] bytes = cache.get(file);
 		if (bytes != null) {
+			record(hitLatency, start);
 			return bytes;
 		}
 
 		// add file
+		Object event = CacheEvents.beginFileLoad();
 		bytes = FileUtil.readBytes(file);
 
 		if ((maxFileSize != 0) && (file.length() > maxFileSize)) {
 			// don't cache files that size exceed max allowed file size
+			CacheEvents.commitFileLoad(event, file, bytes.length, false);
+			record(missLatency, start);
 			return bytes;
 		}
+		CacheEvents.commitFileLoad(event, file, bytes.length, true);
 
-		usedSize += bytes.length;
-
-		// put file into cache
+		// put file into cache, used size is updated by the cache hooks
 		// if used size > total, purge() will be invoked
 		cache.put(file, bytes);
 
+		record(missLatency, start);
 		return bytes;
 	}
 
+	// ---------------------------------------------------------------- latency
+
+	private volatile boolean latencyTracking;
+	private final LatencyHistogram hitLatency = new LatencyHistogram();
+	private final LatencyHistogram missLatency = new LatencyHistogram();
+
+	/**
+	 * Turns latency histograms of file reads on or off,
+	 * together with histograms of the underlying cache.
+	 */
+	public void setLatencyTracking(boolean enabled) {
+		cache.setLatencyTracking(enabled);
+		if (enabled) {
+			hitLatency.reset();
+			missLatency.reset();
+		}
+		latencyTracking = enabled;
+	}
+
+	/**
+	 * Returns histogram of {@link #getFileBytes(File)} calls served from the cache.
+	 */
+	public LatencyHistogram getHitLatency() {
+		return hitLatency;
+	}
+
+	/**
+	 * Returns histogram of {@link #getFileBytes(File)} calls that read the file.
+	 */
+	public LatencyHistogram getMissLatency() {
+		return missLatency;
+	}
+
+	/**
+	 * Returns latency histograms of the underlying cache or <code>null</code>.
+	 */
+	public CacheLatencyStats getCacheLatencyStats() {
+		return cache.getLatencyStats();
+	}
+
+	private void record(LatencyHistogram histogram, long start) {
+		if (start != 0) {
+			histogram.record(System.nanoTime() - start);
+		}
+	}
+
 }
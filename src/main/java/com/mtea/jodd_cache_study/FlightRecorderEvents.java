@@ -0,0 +1,194 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.io.File;
+
+/**
+ * Flight recorder event classes and their begin and commit.
+ * Used only through {@link CacheEvents}, when <code>jdk.jfr</code> is available.
+ */
+final class FlightRecorderEvents {
+
+	static final String CATEGORY = "Cache";
+
+	private FlightRecorderEvents() {
+	}
+
+	// ---------------------------------------------------------------- begin
+
+	static Object beginAccess() {
+		return begin(new AccessEvent());
+	}
+
+	static Object beginPrune() {
+		return begin(new PruneEvent());
+	}
+
+	static Object beginSweep() {
+		return begin(new SweepEvent());
+	}
+
+	static Object beginLockWait() {
+		return begin(new LockWaitEvent());
+	}
+
+	static Object beginFileLoad() {
+		return begin(new FileLoadEvent());
+	}
+
+	private static Event begin(Event event) {
+		event.begin();
+		return event;
+	}
+
+	// ---------------------------------------------------------------- commit
+
+	static void commitAccess(Object e, Object cache, String operation, Object key, boolean hit) {
+		AccessEvent event = (AccessEvent) e;
+		event.end();
+		if (event.shouldCommit() && CacheEvents.sampled()) {
+			event.cache = cache.getClass().getName();
+			event.operation = operation;
+			event.keyHash = key.hashCode();
+			event.hit = hit;
+			event.commit();
+		}
+	}
+
+	static void commitPrune(Object e, Object cache, int removed, int size) {
+		PruneEvent event = (PruneEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.cache = cache.getClass().getName();
+			event.removed = removed;
+			event.size = size;
+			event.commit();
+		}
+	}
+
+	static void commitSweep(Object e, Object cache, int checked, int removed) {
+		SweepEvent event = (SweepEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.cache = cache.getClass().getName();
+			event.checked = checked;
+			event.removed = removed;
+			event.commit();
+		}
+	}
+
+	static void commitLockWait(Object e, Object cache, boolean exclusive) {
+		LockWaitEvent event = (LockWaitEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.cache = cache.getClass().getName();
+			event.exclusive = exclusive;
+			event.commit();
+		}
+	}
+
+	static void commitFileLoad(Object e, File file, int bytes, boolean cached) {
+		FileLoadEvent event = (FileLoadEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = file.getPath();
+			event.bytes = bytes;
+			event.cached = cached;
+			event.commit();
+		}
+	}
+
+	// ---------------------------------------------------------------- events
+
+	@Name("com.mtea.jodd_cache_study.CacheAccess")
+	@Label("Cache Access")
+	@Description("Sampled get or put")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("0 ms")
+	static class AccessEvent extends Event {
+		@Label("Cache")
+		String cache;
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Key Hash")
+		int keyHash;
+
+		@Label("Hit")
+		boolean hit;
+	}
+
+	@Name("com.mtea.jodd_cache_study.CachePrune")
+	@Label("Cache Prune")
+	@Description("Prune of a cache, explicit or by a put into the full cache")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	static class PruneEvent extends Event {
+		@Label("Cache")
+		String cache;
+
+		@Label("Removed")
+		int removed;
+
+		@Label("Size")
+		int size;
+	}
+
+	@Name("com.mtea.jodd_cache_study.CacheSweep")
+	@Label("Cache Expiry Sweep")
+	@Description("Parallel sweep of expired objects")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	static class SweepEvent extends Event {
+		@Label("Cache")
+		String cache;
+
+		@Label("Checked")
+		int checked;
+
+		@Label("Removed")
+		int removed;
+	}
+
+	@Name("com.mtea.jodd_cache_study.CacheLockWait")
+	@Label("Cache Lock Wait")
+	@Description("Time spent waiting for the cache lock")
+	@Category(CATEGORY)
+	@Threshold("10 ms")
+	static class LockWaitEvent extends Event {
+		@Label("Cache")
+		String cache;
+
+		@Label("Exclusive")
+		boolean exclusive;
+	}
+
+	@Name("com.mtea.jodd_cache_study.FileLoad")
+	@Label("Cache File Load")
+	@Description("File read by FileLFUCache on a miss")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	static class FileLoadEvent extends Event {
+		@Label("Path")
+		String path;
+
+		@Label("Bytes")
+		@DataAmount
+		int bytes;
+
+		@Label("Cached")
+		boolean cached;
+	}
+}
@@ -0,0 +1,294 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点键跟踪
+ * Streaming top-K tracker of the most frequent keys, by the Space-Saving algorithm.
+ *
+ * <p>
+ * Only <code>capacity</code> counters are kept. A key without a counter takes over
+ * the smallest one and inherits its count as the estimation error, so counts of
+ * taken samples are overestimated by at most {@link HotKey#getError() error}, and
+ * any key with more than 1/<code>capacity</code> of the samples is guaranteed to be tracked.
+ * <p>
+ * Offering is cheap: one of <code>sampleRate</code> keys is taken, by default one of
+ * {@value #DEFAULT_SAMPLE_RATE}, and if the tracker is busy with another thread, the
+ * sample is dropped instead of waiting. So all offering threads rarely meet on the
+ * tracker lock. Counts and rates are scaled back by the sample rate, therefore they
+ * are estimations that may be also lower than the real values.
+ */
+public class HotKeyTracker<K> {
+
+	/**
+	 * Tracked key with its estimated count.
+	 */
+	public static class HotKey<K2> {
+		HotKey(K2 key, long count, long error, long total, long elapsed) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+			this.total = total;
+			this.elapsed = elapsed;
+		}
+
+		private final K2 key;
+		private final long count;
+		private final long error;
+		private final long total;
+		private final long elapsed;
+
+		public K2 getKey() {
+			return key;
+		}
+
+		/**
+		 * Returns estimated number of accesses. It is never less than the real one
+		 * only with sample rate 1 and no dropped samples, otherwise it is
+		 * scaled from the samples and may be lower.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns max overestimation of the count by the Space-Saving algorithm,
+		 * not including the sampling error.
+		 */
+		public long getError() {
+			return error;
+		}
+
+		/**
+		 * Returns estimated share of all accesses, from 0 to 1.
+		 */
+		public double getShare() {
+			return total == 0 ? 0 : (double) count / total;
+		}
+
+		/**
+		 * Returns estimated accesses per second since the last reset.
+		 */
+		public double getRate() {
+			return elapsed == 0 ? 0 : count * 1000.0 / elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + count + " (" + Math.round(getShare() * 100) + "%)";
+		}
+	}
+
+	/**
+	 * Counter in the min-heap.
+	 */
+	static class Counter<K2> {
+		K2 key;
+		long count;
+		long error;
+		int index;
+	}
+
+	/**
+	 * Default sample rate, that keeps offering cheap on hot read paths.
+	 */
+	public static final int DEFAULT_SAMPLE_RATE = 16;
+
+	protected final int capacity;
+	protected final int sampleRate;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<K, Counter<K>> counters;
+	private final Counter<K>[] heap;		// 最小堆, 按计数
+	private int size;
+	private long total;
+	private long since = System.currentTimeMillis();
+
+	/**
+	 * Creates tracker with given number of counters and the {@link #DEFAULT_SAMPLE_RATE default sample rate}.
+	 */
+	public HotKeyTracker(int capacity) {
+		this(capacity, DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * Creates tracker with given number of counters, taking one of
+	 * <code>sampleRate</code> offered keys. Rate 1 counts all offered keys.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public HotKeyTracker(int capacity, int sampleRate) {
+		if ((capacity <= 0) || (sampleRate <= 0)) {
+			throw new IllegalArgumentException("Invalid capacity or sample rate: " + capacity + ", " + sampleRate);
+		}
+		this.capacity = capacity;
+		this.sampleRate = sampleRate;
+		this.counters = new HashMap<K, Counter<K>>(capacity * 2);
+		this.heap = new Counter[capacity];
+	}
+
+	// ---------------------------------------------------------------- offer
+
+	/**
+	 * Counts the access of a key, if sampled and if the tracker is not busy.
+	 */
+	public void offer(K key) {
+		if ((sampleRate != 1) && (ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+			return;
+		}
+		if (lock.tryLock() == false) {
+			return;		// 不等待, 丢弃样本
+		}
+		try {
+			add(key);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void add(K key) {
+		total++;
+		Counter<K> counter = counters.get(key);
+		if (counter != null) {
+			counter.count++;
+			siftDown(counter.index);
+			return;
+		}
+		if (size < capacity) {
+			counter = new Counter<K>();
+			counter.key = key;
+			counter.count = 1;
+			counter.index = size;
+			heap[size++] = counter;
+			counters.put(key, counter);
+			siftUp(counter.index);
+			return;
+		}
+
+		// takes over the smallest counter
+		counter = heap[0];
+		counters.remove(counter.key);
+		counter.key = key;
+		counter.error = counter.count;
+		counter.count++;
+		counters.put(key, counter);
+		siftDown(0);
+	}
+
+	private void siftUp(int index) {
+		Counter<K> counter = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (heap[parent].count <= counter.count) {
+				break;
+			}
+			place(heap[parent], index);
+			index = parent;
+		}
+		place(counter, index);
+	}
+
+	private void siftDown(int index) {
+		Counter<K> counter = heap[index];
+		int half = size >>> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			int right = child + 1;
+			if ((right < size) && (heap[right].count < heap[child].count)) {
+				child = right;
+			}
+			if (counter.count <= heap[child].count) {
+				break;
+			}
+			place(heap[child], index);
+			index = child;
+		}
+		place(counter, index);
+	}
+
+	private void place(Counter<K> counter, int index) {
+		heap[index] = counter;
+		counter.index = index;
+	}
+
+	// ---------------------------------------------------------------- query
+
+	/**
+	 * Returns at most <code>n</code> hottest keys, the hottest first.
+	 */
+	public List<HotKey<K>> getTopKeys(int n) {
+		List<HotKey<K>> result = new ArrayList<HotKey<K>>();
+		lock.lock();
+		try {
+			long elapsed = System.currentTimeMillis() - since;
+			for (int i = 0; i < size; i++) {
+				Counter<K> counter = heap[i];
+				result.add(new HotKey<K>(counter.key, counter.count * sampleRate, counter.error * sampleRate, total * sampleRate, elapsed));
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		Collections.sort(result, new Comparator<HotKey<K>>() {
+			public int compare(HotKey<K> o1, HotKey<K> o2) {
+				return o1.count > o2.count ? -1 : (o1.count == o2.count ? 0 : 1);
+			}
+		});
+		return n < result.size() ? new ArrayList<HotKey<K>>(result.subList(0, n)) : result;
+	}
+
+	/**
+	 * Returns keys whose share of all accesses is surely, i.e. even without
+	 * the estimation error, at least <code>share</code>. May be used for skew alerts.
+	 */
+	public List<HotKey<K>> getKeysAbove(double share) {
+		List<HotKey<K>> result = new ArrayList<HotKey<K>>();
+		for (HotKey<K> hotKey : getTopKeys(capacity)) {
+			if ((hotKey.total != 0) && ((double) (hotKey.count - hotKey.error) / hotKey.total >= share)) {
+				result.add(hotKey);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns estimated number of all accesses since the last reset.
+	 */
+	public long getTotal() {
+		lock.lock();
+		try {
+			return total * sampleRate;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Forgets all counts, starting a new measurement window.
+	 */
+	public void reset() {
+		lock.lock();
+		try {
+			for (int i = 0; i < size; i++) {
+				heap[i] = null;
+			}
+			counters.clear();
+			size = 0;
+			total = 0;
+			since = System.currentTimeMillis();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+}
@@ -4,6 +4,7 @@ package com.mtea.jodd_cache_study;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  * 使用频度最少
@@ -31,7 +32,8 @@ public class LFUCache<K,V> extends AbstractCacheMap<K,V> {
 	public LFUCache(int maxSize, long timeout) {
 		this.cacheSize = maxSize;
 		this.timeout = timeout;
-		cacheMap = new HashMap<K, CacheObject<K,V>>(maxSize + 1);
+		this.countAccess = true;
+		cacheMap = new HashMap<K, CacheObject<V>>(maxSize + 1);
 	}
 
 	// ---------------------------------------------------------------- prune
@@ -44,15 +46,17 @@ public class LFUCache<K,V> extends AbstractCacheMap<K,V> {
 	@Override
 	protected int pruneCache() {
         int count = 0;
-		CacheObject<K,V> comin = null;
+		CacheObject<V> comin = null;
 
 		// remove expired items and find cached object with minimal access count
-		Iterator<CacheObject<K,V>> values = cacheMap.values().iterator();
-		while (values.hasNext()) {
-			CacheObject<K,V> co = values.next();
+		Iterator<Map.Entry<K,CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<K,CacheObject<V>> entry = entries.next();
+			CacheObject<V> co = entry.getValue();
 			if (co.isExpired() == true) {
-				values.remove();
-				onRemove(co.key, co.cachedObject);
+				entries.remove();
+				onRemove(entry.getKey(), co.peekObject());
+				onRemoval(entry.getKey(), co, RemovalCause.EXPIRED);
 				count++;
 				continue;
 			}
@@ -61,7 +65,7 @@ public class LFUCache<K,V> extends AbstractCacheMap<K,V> {
 			if (comin == null) {
 				comin = co;
 			} else {
-				if (co.accessCount < comin.accessCount) {
+				if (co.getAccessCount() < comin.getAccessCount()) {
 					comin = co;
 				}
 			}
@@ -76,16 +80,19 @@ public class LFUCache<K,V> extends AbstractCacheMap<K,V> {
 		//之前的遍历我们已经知道了最小访问数的缓存对象
 		// decrease access count to all cached objects
 		if (comin != null) {
-			long minAccessCount = comin.accessCount;
+			long minAccessCount = comin.getAccessCount();
 
-			values = cacheMap.values().iterator();
-			while (values.hasNext()) {
-				CacheObject<K, V> co = values.next();
+			entries = cacheMap.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<K,CacheObject<V>> entry = entries.next();
+				CacheObject<V> co = entry.getValue();
 				//防止长度太长,也便于后来<=0比较
-				co.accessCount -= minAccessCount;
-				if (co.accessCount <= 0) {
-					values.remove();
-					onRemove(co.key, co.cachedObject);
+				long accessCount = co.getAccessCount() - minAccessCount;
+				co.setAccessCount(accessCount);
+				if (accessCount <= 0) {
+					entries.remove();
+					onRemove(entry.getKey(), co.peekObject());
+					onEvict(entry.getKey(), co);
 					count++;					
 				}
 			}
@@ -0,0 +1,117 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * LFU eviction policy with constant time operations.
+ * <p>
+ * Keys are grouped by access frequency into buckets that form a list
+ * ordered by frequency, so access just moves key to the next bucket and the victim
+ * is the oldest key of the first bucket. Among keys with the same frequency,
+ * the least recently promoted one is evicted.
+ */
+public class LFUEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	/**
+	 * Keys with the same frequency.
+	 */
+	static final class Bucket<K> {
+		Bucket(long frequency) {
+			this.frequency = frequency;
+		}
+
+		final long frequency;
+		final LinkedHashSet<K> keys = new LinkedHashSet<K>();
+		Bucket<K> prev;
+		Bucket<K> next;
+	}
+
+	private final Bucket<K> head = new Bucket<K>(0);		// sentinel, never contains keys
+	private final Map<K, Bucket<K>> buckets = new HashMap<K, Bucket<K>>();
+
+	public boolean isAccessOrdered() {
+		return true;
+	}
+
+	public void onInsert(K key) {
+		Bucket<K> bucket = nextBucket(head);
+		bucket.keys.add(key);
+		buckets.put(key, bucket);
+	}
+
+	public void onAccess(K key) {
+		Bucket<K> bucket = buckets.get(key);
+		if (bucket == null) {
+			return;
+		}
+		Bucket<K> next = nextBucket(bucket);
+		next.keys.add(key);
+		buckets.put(key, next);
+		bucket.keys.remove(key);
+		if (bucket.keys.isEmpty()) {
+			unlink(bucket);
+		}
+	}
+
+	public void onRemove(K key) {
+		Bucket<K> bucket = buckets.remove(key);
+		if (bucket != null) {
+			bucket.keys.remove(key);
+			if (bucket.keys.isEmpty()) {
+				unlink(bucket);
+			}
+		}
+	}
+
+	public K selectVictim() {
+		Bucket<K> first = head.next;
+		if (first == null) {
+			return null;
+		}
+		Iterator<K> iterator = first.keys.iterator();
+		return iterator.next();
+	}
+
+	public void clear() {
+		buckets.clear();
+		head.next = null;
+	}
+
+	/**
+	 * Returns frequency of a key, 0 if key is unknown.
+	 */
+	public long getFrequency(K key) {
+		Bucket<K> bucket = buckets.get(key);
+		return bucket == null ? 0 : bucket.frequency;
+	}
+
+	/**
+	 * Returns bucket with frequency one higher than given one, creating it if needed.
+	 */
+	private Bucket<K> nextBucket(Bucket<K> bucket) {
+		Bucket<K> next = bucket.next;
+		if ((next != null) && (next.frequency == bucket.frequency + 1)) {
+			return next;
+		}
+		Bucket<K> created = new Bucket<K>(bucket.frequency + 1);
+		created.prev = bucket;
+		created.next = next;
+		if (next != null) {
+			next.prev = created;
+		}
+		bucket.next = created;
+		return created;
+	}
+
+	private void unlink(Bucket<K> bucket) {
+		bucket.prev.next = bucket.next;
+		if (bucket.next != null) {
+			bucket.next.prev = bucket.prev;
+		}
+	}
+}
@@ -21,8 +21,12 @@ import java.util.Iterator;
  * unlikely to be reaccessed soon; in particular, it can become useless in the face of scanning type accesses.
  * Nonetheless, this is by far the most frequently used caching algorithm.
  * <p>
- * Implementation note: unfortunately, it was not possible to have <code>onRemove</code> callback method,
- * since <code>LinkedHashMap</code> has its removal methods private.
+ * Implementation note: <code>LinkedHashMap</code> has its removal methods private, but it passes
+ * the eldest entry to <code>removeEldestEntry</code>, so evictions are still reported to
+ * {@link #setRemovalListener(RemovalListener) removal listener}.
+ * <p>
+ * Access ordered <code>LinkedHashMap</code> is modified on every hit, so <code>get</code>
+ * uses the write lock.
  * <p>
  * Summary for LRU: fast, adaptive, not scan resistant.
  */
@@ -38,15 +42,20 @@ public class LRUCache<K, V> extends AbstractCacheMap<K, V> {
 	public LRUCache(int cacheSize, long timeout) {
 		this.cacheSize = cacheSize;
 		this.timeout = timeout;
+		this.exclusiveHit = true;
 		
 		//true: 基于访问顺序,经常访问的将放在Map的最后,put 1-a ,put 2-b, put 3-c ,然后get 3 , get 2 , get 1  , 遍历结果: 3,2,1
 		//LinkedHashMap 提高删减更新的效率
-		cacheMap = new LinkedHashMap<K, CacheObject<K,V>>(cacheSize + 1, 1.0f, true) {
+		cacheMap = new LinkedHashMap<K, CacheObject<V>>(cacheSize + 1, 1.0f, true) {
 			@Override
-			protected boolean removeEldestEntry(Map.Entry eldest) {
+			protected boolean removeEldestEntry(Map.Entry<K, CacheObject<V>> eldest) {
 				
 				//因为lhm无论是当accessOrder为true的时候,get后自动排在最后,put也放在最后,因此当其删除时间最久远的元素的时候,删除链头部的元素就ok了
-				return LRUCache.this.removeEldestEntry(size());
+				if (LRUCache.this.removeEldestEntry(size())) {
+					onEvict(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
 			}
 		};
 	}
@@ -75,14 +84,35 @@ public class LRUCache<K, V> extends AbstractCacheMap<K, V> {
 			return 0;
 		}
         int count = 0;
-		Iterator<CacheObject<K,V>> values = cacheMap.values().iterator();
-		while (values.hasNext()) {
-			CacheObject<K,V> co = values.next();
-			if (co.isExpired() == true) {
-				values.remove();
+		Iterator<Map.Entry<K,CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<K,CacheObject<V>> entry = entries.next();
+			if (entry.getValue().isExpired() == true) {
+				entries.remove();
+				onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
 				count++;
 			}
 		}
 		return count;
 	}
+
+	/**
+	 * Evicts the least recently used objects, from the head of the map.
+	 */
+	@Override
+	protected int trim(int maxCount) {
+		int count = 0;
+		Iterator<Map.Entry<K,CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+		while ((count < maxCount) && (cacheSize != 0) && (cacheMap.size() > cacheSize) && entries.hasNext()) {
+			Map.Entry<K,CacheObject<V>> entry = entries.next();
+			entries.remove();
+			if (entry.getValue().isExpired() == false) {
+				onEvict(entry.getKey(), entry.getValue());
+			} else {
+				onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
+			}
+			count++;
+		}
+		return count;
+	}
 }
@@ -0,0 +1,42 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * LRU eviction policy: evicts the least recently used key.
+ */
+public class LRUEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	// 最近最少使用的在最前面
+	protected final LinkedHashSet<K> keys = new LinkedHashSet<K>();
+
+	public boolean isAccessOrdered() {
+		return true;
+	}
+
+	public void onInsert(K key) {
+		keys.add(key);
+	}
+
+	public void onAccess(K key) {
+		if (keys.remove(key)) {
+			keys.add(key);
+		}
+	}
+
+	public void onRemove(K key) {
+		keys.remove(key);
+	}
+
+	public K selectVictim() {
+		Iterator<K> iterator = keys.iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	public void clear() {
+		keys.clear();
+	}
+}
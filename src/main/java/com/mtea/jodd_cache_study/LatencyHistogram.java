@@ -0,0 +1,163 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 延迟直方图
+ * Lock-free histogram of latencies in nanoseconds, with high dynamic range.
+ *
+ * <p>
+ * Buckets are log-linear: each power of two is split into {@link #SUB_BUCKETS}
+ * linear sub-buckets, so any value from a nanosecond up to hours is kept with
+ * relative error below 1/{@link #SUB_BUCKETS}. Recording is a few atomic
+ * increments, without locks and without allocation.
+ * <p>
+ * Percentiles are read from a {@link Snapshot}, that may reset the histogram,
+ * for periodic reporting.
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BITS = 3;
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one value, negative values are recorded as zero.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketIndex(nanos));
+		total.addAndGet(nanos);
+		long m = max.get();
+		while ((nanos > m) && (max.compareAndSet(m, nanos) == false)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Returns bucket of a value: values below {@link #SUB_BUCKETS} have their own
+	 * buckets, others are grouped by the highest bit and next {@link #SUB_BITS} bits.
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Returns the highest value that falls into the bucket.
+	 */
+	static long bucketValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index >>> SUB_BITS) - 1;
+		long low = ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))) << shift;
+		return low + (1L << shift) - 1;
+	}
+
+	/**
+	 * Returns snapshot of the histogram.
+	 */
+	public Snapshot snapshot() {
+		return snapshot(false);
+	}
+
+	/**
+	 * Returns snapshot of the histogram and optionally resets it. Values recorded
+	 * concurrently are either in this snapshot or in the next one.
+	 */
+	public Snapshot snapshot(boolean reset) {
+		long[] c = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			c[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+			count += c[i];
+		}
+		long sum = reset ? total.getAndSet(0) : total.get();
+		long maximum = reset ? max.getAndSet(0) : max.get();
+		return new Snapshot(c, count, sum, maximum);
+	}
+
+	/**
+	 * Clears the histogram.
+	 */
+	public void reset() {
+		snapshot(true);
+	}
+
+	// ---------------------------------------------------------------- snapshot
+
+	/**
+	 * Immutable copy of a histogram.
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long total, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+		/**
+		 * Returns the value below which given percent of values fall,
+		 * e.g. <code>99.9</code> for p999. Value is rounded up to its bucket.
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(percentile / 100 * count);
+			if (rank < 1) {
+				rank = 1;
+			}
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(bucketValue(i), max);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count +
+					" mean=" + (long) getMean() +
+					" p50=" + getValueAtPercentile(50) +
+					" p99=" + getValueAtPercentile(99) +
+					" p999=" + getValueAtPercentile(99.9) +
+					" max=" + max;
+		}
+	}
+}
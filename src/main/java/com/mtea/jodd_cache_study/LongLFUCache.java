@@ -0,0 +1,51 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * LFU cache with primitive <code>long</code> keys, see {@link LFUCache}.
+ * Access counts are kept in an array. On eviction, the entry with minimal
+ * access count is removed (the eldest one among equals) and access count
+ * of all entries is decreased by its count, so new frequent entries may
+ * come into the cache. Eviction scans the array, but doesn't allocate.
+ */
+public class LongLFUCache<V> extends AbstractLongCacheMap<V> {
+
+	protected final long[] accessCount;
+
+	public LongLFUCache(int cacheSize) {
+		this(cacheSize, 0);
+	}
+
+	public LongLFUCache(int cacheSize, long timeout) {
+		super(cacheSize, timeout);
+		accessCount = new long[cacheSize];
+	}
+
+	@Override
+	protected void onInsert(int id) {
+		accessCount[id] = 0;
+	}
+
+	@Override
+	protected void onAccess(int id) {
+		accessCount[id]++;
+	}
+
+	@Override
+	protected int selectVictim() {
+		int victim = head;
+		for (int id = head; id != NONE; id = next[id]) {
+			if (accessCount[id] < accessCount[victim]) {
+				victim = id;
+			}
+		}
+		if (victim != NONE) {
+			long minAccessCount = accessCount[victim];
+			for (int id = head; id != NONE; id = next[id]) {
+				accessCount[id] -= minAccessCount;
+			}
+		}
+		return victim;
+	}
+}
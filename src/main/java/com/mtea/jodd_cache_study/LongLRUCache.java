@@ -0,0 +1,32 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * LRU cache with primitive <code>long</code> keys, see {@link LRUCache}.
+ * Accessed entry is moved to the end of the list, the eldest one is evicted.
+ * All operations are constant time and allocation free.
+ */
+public class LongLRUCache<V> extends AbstractLongCacheMap<V> {
+
+	public LongLRUCache(int cacheSize) {
+		this(cacheSize, 0);
+	}
+
+	public LongLRUCache(int cacheSize, long timeout) {
+		super(cacheSize, timeout);
+	}
+
+	@Override
+	protected void onAccess(int id) {
+		if (id != tail) {
+			unlink(id);
+			linkLast(id);
+		}
+	}
+
+	@Override
+	protected int selectVictim() {
+		return head;
+	}
+}
@@ -0,0 +1,166 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * 线程本地的近端缓存
+ * Near cache: small per-thread front tier in front of a shared cache.
+ *
+ * <p>
+ * Each thread keeps a tiny direct-mapped table of recently read values.
+ * Hot reads are served from it without locking and without touching the shared
+ * cache map. Copies are valid for a short time window and only while the
+ * {@link AbstractCacheMap#getVersion() version stamp} of the backing cache is unchanged,
+ * so any <code>put</code>, <code>remove</code> or <code>clear</code> on the backing cache,
+ * through this near cache or not, invalidates all thread tables.
+ * <p>
+ * Within the window, a value removed from the backing cache by expiration or
+ * eviction may still be returned. Access statistics of the backing cache are
+ * not updated for reads served by the front tier.
+ */
+public class NearCache<K, V> implements Cache<K, V> {
+
+	/**
+	 * Per-thread table.
+	 */
+	static class Local {
+		Local(int size) {
+			keys = new Object[size];
+			values = new Object[size];
+			loaded = new long[size];
+		}
+
+		final Object[] keys;
+		final Object[] values;
+		final long[] loaded;		// 读取时间
+		long version;
+
+		void clear(long version) {
+			Arrays.fill(keys, null);
+			Arrays.fill(values, null);
+			this.version = version;
+		}
+	}
+
+	protected final AbstractCacheMap<K, V> cache;
+	protected final long window;
+	private final int mask;
+
+	private final ThreadLocal<Local> local = new ThreadLocal<Local>() {
+		@Override
+		protected Local initialValue() {
+			Local l = new Local(mask + 1);
+			l.version = cache.getVersion();
+			return l;
+		}
+	};
+
+	/**
+	 * Creates near cache with per-thread table of given size, rounded up
+	 * to the power of two, and validity window in milliseconds.
+	 */
+	public NearCache(AbstractCacheMap<K, V> cache, int size, long window) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Invalid near cache size: " + size);
+		}
+		this.cache = cache;
+		this.window = window;
+		int n = 1;
+		while (n < size) {
+			n <<= 1;
+		}
+		this.mask = n - 1;
+	}
+
+	/**
+	 * Returns the backing cache.
+	 */
+	public AbstractCacheMap<K, V> getCache() {
+		return cache;
+	}
+
+	// ---------------------------------------------------------------- get
+
+	/**
+	 * Returns value from the thread table if still valid,
+	 * otherwise reads through the backing cache and remembers the value.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		Local l = local.get();
+		long version = cache.getVersion();
+		if (l.version != version) {
+			l.clear(version);
+		}
+
+		int index = index(key);
+		long now = System.currentTimeMillis();
+		Object k = l.keys[index];
+		if ((k != null) && (k.equals(key) == true) && (now - l.loaded[index] <= window)) {
+			return (V) l.values[index];
+		}
+
+		V value = cache.get(key);
+		if ((value != null) && (cache.getVersion() == version)) {
+			l.keys[index] = key;
+			l.values[index] = value;
+			l.loaded[index] = now;
+		}
+		return value;
+	}
+
+	private int index(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return h & mask;
+	}
+
+	// ---------------------------------------------------------------- delegates
+
+	public int getCacheSize() {
+		return cache.getCacheSize();
+	}
+
+	public long getCacheTimeout() {
+		return cache.getCacheTimeout();
+	}
+
+	public void put(K key, V object) {
+		cache.put(key, object);
+	}
+
+	public void put(K key, V object, long timeout) {
+		cache.put(key, object, timeout);
+	}
+
+	public Iterator<V> iterator() {
+		return cache.iterator();
+	}
+
+	public int prune() {
+		return cache.prune();
+	}
+
+	public boolean isFull() {
+		return cache.isFull();
+	}
+
+	public void remove(K key) {
+		cache.remove(key);
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public boolean isEmpty() {
+		return cache.isEmpty();
+	}
+}
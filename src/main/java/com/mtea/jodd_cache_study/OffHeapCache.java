@@ -0,0 +1,690 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache that keeps serialized values off-heap, in direct <code>ByteBuffer</code>
+ * slabs managed by a slab allocator. Only a compact index stays on the heap:
+ * keys and slot metadata (chunk address, size, timestamps, policy links) in
+ * primitive arrays indexed by slot number, so there are no objects per cached
+ * value, large caches don't fill the old generation and don't prolong garbage collection.
+ * <p>
+ * Cache is limited both by number of objects and by off-heap bytes. When
+ * either limit is reached, objects are evicted using selected {@link Policy}.
+ * Policy order is kept per size class of the slab allocator: when there is no
+ * free chunk for a value, the victim is taken from the size class of the value,
+ * so its chunk is reused right away. Only when that size class is empty, victims
+ * are taken from all classes until a slab is freed. LFU keeps objects in buckets
+ * of equal access count, so hits and evictions are constant time.
+ * Values are serialized with given {@link CacheCodec} on every put and
+ * deserialized on every get, i.e. returned objects are always copies.
+ * Objects that can't be serialized or are larger than a slab are not cached,
+ * putting such an object removes the previous one.
+ * <p>
+ * Since index order changes on access, a single lock guards all operations.
+ */
+public class OffHeapCache<K, V> implements Cache<K, V> {
+
+	/**
+	 * Eviction policy.
+	 */
+	public enum Policy {
+		/** least recently used, see {@link LRUCache} */
+		LRU,
+		/** least frequently used, see {@link LFUCache} */
+		LFU,
+		/** first in first out, see {@link FIFOCache} */
+		FIFO
+	}
+
+	/**
+	 * Slots of one size class with the same access count, linked in policy order.
+	 * Buckets of a size class are sorted by access count; LRU and FIFO
+	 * use just one bucket per size class.
+	 */
+	static final class Bucket {
+		Bucket(int sizeClass, long count) {
+			this.sizeClass = sizeClass;
+			this.count = count;
+		}
+
+		final int sizeClass;
+		final long count;
+		int head = -1;
+		int tail = -1;
+		Bucket prev;
+		Bucket next;
+	}
+
+	protected final Policy policy;
+	protected final int cacheSize;
+	protected final long timeout;
+	protected final CacheCodec<V> valueCodec;
+
+	private final SlabAllocator allocator;
+	private final Lock lock = new ReentrantLock();
+
+	// 槽的元数据按槽号存放在基本类型数组中
+	private Object[] keys;
+	private long[] addresses;
+	private int[] lengths;
+	private long[] ttls;
+	private long[] lastAccess;
+	private long[] ticks;			// order of insert or access
+	private int[] prev;
+	private int[] next;
+	private Bucket[] buckets;		// bucket of the slot
+	private int[] free;
+	private int freeCount;
+	private int limit;				// slots from here on were never used
+	private int size;
+	private long tick;
+	private int timedCount;			// slots with timeout
+
+	private int[] index;			// slot + 1 by key hash; 0 = empty, -1 = deleted
+	private int deleted;
+
+	private final Bucket[] classBuckets;		// first bucket of each size class
+	private long minCount;			// LFU: lower access counts are normalized away
+
+	/**
+	 * Creates off-heap cache with 1MB slabs.
+	 * @param policy eviction policy
+	 * @param cacheSize max number of objects, 0 = no limit
+	 * @param maxBytes max off-heap memory in bytes
+	 * @param valueCodec value serializer
+	 */
+	public OffHeapCache(Policy policy, int cacheSize, long maxBytes, CacheCodec<V> valueCodec) {
+		this(policy, cacheSize, maxBytes, 1024 * 1024, 0, valueCodec);
+	}
+
+	/**
+	 * Creates off-heap cache.
+	 * @param policy eviction policy
+	 * @param cacheSize max number of objects, 0 = no limit
+	 * @param maxBytes max off-heap memory in bytes, at least one slab
+	 * @param slabSize slab size in bytes, power of two; also the max serialized value size
+	 * @param timeout default timeout, may be 0
+	 * @param valueCodec value serializer
+	 */
+	public OffHeapCache(Policy policy, int cacheSize, long maxBytes, int slabSize, long timeout, CacheCodec<V> valueCodec) {
+		this.policy = policy;
+		this.cacheSize = cacheSize;
+		this.timeout = timeout;
+		this.valueCodec = valueCodec;
+		this.allocator = new SlabAllocator(slabSize, maxBytes);
+		this.classBuckets = new Bucket[allocator.sizeClass(slabSize) + 1];
+		init(cacheSize == 0 ? 16 : cacheSize + 1);
+	}
+
+	private void init(int capacity) {
+		keys = new Object[capacity];
+		addresses = new long[capacity];
+		lengths = new int[capacity];
+		ttls = new long[capacity];
+		lastAccess = new long[capacity];
+		ticks = new long[capacity];
+		prev = new int[capacity];
+		next = new int[capacity];
+		buckets = new Bucket[capacity];
+		free = new int[capacity];
+		freeCount = 0;
+		limit = 0;
+		size = 0;
+		timedCount = 0;
+		index = new int[Integer.highestOneBit(capacity) << 2];
+		deleted = 0;
+		Arrays.fill(classBuckets, null);
+		minCount = 0;
+	}
+
+	// ---------------------------------------------------------------- properties
+
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	public long getCacheTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Returns eviction policy.
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Returns off-heap memory reserved by slabs, in bytes.
+	 */
+	public long getOffHeapSize() {
+		lock.lock();
+		try {
+			return allocator.getAllocatedBytes();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns off-heap memory used by cached values, in bytes.
+	 */
+	public long getUsedOffHeapSize() {
+		lock.lock();
+		try {
+			return allocator.getUsedBytes();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// ---------------------------------------------------------------- put
+
+	public void put(K key, V object) {
+		put(key, object, timeout);
+	}
+
+	public void put(K key, V object, long timeout) {
+		byte[] bytes;
+		try {
+			bytes = valueCodec.encode(object);
+		} catch (IOException ioex) {
+			bytes = null;
+		}
+
+		lock.lock();
+		try {
+			int slot = find(key);
+			if (slot != -1) {
+				removeSlot(slot);
+			}
+			int sizeClass = bytes == null ? -1 : allocator.sizeClass(bytes.length);
+			if (sizeClass == -1) {
+				return;			// not cached, old value is removed too
+			}
+
+			if (isFull()) {
+				pruneCache();
+			}
+			// always succeeds at the end: empty slabs are shared by all size classes
+			long address = allocator.allocate(bytes.length);
+			while (address == -1) {
+				// 先淘汰同一大小类的对象, 释放的块可以直接复用
+				Bucket bucket = classBuckets[sizeClass];
+				int victim = bucket != null ? bucket.head : victim();
+				if (victim == -1) {
+					return;
+				}
+				evict(victim);
+				address = allocator.allocate(bytes.length);
+			}
+			allocator.write(address, bytes);
+			addSlot(key, address, bytes.length, timeout, sizeClass);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// ---------------------------------------------------------------- get
+
+	public V get(K key) {
+		byte[] bytes;
+		lock.lock();
+		try {
+			int slot = find(key);
+			if (slot == -1) {
+				return null;
+			}
+			if (isExpired(slot) == true) {
+				removeSlot(slot);
+				return null;
+			}
+			lastAccess[slot] = System.currentTimeMillis();
+			onAccess(slot);
+			bytes = allocator.read(addresses[slot], lengths[slot]);
+		}
+		finally {
+			lock.unlock();
+		}
+		return decode(bytes);
+	}
+
+	private V decode(byte[] bytes) {
+		try {
+			return valueCodec.decode(bytes);
+		} catch (IOException ioex) {
+			throw new IllegalStateException("Unable to decode cached value", ioex);
+		}
+	}
+
+	/**
+	 * Returns iterator over non-expired values, in the policy order
+	 * for LRU and FIFO. Iterator works on a copy of current values,
+	 * removal is not supported.
+	 */
+	public Iterator<V> iterator() {
+		final List<byte[]> values = new ArrayList<byte[]>();
+		lock.lock();
+		try {
+			if (policy == Policy.LFU) {
+				for (int slot = 0; slot < limit; slot++) {
+					if ((buckets[slot] != null) && (isExpired(slot) == false)) {
+						values.add(allocator.read(addresses[slot], lengths[slot]));
+					}
+				}
+			} else {
+				// merge lists of size classes by their order
+				int[] cursors = new int[classBuckets.length];
+				for (int i = 0; i < cursors.length; i++) {
+					cursors[i] = classBuckets[i] != null ? classBuckets[i].head : -1;
+				}
+				while (true) {
+					int best = -1;
+					for (int i = 0; i < cursors.length; i++) {
+						if ((cursors[i] != -1) && ((best == -1) || (ticks[cursors[i]] < ticks[cursors[best]]))) {
+							best = i;
+						}
+					}
+					if (best == -1) {
+						break;
+					}
+					int slot = cursors[best];
+					cursors[best] = next[slot];
+					if (isExpired(slot) == false) {
+						values.add(allocator.read(addresses[slot], lengths[slot]));
+					}
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		return new Iterator<V>() {
+			private int next;
+
+			public boolean hasNext() {
+				return next < values.size();
+			}
+
+			public V next() {
+				if (hasNext() == false) {
+					throw new NoSuchElementException();
+				}
+				return decode(values.get(next++));
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	// ---------------------------------------------------------------- prune
+
+	public int prune() {
+		lock.lock();
+		try {
+			return pruneCache();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes expired objects and, if cache is still full, evicts
+	 * one object according to the policy. Slots are scanned
+	 * only if some objects have timeout.
+	 */
+	protected int pruneCache() {
+		int count = 0;
+		if (timedCount > 0) {
+			for (int slot = 0; slot < limit; slot++) {
+				if ((buckets[slot] != null) && (isExpired(slot) == true)) {
+					removeSlot(slot);
+					count++;
+				}
+			}
+		}
+		if (isFull()) {
+			int victim = victim();
+			if (victim != -1) {
+				evict(victim);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the first slot in the policy order over all size classes,
+	 * comparing just the first slot of each class. Returns -1 if cache is empty.
+	 */
+	private int victim() {
+		int victim = -1;
+		for (Bucket bucket : classBuckets) {
+			if (bucket == null) {
+				continue;
+			}
+			int slot = bucket.head;
+			if (victim == -1) {
+				victim = slot;
+				continue;
+			}
+			long count = buckets[victim].count;
+			if ((bucket.count < count) || ((bucket.count == count) && (ticks[slot] < ticks[victim]))) {
+				victim = slot;
+			}
+		}
+		return victim;
+	}
+
+	/**
+	 * Evicts the slot. With LFU, access counts are normalized, as in
+	 * {@link LFUCache}: new objects start at the lowest count left.
+	 */
+	private void evict(int slot) {
+		removeSlot(slot);
+		if (policy == Policy.LFU) {
+			long min = Long.MAX_VALUE;
+			for (Bucket bucket : classBuckets) {
+				if ((bucket != null) && (bucket.count < min)) {
+					min = bucket.count;
+				}
+			}
+			if (min != Long.MAX_VALUE) {
+				minCount = min;
+			}
+		}
+	}
+
+	private boolean isExpired(int slot) {
+		if (ttls[slot] == 0) {
+			return false;
+		}
+		return lastAccess[slot] + ttls[slot] < System.currentTimeMillis();
+	}
+
+	// ---------------------------------------------------------------- slots
+
+	private void addSlot(K key, long address, int length, long ttl, int sizeClass) {
+		int slot;
+		if (freeCount > 0) {
+			slot = free[--freeCount];
+		} else {
+			if (limit == keys.length) {
+				grow();
+			}
+			slot = limit++;
+		}
+		keys[slot] = key;
+		addresses[slot] = address;
+		lengths[slot] = length;
+		ttls[slot] = ttl;
+		lastAccess[slot] = System.currentTimeMillis();
+		ticks[slot] = ++tick;
+		size++;
+		if (ttl != 0) {
+			timedCount++;
+		}
+		addIndex(slot);
+
+		Bucket bucket = classBuckets[sizeClass];
+		long count = policy == Policy.LFU ? minCount : 0;
+		if ((bucket == null) || (bucket.count != count)) {
+			// counts are never below minCount, so new bucket goes first
+			Bucket first = new Bucket(sizeClass, count);
+			first.next = bucket;
+			if (bucket != null) {
+				bucket.prev = first;
+			}
+			classBuckets[sizeClass] = first;
+			bucket = first;
+		}
+		link(slot, bucket);
+	}
+
+	private void removeSlot(int slot) {
+		removeIndex(slot);
+		allocator.free(addresses[slot]);
+		unlink(slot);
+		if (ttls[slot] != 0) {
+			timedCount--;
+		}
+		keys[slot] = null;
+		free[freeCount++] = slot;
+		size--;
+	}
+
+	/**
+	 * Moves accessed slot in the policy order.
+	 */
+	private void onAccess(int slot) {
+		if (policy == Policy.FIFO) {
+			return;
+		}
+		ticks[slot] = ++tick;
+		Bucket bucket = buckets[slot];
+		if (policy == Policy.LRU) {
+			if (bucket.tail != slot) {
+				unlink(slot);
+				link(slot, bucket);
+			}
+			return;
+		}
+		long count = bucket.count + 1;
+		Bucket target = bucket.next;
+		if ((target == null) || (target.count != count)) {
+			target = new Bucket(bucket.sizeClass, count);
+			target.prev = bucket;
+			target.next = bucket.next;
+			if (bucket.next != null) {
+				bucket.next.prev = target;
+			}
+			bucket.next = target;
+		}
+		unlink(slot);
+		link(slot, target);
+	}
+
+	/**
+	 * Appends slot to the end of the bucket.
+	 */
+	private void link(int slot, Bucket bucket) {
+		buckets[slot] = bucket;
+		next[slot] = -1;
+		prev[slot] = bucket.tail;
+		if (bucket.tail == -1) {
+			bucket.head = slot;
+		} else {
+			next[bucket.tail] = slot;
+		}
+		bucket.tail = slot;
+	}
+
+	/**
+	 * Removes slot from its bucket, and empty bucket from its size class.
+	 */
+	private void unlink(int slot) {
+		Bucket bucket = buckets[slot];
+		buckets[slot] = null;
+		if (prev[slot] == -1) {
+			bucket.head = next[slot];
+		} else {
+			next[prev[slot]] = next[slot];
+		}
+		if (next[slot] == -1) {
+			bucket.tail = prev[slot];
+		} else {
+			prev[next[slot]] = prev[slot];
+		}
+		if (bucket.head != -1) {
+			return;
+		}
+		if (bucket.prev == null) {
+			classBuckets[bucket.sizeClass] = bucket.next;
+		} else {
+			bucket.prev.next = bucket.next;
+		}
+		if (bucket.next != null) {
+			bucket.next.prev = bucket.prev;
+		}
+	}
+
+	private void grow() {
+		int capacity = keys.length << 1;
+		keys = Arrays.copyOf(keys, capacity);
+		addresses = Arrays.copyOf(addresses, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		ttls = Arrays.copyOf(ttls, capacity);
+		lastAccess = Arrays.copyOf(lastAccess, capacity);
+		ticks = Arrays.copyOf(ticks, capacity);
+		prev = Arrays.copyOf(prev, capacity);
+		next = Arrays.copyOf(next, capacity);
+		buckets = Arrays.copyOf(buckets, capacity);
+		free = Arrays.copyOf(free, capacity);
+	}
+
+	// ---------------------------------------------------------------- index
+
+	/**
+	 * Returns the slot of the key, -1 if key is not cached.
+	 */
+	private int find(Object key) {
+		int i = findIndex(key);
+		return i == -1 ? -1 : index[i] - 1;
+	}
+
+	private int findIndex(Object key) {
+		int mask = index.length - 1;
+		int i = hash(key) & mask;
+		while (true) {
+			int value = index[i];
+			if (value == 0) {
+				return -1;
+			}
+			if (value > 0) {
+				Object k = keys[value - 1];
+				if ((k == key) || ((key != null) && key.equals(k))) {
+					return i;
+				}
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	private void addIndex(int slot) {
+		if ((size + deleted) << 1 > index.length) {
+			rehash();
+		}
+		int mask = index.length - 1;
+		int i = hash(keys[slot]) & mask;
+		while (index[i] > 0) {
+			i = (i + 1) & mask;
+		}
+		if (index[i] == -1) {
+			deleted--;
+		}
+		index[i] = slot + 1;
+	}
+
+	private void removeIndex(int slot) {
+		index[findIndex(keys[slot])] = -1;
+		deleted++;
+	}
+
+	/**
+	 * Rebuilds the index without deleted marks, doubling it if needed.
+	 * Slot being added is already counted in the size, but not linked yet.
+	 */
+	private void rehash() {
+		int length = index.length;
+		while (size << 1 > length) {
+			length <<= 1;
+		}
+		index = new int[length];
+		deleted = 0;
+		int mask = length - 1;
+		for (int slot = 0; slot < limit; slot++) {
+			if (buckets[slot] == null) {
+				continue;
+			}
+			int i = hash(keys[slot]) & mask;
+			while (index[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			index[i] = slot + 1;
+		}
+	}
+
+	private static int hash(Object key) {
+		if (key == null) {
+			return 0;
+		}
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// ---------------------------------------------------------------- common
+
+	public boolean isFull() {
+		if (cacheSize == 0) {
+			return false;
+		}
+		return size >= cacheSize;
+	}
+
+	public void remove(K key) {
+		lock.lock();
+		try {
+			int slot = find(key);
+			if (slot != -1) {
+				removeSlot(slot);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Clears the cache and releases all slabs.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			init(cacheSize == 0 ? 16 : cacheSize + 1);
+			allocator.reset();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return size;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+}
@@ -0,0 +1,111 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Cache with pluggable {@link EvictionPolicy}.
+ *
+ * <p>
+ * Storage, locking, timeouts and all other features of {@link AbstractCacheMap}
+ * are shared; policy only decides which key is evicted when cache is full.
+ * Since every removal goes through {@link #onRemoval(Object, CacheObject, RemovalCause)},
+ * policy bookkeeping is always consistent and listeners get all causes.
+ * <p>
+ * Available policies: {@link LRUEvictionPolicy}, {@link LFUEvictionPolicy}
+ * and {@link FIFOEvictionPolicy}, all with constant time operations.
+ */
+public class PolicyCache<K, V> extends AbstractCacheMap<K, V> {
+
+	protected final EvictionPolicy<K> policy;
+
+	// state of the current insert
+	private boolean replacing;
+
+	public PolicyCache(int cacheSize, EvictionPolicy<K> policy) {
+		this(cacheSize, 0, policy);
+	}
+
+	public PolicyCache(int cacheSize, long timeout, EvictionPolicy<K> policy) {
+		this.cacheSize = cacheSize;
+		this.timeout = timeout;
+		this.policy = policy;
+		this.exclusiveHit = policy.isAccessOrdered();
+		cacheMap = new HashMap<K, CacheObject<V>>(cacheSize + 1);
+	}
+
+	/**
+	 * Returns eviction policy.
+	 */
+	public EvictionPolicy<K> getPolicy() {
+		return policy;
+	}
+
+	// ---------------------------------------------------------------- hooks
+
+	@Override
+	protected void onInsert(K key, CacheObject<V> co) {
+		if (replacing) {
+			replacing = false;
+			if (policy.isAccessOrdered()) {
+				policy.onAccess(key);
+			}
+		} else {
+			policy.onInsert(key);
+		}
+	}
+
+	@Override
+	protected void onAccess(K key, CacheObject<V> co) {
+		if (exclusiveHit) {
+			policy.onAccess(key);
+		}
+	}
+
+	@Override
+	protected void onRemoval(K key, CacheObject<V> co, RemovalCause cause) {
+		super.onRemoval(key, co, cause);
+		if (cause == RemovalCause.REPLACED) {
+			replacing = true;
+		} else {
+			policy.onRemove(key);
+		}
+	}
+
+	@Override
+	protected void onClear() {
+		policy.clear();
+	}
+
+	// ---------------------------------------------------------------- prune
+
+	/**
+	 * Prunes expired objects and, if cache is still full, evicts the victim selected by the policy.
+	 */
+	@Override
+	protected int pruneCache() {
+		int count = 0;
+		if (isPruneExpiredActive()) {
+			Iterator<Map.Entry<K, CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<K, CacheObject<V>> entry = entries.next();
+				if (entry.getValue().isExpired() == true) {
+					entries.remove();
+					onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
+					count++;
+				}
+			}
+		}
+		if (isFull()) {
+			K victim = policy.selectVictim();
+			if (victim != null) {
+				onEvict(victim, cacheMap.remove(victim));
+				count++;
+			}
+		}
+		return count;
+	}
+}
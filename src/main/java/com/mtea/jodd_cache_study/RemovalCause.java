@@ -0,0 +1,35 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * The reason why an object has been removed from the cache.
+ */
+public enum RemovalCause {
+
+	/**
+	 * Evicted by the cache strategy, to make room for other objects.
+	 */
+	SIZE,
+
+	/**
+	 * Object timeout has expired.
+	 */
+	EXPIRED,
+
+	/**
+	 * Removed by the user, with <code>remove</code> or <code>clear</code>.
+	 */
+	EXPLICIT,
+
+	/**
+	 * Replaced by a new object with the same key.
+	 */
+	REPLACED,
+
+	/**
+	 * Soft or weak value has been cleared by the garbage collector.
+	 * Value in the notification is <code>null</code>.
+	 */
+	COLLECTED
+}
@@ -0,0 +1,85 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Collects removal notifications while cache lock is held and
+ * delivers them in batches to the {@link RemovalListener} on an executor.
+ */
+class RemovalDispatcher<K, V> {
+
+	/**
+	 * Default executor, single daemon thread shared by all caches.
+	 */
+	static class DefaultExecutor {
+		static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cache-removal-dispatcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	static class Notification<K, V> {
+		final K key;
+		final V value;
+		final RemovalCause cause;
+
+		Notification(K key, V value, RemovalCause cause) {
+			this.key = key;
+			this.value = value;
+			this.cause = cause;
+		}
+	}
+
+	protected final RemovalListener<K, V> listener;
+	protected final Executor executor;
+	private List<Notification<K, V>> pending = new ArrayList<Notification<K, V>>();
+
+	RemovalDispatcher(RemovalListener<K, V> listener, Executor executor) {
+		this.listener = listener;
+		this.executor = executor != null ? executor : DefaultExecutor.INSTANCE;
+	}
+
+	/**
+	 * Queues notification. Invoked under the cache lock,
+	 * possibly by several readers at once.
+	 */
+	synchronized void add(K key, V value, RemovalCause cause) {
+		pending.add(new Notification<K, V>(key, value, cause));
+	}
+
+	/**
+	 * Sends all queued notifications as a single batch.
+	 * Invoked after the cache lock is released.
+	 */
+	void dispatch() {
+		final List<Notification<K, V>> batch;
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new ArrayList<Notification<K, V>>();
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				for (Notification<K, V> notification : batch) {
+					try {
+						listener.onRemoval(notification.key, notification.value, notification.cause);
+					} catch (RuntimeException ignore) {
+						// listener failure must not stop other notifications
+					}
+				}
+			}
+		});
+	}
+}
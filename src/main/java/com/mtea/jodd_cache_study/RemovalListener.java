@@ -0,0 +1,18 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * Listener notified when objects are removed from the cache.
+ * Notifications are delivered asynchronously, in batches, outside
+ * of the cache lock: so listener may be slow, but it must be thread-safe
+ * and must not expect that cache still (or not anymore) contains the key.
+ * @see AbstractCacheMap#setRemovalListener(RemovalListener)
+ */
+public interface RemovalListener<K, V> {
+
+	/**
+	 * Invoked for every removed object.
+	 */
+	void onRemoval(K key, V value, RemovalCause cause);
+}
@@ -0,0 +1,379 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * 采样淘汰缓存
+ * Cache with sampled, approximate eviction, intended for huge caches.
+ *
+ * <p>
+ * No ordering structure is maintained. When cache is full, a few random objects are
+ * sampled and the worst one, by the chosen {@link Metric}, is evicted. The best
+ * candidates seen so far are kept in a small pool, so that sampling quality improves
+ * over consecutive evictions. Eviction costs O(samples) instead of a full scan;
+ * more samples give better accuracy. Expired objects found in the sample are
+ * removed first.
+ * <p>
+ * Explicit {@link #prune()} on a cache that is not full still removes all expired objects.
+ * <p>
+ * Summary: fast, approximate, low memory overhead.
+ */
+public class SampledCache<K, V> extends AbstractCacheMap<K, V> {
+
+	/**
+	 * What is considered as the worst object.
+	 */
+	public enum Metric {
+		/**
+		 * Least frequently used.
+		 */
+		ACCESS_COUNT,
+		/**
+		 * Least recently used.
+		 */
+		LAST_ACCESS,
+		/**
+		 * Nearest to expiration, objects without timeout are evicted last.
+		 */
+		EXPIRY
+	}
+
+	/**
+	 * Cache object that knows its position in the sampling table.
+	 * Tracks both access count and last access, regardless of timeout.
+	 */
+	static class SampledCacheObject<V2> extends CacheObject<V2> {
+		SampledCacheObject(Object object, long ttl) {
+			super(object);
+			this.ttl = ttl;
+			this.lastAccess = System.currentTimeMillis();
+		}
+
+		final long ttl;
+		long lastAccess;
+		long accessCount;
+		int index = -1;
+
+		@Override
+		boolean isExpired() {
+			return (ttl != 0) && (lastAccess + ttl < System.currentTimeMillis());
+		}
+
+		@Override
+		V2 getObject() {
+			accessCount++;
+			lastAccess = System.currentTimeMillis();
+			return peekObject();
+		}
+
+		@Override
+		long getTtl() {
+			return ttl;
+		}
+
+		@Override
+		long getLastAccess() {
+			return lastAccess;
+		}
+
+		@Override
+		void setLastAccess(long lastAccess) {
+			this.lastAccess = lastAccess;
+		}
+
+		@Override
+		long getAccessCount() {
+			return accessCount;
+		}
+
+		@Override
+		void setAccessCount(long accessCount) {
+			this.accessCount = accessCount;
+		}
+	}
+
+	/**
+	 * Sampled object stamped with generations it was added in,
+	 * see {@link EpochCacheObject}.
+	 */
+	static class EpochSampledCacheObject<V2> extends SampledCacheObject<V2> {
+		EpochSampledCacheObject(Object object, long ttl, Generation global, Generation namespace) {
+			super(object, ttl);
+			this.global = global;
+			this.globalStamp = global.current;
+			this.namespace = namespace;
+			this.namespaceStamp = namespace != null ? namespace.current : 0;
+		}
+
+		final Generation global;
+		final int globalStamp;
+		final Generation namespace;
+		final int namespaceStamp;
+
+		@Override
+		boolean isStale() {
+			return (global.current != globalStamp) || ((namespace != null) && (namespace.current != namespaceStamp));
+		}
+
+		@Override
+		boolean isExpired() {
+			return isStale() || super.isExpired();
+		}
+	}
+
+	public static final int DEFAULT_SAMPLES = 5;
+	public static final int POOL_SIZE = 16;
+
+	protected final Metric metric;
+	protected final int samples;
+
+	// 采样表, 用于随机访问
+	private Object[] keys;
+	private SampledCacheObject<?>[] objects;
+	private int size;
+
+	// 候选池
+	private final Object[] poolKeys = new Object[POOL_SIZE];
+	private final SampledCacheObject<?>[] poolObjects = new SampledCacheObject<?>[POOL_SIZE];
+	private int poolSize;
+
+	private final Random random = new Random();
+
+	public SampledCache(int cacheSize, Metric metric) {
+		this(cacheSize, 0, metric, DEFAULT_SAMPLES);
+	}
+
+	public SampledCache(int cacheSize, long timeout, Metric metric) {
+		this(cacheSize, timeout, metric, DEFAULT_SAMPLES);
+	}
+
+	public SampledCache(int cacheSize, long timeout, Metric metric, int samples) {
+		if (samples <= 0) {
+			throw new IllegalArgumentException("Invalid number of samples: " + samples);
+		}
+		this.cacheSize = cacheSize;
+		this.timeout = timeout;
+		this.metric = metric;
+		this.samples = samples;
+		cacheMap = new HashMap<K, CacheObject<V>>(cacheSize + 1);
+		int capacity = cacheSize > 0 ? cacheSize : 16;
+		keys = new Object[capacity];
+		objects = new SampledCacheObject<?>[capacity];
+	}
+
+	/**
+	 * Sampled objects have their own layout, so they are stamped
+	 * with generations directly, instead of being wrapped.
+	 */
+	@Override
+	CacheObject<V> createCacheObject(K key, V value, long ttl) {
+		Object object = wrapValue(key, value);
+		Generation global = globalGeneration();
+		if (global != null) {
+			return new EpochSampledCacheObject<V>(object, ttl, global, namespaceGeneration(key));
+		}
+		return new SampledCacheObject<V>(object, ttl);
+	}
+
+	// ---------------------------------------------------------------- hooks
+
+	@Override
+	protected void onInsert(K key, CacheObject<V> co) {
+		if (size == objects.length) {
+			int capacity = size << 1;
+			Object[] newKeys = new Object[capacity];
+			SampledCacheObject<?>[] newObjects = new SampledCacheObject<?>[capacity];
+			System.arraycopy(keys, 0, newKeys, 0, size);
+			System.arraycopy(objects, 0, newObjects, 0, size);
+			keys = newKeys;
+			objects = newObjects;
+		}
+		SampledCacheObject<V> sco = (SampledCacheObject<V>) co;
+		keys[size] = key;
+		objects[size] = sco;
+		sco.index = size;
+		size++;
+	}
+
+	/**
+	 * Removes object from the sampling table by moving the last one in its place.
+	 */
+	@Override
+	protected void onRemoval(K key, CacheObject<V> co, RemovalCause cause) {
+		super.onRemoval(key, co, cause);
+		SampledCacheObject<?> sco = (SampledCacheObject<?>) co;
+		int index = sco.index;
+		if ((index == -1) || (objects[index] != sco)) {
+			return;
+		}
+		size--;
+		if (index != size) {
+			keys[index] = keys[size];
+			objects[index] = objects[size];
+			objects[index].index = index;
+		}
+		keys[size] = null;
+		objects[size] = null;
+		sco.index = -1;
+	}
+
+	@Override
+	protected void onClear() {
+		for (int i = 0; i < size; i++) {
+			keys[i] = null;
+			objects[i] = null;
+		}
+		size = 0;
+		clearPool();
+	}
+
+	// ---------------------------------------------------------------- prune
+
+	/**
+	 * If cache is full, samples objects, removes expired ones among them and,
+	 * if none, evicts the worst candidate from the pool. Otherwise just removes
+	 * all expired objects.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected int pruneCache() {
+		int count = 0;
+		if (isFull() == false) {
+			if (isPruneExpiredActive()) {
+				for (int i = size - 1; i >= 0; i--) {
+					if ((i < size) && (objects[i].isExpired() == true)) {
+						count += removeSampled((K) keys[i], (SampledCacheObject<V>) objects[i], false);
+					}
+				}
+			}
+			return count;
+		}
+
+		// with enough samples, whole table is checked
+		boolean all = samples >= size;
+		int n = all ? size : samples;
+		for (int i = n - 1; i >= 0; i--) {
+			int index = all ? i : random.nextInt(size);
+			SampledCacheObject<V> sco = (SampledCacheObject<V>) objects[index];
+			K key = (K) keys[index];
+			if (sco.isExpired() == true) {
+				count += removeSampled(key, sco, false);
+				if (size == 0) {
+					break;
+				}
+				continue;
+			}
+			offer(key, sco);
+		}
+		if (count > 0) {
+			return count;
+		}
+
+		// the best valid candidate from the pool
+		int best = -1;
+		long bestScore = Long.MAX_VALUE;
+		for (int i = 0; i < poolSize; i++) {
+			SampledCacheObject<?> sco = poolObjects[i];
+			if ((sco.index == -1) || (objects[sco.index] != sco)) {
+				continue;		// already removed
+			}
+			long score = score(sco);
+			if ((best == -1) || (score < bestScore)) {
+				best = i;
+				bestScore = score;
+			}
+		}
+		if (best == -1) {
+			clearPool();
+			return 0;
+		}
+		return removeSampled((K) poolKeys[best], (SampledCacheObject<V>) poolObjects[best], true);
+	}
+
+	/**
+	 * Removes sampled object from the cache and from the pool.
+	 */
+	private int removeSampled(K key, SampledCacheObject<V> sco, boolean evict) {
+		cacheMap.remove(key);
+		if (evict) {
+			onEvict(key, sco);
+		} else {
+			onRemoval(key, sco, RemovalCause.EXPIRED);
+		}
+		for (int i = 0; i < poolSize; i++) {
+			if (poolObjects[i] == sco) {
+				removeFromPool(i);
+				break;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Offers sampled object to the candidate pool. When pool is full,
+	 * the least suitable candidate is replaced, if the new one is worse.
+	 */
+	private void offer(K key, SampledCacheObject<V> sco) {
+		int worst = -1;
+		long worstScore = Long.MIN_VALUE;
+		for (int i = 0; i < poolSize; i++) {
+			SampledCacheObject<?> candidate = poolObjects[i];
+			if (candidate == sco) {
+				return;
+			}
+			if ((candidate.index == -1) || (objects[candidate.index] != candidate)) {
+				removeFromPool(i);		// stale, just drop it
+				i--;
+				continue;
+			}
+			long score = score(candidate);
+			if (score > worstScore) {
+				worst = i;
+				worstScore = score;
+			}
+		}
+		if (poolSize < POOL_SIZE) {
+			poolKeys[poolSize] = key;
+			poolObjects[poolSize] = sco;
+			poolSize++;
+			return;
+		}
+		if (score(sco) < worstScore) {
+			poolKeys[worst] = key;
+			poolObjects[worst] = sco;
+		}
+	}
+
+	private void removeFromPool(int i) {
+		poolSize--;
+		poolKeys[i] = poolKeys[poolSize];
+		poolObjects[i] = poolObjects[poolSize];
+		poolKeys[poolSize] = null;
+		poolObjects[poolSize] = null;
+	}
+
+	private void clearPool() {
+		for (int i = 0; i < poolSize; i++) {
+			poolKeys[i] = null;
+			poolObjects[i] = null;
+		}
+		poolSize = 0;
+	}
+
+	/**
+	 * Returns the score of an object, the lowest one is evicted first.
+	 */
+	private long score(SampledCacheObject<?> sco) {
+		switch (metric) {
+			case ACCESS_COUNT:
+				return sco.accessCount;
+			case LAST_ACCESS:
+				return sco.lastAccess;
+			default:
+				return sco.ttl == 0 ? Long.MAX_VALUE : sco.lastAccess + sco.ttl;
+		}
+	}
+}
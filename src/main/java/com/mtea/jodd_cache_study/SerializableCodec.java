@@ -0,0 +1,41 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * {@link CacheCodec} that uses default java serialization.
+ * Works for any <code>Serializable</code> object, but it is neither
+ * fast nor compact: prefer specialized codec for large caches.
+ */
+public class SerializableCodec<T extends Serializable> implements CacheCodec<T> {
+
+	public byte[] encode(T object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		try {
+			out.writeObject(object);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	@SuppressWarnings("unchecked")
+	public T decode(byte[] bytes) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return (T) in.readObject();
+		} catch (ClassNotFoundException cnfex) {
+			throw new IOException("Unable to decode object: " + cnfex.getMessage(), cnfex);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,240 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Slab allocator over direct <code>ByteBuffer</code>s.
+ * Memory is requested in slabs of equal size; every slab in use is assigned
+ * to a single size class (powers of two) and split into chunks of that size.
+ * Freed chunks are kept on a free list of their slab. When all chunks of a slab
+ * are freed, the slab returns to the shared pool and may be taken by any size
+ * class, so memory is not bound forever to the class that used it first.
+ * <p>
+ * Chunk address encodes slab index (high 32 bits) and offset in the slab.
+ * Not thread-safe.
+ */
+class SlabAllocator {
+
+	static final int MIN_CHUNK_SIZE = 64;
+
+	/**
+	 * Slab and its chunks.
+	 */
+	static class Slab {
+		Slab(int index, ByteBuffer buffer) {
+			this.index = index;
+			this.buffer = buffer;
+		}
+
+		final int index;
+		final ByteBuffer buffer;
+		int sizeClass = -1;		// -1 = in the shared pool
+		int used;				// chunks in use
+		int carveOffset;		// [carveOffset, slabSize) was never used
+		int[] free = new int[16];
+		int freeCount;
+		int partialIndex = -1;	// position in the list of slabs with room
+
+		void reset() {
+			sizeClass = -1;
+			used = 0;
+			carveOffset = 0;
+			freeCount = 0;
+			partialIndex = -1;
+		}
+	}
+
+	protected final int slabSize;
+	protected final long maxBytes;
+
+	private final List<Slab> slabs = new ArrayList<Slab>();
+	private final int[] chunkSizes;
+	private final List<List<Slab>> partial;		// slabs with room, per size class
+	private final List<Slab> pool = new ArrayList<Slab>();		// empty slabs
+	private long usedBytes;
+
+	/**
+	 * @param slabSize size of a single slab, power of two, at least {@link #MIN_CHUNK_SIZE}
+	 * @param maxBytes max total size of all slabs, at least one slab
+	 */
+	SlabAllocator(int slabSize, long maxBytes) {
+		if ((slabSize < MIN_CHUNK_SIZE) || (Integer.bitCount(slabSize) != 1)) {
+			throw new IllegalArgumentException("Invalid slab size: " + slabSize);
+		}
+		if (maxBytes < slabSize) {
+			throw new IllegalArgumentException("Max bytes must be at least one slab: " + slabSize);
+		}
+		this.slabSize = slabSize;
+		this.maxBytes = maxBytes;
+
+		int classes = Integer.numberOfTrailingZeros(slabSize) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE) + 1;
+		chunkSizes = new int[classes];
+		partial = new ArrayList<List<Slab>>(classes);
+		for (int i = 0; i < classes; i++) {
+			chunkSizes[i] = MIN_CHUNK_SIZE << i;
+			partial.add(new ArrayList<Slab>());
+		}
+	}
+
+	/**
+	 * Returns size class index for given size, or <code>-1</code> if size exceeds the slab size.
+	 */
+	int sizeClass(int size) {
+		if (size > slabSize) {
+			return -1;
+		}
+		if (size <= MIN_CHUNK_SIZE) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Allocates a chunk big enough for given size.
+	 * Returns chunk address or <code>-1</code> if there is no free memory.
+	 * Since empty slabs are shared, allocation of any size that fits into
+	 * a slab succeeds once enough chunks are freed.
+	 */
+	long allocate(int size) {
+		int sc = sizeClass(size);
+		if (sc == -1) {
+			return -1;
+		}
+		List<Slab> slabsWithRoom = partial.get(sc);
+		Slab slab;
+		if (slabsWithRoom.isEmpty() == false) {
+			slab = slabsWithRoom.get(slabsWithRoom.size() - 1);
+		} else {
+			slab = takeSlab();
+			if (slab == null) {
+				return -1;
+			}
+			slab.sizeClass = sc;
+			addPartial(slab);
+		}
+
+		int offset;
+		if (slab.freeCount > 0) {
+			offset = slab.free[--slab.freeCount];
+		} else {
+			offset = slab.carveOffset;
+			slab.carveOffset += chunkSizes[sc];
+		}
+		slab.used++;
+		if ((slab.freeCount == 0) && (slab.carveOffset == slabSize)) {
+			removePartial(slab);		// full
+		}
+		usedBytes += chunkSizes[sc];
+		return ((long) slab.index << 32) | offset;
+	}
+
+	/**
+	 * Returns an empty slab, from the pool or newly allocated,
+	 * or <code>null</code> if memory limit is reached.
+	 */
+	private Slab takeSlab() {
+		if (pool.isEmpty() == false) {
+			return pool.remove(pool.size() - 1);
+		}
+		if ((long) (slabs.size() + 1) * slabSize > maxBytes) {
+			return null;
+		}
+		Slab slab = new Slab(slabs.size(), ByteBuffer.allocateDirect(slabSize));
+		slabs.add(slab);
+		return slab;
+	}
+
+	/**
+	 * Returns chunk to its slab. Empty slab goes back to the shared pool.
+	 */
+	void free(long address) {
+		Slab slab = slabs.get((int) (address >>> 32));
+		int sc = slab.sizeClass;
+		usedBytes -= chunkSizes[sc];
+		slab.used--;
+		if (slab.used == 0) {
+			removePartial(slab);
+			slab.reset();
+			pool.add(slab);
+			return;
+		}
+		if (slab.freeCount == slab.free.length) {
+			int[] newFree = new int[slab.free.length << 1];
+			System.arraycopy(slab.free, 0, newFree, 0, slab.freeCount);
+			slab.free = newFree;
+		}
+		slab.free[slab.freeCount++] = (int) address;
+		if (slab.partialIndex == -1) {
+			addPartial(slab);
+		}
+	}
+
+	private void addPartial(Slab slab) {
+		List<Slab> list = partial.get(slab.sizeClass);
+		slab.partialIndex = list.size();
+		list.add(slab);
+	}
+
+	private void removePartial(Slab slab) {
+		if (slab.partialIndex == -1) {
+			return;
+		}
+		List<Slab> list = partial.get(slab.sizeClass);
+		Slab last = list.remove(list.size() - 1);
+		if (last != slab) {
+			list.set(slab.partialIndex, last);
+			last.partialIndex = slab.partialIndex;
+		}
+		slab.partialIndex = -1;
+	}
+
+	/**
+	 * Writes bytes to the chunk.
+	 */
+	void write(long address, byte[] bytes) {
+		ByteBuffer buffer = slabs.get((int) (address >>> 32)).buffer.duplicate();
+		buffer.position((int) address);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Reads bytes from the chunk.
+	 */
+	byte[] read(long address, int length) {
+		ByteBuffer buffer = slabs.get((int) (address >>> 32)).buffer.duplicate();
+		buffer.position((int) address);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Returns total size of allocated slabs.
+	 */
+	long getAllocatedBytes() {
+		return (long) slabs.size() * slabSize;
+	}
+
+	/**
+	 * Returns size of chunks in use.
+	 */
+	long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Releases all slabs. Direct memory is reclaimed when slabs are garbage collected.
+	 */
+	void reset() {
+		for (List<Slab> list : partial) {
+			list.clear();
+		}
+		slabs.clear();
+		pool.clear();
+		usedBytes = 0;
+	}
+}
@@ -0,0 +1,21 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.nio.charset.Charset;
+
+/**
+ * UTF-8 {@link CacheCodec} for strings.
+ */
+public class StringCodec implements CacheCodec<String> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public byte[] encode(String object) {
+		return object.getBytes(UTF8);
+	}
+
+	public String decode(byte[] bytes) {
+		return new String(bytes, UTF8);
+	}
+}
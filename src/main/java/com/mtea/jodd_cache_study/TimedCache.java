@@ -4,6 +4,7 @@ package com.mtea.jodd_cache_study;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -17,7 +18,7 @@ public class TimedCache<K, V> extends AbstractCacheMap<K, V> {
 	public TimedCache(long timeout) {
 		this.cacheSize = 0;
 		this.timeout = timeout;
-		cacheMap = new HashMap<K, CacheObject<K,V>>();
+		cacheMap = new HashMap<K, CacheObject<V>>();
 	}
 
 	// ---------------------------------------------------------------- prune
@@ -28,11 +29,12 @@ public class TimedCache<K, V> extends AbstractCacheMap<K, V> {
 	@Override
 	protected int pruneCache() {
         int count = 0;
-		Iterator<CacheObject<K,V>> values = cacheMap.values().iterator();
-		while (values.hasNext()) {
-			CacheObject<K,V> co = values.next();
-			if (co.isExpired() == true) {
-				values.remove();
+		Iterator<Map.Entry<K,CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<K,CacheObject<V>> entry = entries.next();
+			if (entry.getValue().isExpired() == true) {
+				entries.remove();
+				onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
 				count++;
 			}
 		}
@@ -44,6 +46,16 @@ public class TimedCache<K, V> extends AbstractCacheMap<K, V> {
 
 	protected Timer pruneTimer;
 
+	protected volatile boolean parallelSweep;
+
+	/**
+	 * Makes scheduled prunes use the {@link #sweepExpired() parallel sweep},
+	 * which blocks writers only briefly per range. Useful for very large caches.
+	 */
+	public void setParallelSweep(boolean parallelSweep) {
+		this.parallelSweep = parallelSweep;
+	}
+
 	/**
 	 * Schedules prune.
 	 */
@@ -58,7 +70,11 @@ public class TimedCache<K, V> extends AbstractCacheMap<K, V> {
 				new TimerTask() {
 					@Override
 					public void run() {
-						prune();
+						if (parallelSweep) {
+							sweepExpired();
+						} else {
+							prune();
+						}
 					}
 				}, delay, delay
 		);
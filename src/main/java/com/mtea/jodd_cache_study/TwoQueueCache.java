@@ -0,0 +1,193 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * 两个队列的缓存
+ * 2Q / segmented LRU cache.
+ *
+ * <p>
+ * New objects enter the probationary FIFO queue. Only the second access promotes
+ * an object to the protected LRU queue, so a one-time scan over the key space
+ * flows through the probationary queue and leaves protected objects alone.
+ * Protected queue is limited; when it overflows, its LRU object is demoted back
+ * to the probationary queue. Keys of objects evicted from the probationary queue are
+ * remembered in a ghost queue: if such key is put again soon, it is considered as
+ * the second access and goes directly to the protected queue.
+ * Hits, inserts and evictions are constant time; when timeout is used,
+ * pruning scans the whole cache for expired objects.
+ * <p>
+ * Hits move objects between queues, so <code>get</code> uses the write lock.
+ * <p>
+ * Summary for 2Q: fast, captures recency and frequency, scan resistant.
+ */
+public class TwoQueueCache<K, V> extends AbstractCacheMap<K, V> {
+
+	protected final LinkedHashSet<K> probation = new LinkedHashSet<K>();	// 试用队列, FIFO
+	protected final LinkedHashSet<K> protect = new LinkedHashSet<K>();		// 保护队列, LRU
+	protected final LinkedHashSet<K> ghost = new LinkedHashSet<K>();		// 幽灵队列, 只存键
+
+	protected final int protectedSize;
+	protected final int ghostSize;
+
+	// state of the current insert
+	private K insertKey;
+	private boolean secondAccess;
+
+	public TwoQueueCache(int cacheSize) {
+		this(cacheSize, 0);
+	}
+
+	/**
+	 * Creates 2Q cache with protected queue of 80% and ghost queue of 50% of cache size.
+	 */
+	public TwoQueueCache(int cacheSize, long timeout) {
+		this(cacheSize, timeout, cacheSize * 4 / 5, cacheSize / 2);
+	}
+
+	public TwoQueueCache(int cacheSize, long timeout, int protectedSize, int ghostSize) {
+		if (cacheSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+		}
+		if ((protectedSize < 0) || (protectedSize >= cacheSize)) {
+			throw new IllegalArgumentException("Invalid protected size: " + protectedSize);
+		}
+		this.cacheSize = cacheSize;
+		this.timeout = timeout;
+		this.protectedSize = protectedSize;
+		this.ghostSize = ghostSize;
+		this.exclusiveHit = true;
+		cacheMap = new HashMap<K, CacheObject<V>>(cacheSize + 1);
+	}
+
+	// ---------------------------------------------------------------- hooks
+
+	@Override
+	protected void beforeInsert(K key) {
+		insertKey = key;
+		secondAccess = protect.contains(key) || ghost.remove(key);
+	}
+
+	@Override
+	protected void onInsert(K key, CacheObject<V> co) {
+		if (secondAccess) {
+			probation.remove(key);
+			protect.remove(key);
+			protect.add(key);
+			balance();
+		} else if (probation.contains(key) == false) {
+			probation.add(key);		// update keeps its FIFO position
+		}
+		insertKey = null;
+		secondAccess = false;
+	}
+
+	/**
+	 * Promotes probationary object, or moves protected object
+	 * to the most recently used position.
+	 */
+	@Override
+	protected void onAccess(K key, CacheObject<V> co) {
+		if (probation.remove(key) == false) {
+			protect.remove(key);
+		}
+		protect.add(key);
+		balance();
+	}
+
+	@Override
+	protected void onRemoval(K key, CacheObject<V> co, RemovalCause cause) {
+		super.onRemoval(key, co, cause);
+		if (cause != RemovalCause.REPLACED) {
+			if (probation.remove(key) == false) {
+				protect.remove(key);
+			}
+		}
+	}
+
+	@Override
+	protected void onClear() {
+		ghost.clear();
+	}
+
+	@Override
+	protected void onInvalidate() {
+		ghost.clear();
+	}
+
+	/**
+	 * Demotes LRU objects of the protected queue while it is too big.
+	 */
+	private void balance() {
+		while (protect.size() > protectedSize) {
+			probation.add(removeFirst(protect));
+		}
+	}
+
+	private static <T> T removeFirst(LinkedHashSet<T> set) {
+		return removeFirst(set, null);
+	}
+
+	/**
+	 * Removes the first element that is not the skipped one.
+	 * Returns <code>null</code> if there is no such element.
+	 */
+	private static <T> T removeFirst(LinkedHashSet<T> set, T skip) {
+		Iterator<T> iterator = set.iterator();
+		while (iterator.hasNext()) {
+			T first = iterator.next();
+			if ((skip != null) && skip.equals(first)) {
+				continue;
+			}
+			iterator.remove();
+			return first;
+		}
+		return null;
+	}
+
+	// ---------------------------------------------------------------- prune
+
+	/**
+	 * Prunes expired objects and, if cache is still full, evicts the oldest
+	 * probationary object, remembering its key in the ghost queue.
+	 * The key being inserted is never chosen as a victim.
+	 */
+	@Override
+	protected int pruneCache() {
+		int count = 0;
+		if (isPruneExpiredActive()) {
+			Iterator<Map.Entry<K, CacheObject<V>>> entries = cacheMap.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<K, CacheObject<V>> entry = entries.next();
+				if (entry.getValue().isExpired() == true) {
+					entries.remove();
+					onRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPIRED);
+					count++;
+				}
+			}
+		}
+		if (isFull()) {
+			K victim = removeFirst(probation, insertKey);
+			if (victim != null) {
+				if (ghostSize > 0) {
+					if (ghost.size() >= ghostSize) {
+						removeFirst(ghost);
+					}
+					ghost.add(victim);
+				}
+			} else {
+				victim = removeFirst(protect, insertKey);
+			}
+			if (victim != null) {
+				onEvict(victim, cacheMap.remove(victim));
+				count++;
+			}
+		}
+		return count;
+	}
+}
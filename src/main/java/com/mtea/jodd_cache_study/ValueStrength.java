@@ -0,0 +1,27 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+/**
+ * Strength of references to cached values.
+ * @see AbstractCacheMap#setValueStrength(ValueStrength)
+ */
+public enum ValueStrength {
+
+	/**
+	 * Values are strongly referenced and removed only by the cache.
+	 */
+	STRONG,
+
+	/**
+	 * Values are softly referenced: garbage collector clears them
+	 * when the heap is running out, i.e. cache may use spare heap.
+	 */
+	SOFT,
+
+	/**
+	 * Values are weakly referenced: they are cleared as soon as nobody
+	 * else references them.
+	 */
+	WEAK
+}
@@ -0,0 +1,344 @@
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+package com.mtea.jodd_cache_study;
+
+import jodd.exception.UncheckedException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 延迟写缓存
+ * Write-behind cache: writes to the backing store are done later, in batches.
+ *
+ * <p>
+ * Puts and removes go to the wrapped cache immediately and mark the key dirty,
+ * both under the same lock, so the last state written is always the one in the cache.
+ * Dirty keys are coalesced: only the last state of each key is written. Dirty
+ * objects are flushed by a background thread, when there are <code>batchSize</code>
+ * of them or every <code>flushInterval</code> milliseconds. If the number of
+ * dirty keys reaches <code>maxDirty</code>, writers of new keys are blocked until
+ * the flush makes room (backpressure).
+ * <p>
+ * Dirty objects are pinned in the write buffer until they are written, so even if
+ * the wrapped cache evicts or expires them, <code>get</code> still returns them and
+ * nothing is lost. On writer failure, the batch is put back and retried on the
+ * next flush, unless a key has been dirtied again meanwhile.
+ * <p>
+ * {@link #clear()} clears the wrapped cache, but doesn't cancel pending writes.
+ */
+public class WriteBehindCache<K, V> implements Cache<K, V> {
+
+	private static final Object DELETED = new Object();
+
+	protected final AbstractCacheMap<K, V> cache;
+	protected final CacheWriter<K, V> writer;
+	protected final int batchSize;
+	protected final int maxDirty;
+
+	// 脏数据, 值为 DELETED 表示删除
+	private LinkedHashMap<K, Object> dirty = new LinkedHashMap<K, Object>();
+	private Map<K, Object> flushing;		// batch being written, still readable
+	private boolean flushRequested;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private final ScheduledExecutorService executor;
+	private volatile Exception lastError;
+
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			try {
+				doFlush();
+			}
+			catch (Exception ignore) {
+				// kept in lastError, batch is retried
+			}
+		}
+	};
+
+	/**
+	 * Creates write-behind cache.
+	 * @param cache wrapped cache
+	 * @param writer backing store writer
+	 * @param batchSize number of dirty keys that triggers the flush
+	 * @param flushInterval max delay of a write in milliseconds
+	 * @param maxDirty number of dirty keys that blocks writers
+	 */
+	public WriteBehindCache(AbstractCacheMap<K, V> cache, CacheWriter<K, V> writer, int batchSize, long flushInterval, int maxDirty) {
+		if ((batchSize <= 0) || (maxDirty < batchSize)) {
+			throw new IllegalArgumentException("Invalid batch size or dirty limit: " + batchSize + ", " + maxDirty);
+		}
+		this.cache = cache;
+		this.writer = writer;
+		this.batchSize = batchSize;
+		this.maxDirty = maxDirty;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cache-write-behind");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the wrapped cache.
+	 */
+	public AbstractCacheMap<K, V> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns the number of keys waiting to be written, including the batch being written.
+	 */
+	public int getDirtyCount() {
+		lock.lock();
+		try {
+			return dirty.size() + (flushing != null ? flushing.size() : 0);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the last writer failure or <code>null</code>.
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	// ---------------------------------------------------------------- put
+
+	public void put(K key, V object) {
+		put(key, object, cache.getCacheTimeout());
+	}
+
+	public void put(K key, V object, long timeout) {
+		lock.lock();
+		try {
+			awaitRoom(key);
+			cache.put(key, object, timeout);
+			markDirty(key, object);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(K key) {
+		lock.lock();
+		try {
+			awaitRoom(key);
+			cache.remove(key);
+			markDirty(key, DELETED);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for room if there are too many dirty keys. Must be called under the lock.
+	 */
+	private void awaitRoom(K key) {
+		while ((dirty.size() >= maxDirty) && (dirty.containsKey(key) == false)) {
+			requestFlush();
+			try {
+				notFull.await();
+			}
+			catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Marks key as dirty. Must be called under the lock.
+	 */
+	private void markDirty(K key, Object state) {
+		dirty.put(key, state);
+		if (dirty.size() >= batchSize) {
+			requestFlush();
+		}
+	}
+
+	private void requestFlush() {
+		if ((flushRequested == false) && (executor.isShutdown() == false)) {
+			flushRequested = true;
+			executor.execute(flushTask);
+		}
+	}
+
+	// ---------------------------------------------------------------- get
+
+	/**
+	 * Returns object from the wrapped cache or, if it is not there anymore,
+	 * from the write buffer. Buffer is checked under the lock, after any
+	 * concurrent put or remove is done with both the cache and the buffer.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		V value = cache.get(key);
+		if (value != null) {
+			return value;
+		}
+		lock.lock();
+		try {
+			Object state = dirty.get(key);
+			if ((state == null) && (flushing != null)) {
+				state = flushing.get(key);
+			}
+			if ((state == null) || (state == DELETED)) {
+				return null;
+			}
+			return (V) state;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// ---------------------------------------------------------------- flush
+
+	/**
+	 * Writes all dirty objects now. Returns the number of written keys.
+	 * Throws an exception if writer fails; batch is then retried later.
+	 */
+	public int flush() {
+		try {
+			return doFlush();
+		}
+		catch (Exception ex) {
+			throw new UncheckedException(ex);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private int doFlush() throws Exception {
+		flushLock.lock();
+		try {
+			Map<K, Object> batch;
+			lock.lock();
+			try {
+				flushRequested = false;
+				if (dirty.isEmpty()) {
+					return 0;
+				}
+				batch = dirty;
+				flushing = batch;
+				dirty = new LinkedHashMap<K, Object>();
+				notFull.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+
+			Map<K, V> writes = new LinkedHashMap<K, V>();
+			List<K> deletes = new ArrayList<K>();
+			for (Map.Entry<K, Object> entry : batch.entrySet()) {
+				if (entry.getValue() == DELETED) {
+					deletes.add(entry.getKey());
+				} else {
+					writes.put(entry.getKey(), (V) entry.getValue());
+				}
+			}
+
+			boolean failed = true;
+			try {
+				if (writes.isEmpty() == false) {
+					writer.write(writes);
+				}
+				if (deletes.isEmpty() == false) {
+					writer.delete(deletes);
+				}
+				failed = false;
+				return batch.size();
+			}
+			catch (Exception ex) {
+				lastError = ex;
+				throw ex;
+			}
+			finally {
+				lock.lock();
+				try {
+					flushing = null;
+					if (failed) {
+						requeue(batch);
+					}
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Puts failed batch back, keeping newer states of keys dirtied meanwhile.
+	 */
+	private void requeue(Map<K, Object> batch) {
+		LinkedHashMap<K, Object> merged = new LinkedHashMap<K, Object>(batch);
+		merged.putAll(dirty);
+		dirty = merged;
+	}
+
+	/**
+	 * Flushes all dirty objects and stops the background thread.
+	 */
+	public void close() {
+		executor.shutdown();
+		flush();
+	}
+
+	// ---------------------------------------------------------------- delegates
+
+	public int getCacheSize() {
+		return cache.getCacheSize();
+	}
+
+	public long getCacheTimeout() {
+		return cache.getCacheTimeout();
+	}
+
+	public Iterator<V> iterator() {
+		return cache.iterator();
+	}
+
+	public int prune() {
+		return cache.prune();
+	}
+
+	public boolean isFull() {
+		return cache.isFull();
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public boolean isEmpty() {
+		return cache.isEmpty();
+	}
+}
@@ -0,0 +1,111 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ARCCacheTest {
+
+	@Test
+	public void testCache() {
+		ARCCache<String, String> cache = new ARCCache<String, String>(3);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		assertFalse(cache.isFull());
+		cache.put("3", "3");
+		assertTrue(cache.isFull());
+
+		assertNotNull(cache.get("1"));     // 1 is frequent now
+		cache.put("4", "4");               // 2 is evicted from recency list
+		assertNull(cache.get("2"));
+		assertNotNull(cache.get("1"));
+		assertNotNull(cache.get("3"));
+		assertNotNull(cache.get("4"));
+		assertEquals(3, cache.size());
+
+		assertEquals(0, cache.getTargetRecencySize());
+		cache.put("2", "2");               // ghost hit, recency list should grow
+		assertEquals(1, cache.getTargetRecencySize());
+		assertNotNull(cache.get("2"));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testUpdateWhenFull() {
+		ARCCache<String, String> cache = new ARCCache<String, String>(2);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("1", "11");              // 1 is the LRU of T1, but it is being inserted
+		assertEquals("11", cache.get("1"));
+		assertNull(cache.get("2"));
+		assertEquals(1, cache.size());
+		assertFalse(cache.b1.contains("1"));
+		assertTrue(cache.b1.contains("2"));
+
+		ARCCache<String, String> single = new ARCCache<String, String>(1);
+		single.put("1", "1");
+		single.put("1", "11");
+		assertEquals("11", single.get("1"));
+		assertEquals(1, single.size());
+		assertTrue(single.b1.isEmpty());
+		assertTrue(single.b2.isEmpty());
+	}
+
+	@Test
+	public void testScanResistance() {
+		ARCCache<Integer, String> cache = new ARCCache<Integer, String>(10);
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 5; i++) {
+				if (cache.get(Integer.valueOf(i)) == null) {
+					cache.put(Integer.valueOf(i), "hot");
+				}
+			}
+		}
+		// one-time scan over many keys
+		for (int i = 100; i < 200; i++) {
+			cache.put(Integer.valueOf(i), "scan");
+		}
+		for (int i = 0; i < 5; i++) {
+			assertNotNull(cache.get(Integer.valueOf(i)));
+		}
+		assertEquals(10, cache.size());
+	}
+
+	@Test
+	public void testTimeoutAndRemove() {
+		ARCCache<String, String> cache = new ARCCache<String, String>(3);
+		cache.put("1", "1", 50);
+		cache.put("2", "2");
+		cache.get("2");
+		ThreadUtil.sleep(100);
+		assertNull(cache.get("1"));
+		assertEquals(1, cache.size());
+
+		cache.remove("2");
+		assertTrue(cache.isEmpty());
+		cache.put("3", "3");
+		cache.clear();
+		assertTrue(cache.isEmpty());
+		assertTrue(cache.t1.isEmpty() && cache.t2.isEmpty() && cache.b1.isEmpty() && cache.b2.isEmpty());
+	}
+
+	@Test
+	public void testInvariants() {
+		ARCCache<Integer, Integer> cache = new ARCCache<Integer, Integer>(50);
+		Random random = new Random(3);
+		for (int i = 0; i < 20000; i++) {
+			Integer key = Integer.valueOf(random.nextInt(10) < 7 ? random.nextInt(40) : random.nextInt(1000));
+			if (cache.get(key) == null) {
+				cache.put(key, key);
+			}
+			assertTrue(cache.size() <= 50);
+			assertEquals(cache.size(), cache.t1.size() + cache.t2.size());
+			assertTrue(cache.t1.size() + cache.b1.size() <= 50);
+			assertTrue(cache.t1.size() + cache.t2.size() + cache.b1.size() + cache.b2.size() <= 100);
+		}
+	}
+}
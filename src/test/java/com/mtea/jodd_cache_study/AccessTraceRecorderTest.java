@@ -0,0 +1,128 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class AccessTraceRecorderTest {
+
+	@Test
+	public void testRecordAndReplay() throws Exception {
+		File file = File.createTempFile("trace", ".rec");
+		file.deleteOnExit();
+
+		LRUCache<String, String> cache = new LRUCache<String, String>(10);
+		AccessTraceRecorder recorder = new AccessTraceRecorder();
+		cache.setTraceRecorder(recorder);
+
+		cache.put("a", "1");		// not started yet
+		assertFalse(recorder.isEnabled());
+
+		recorder.start(file);
+		assertTrue(recorder.isEnabled());
+		cache.put("a", "1");
+		cache.get("a");
+		cache.get("b");
+		cache.remove("a");
+		cache.get("a");
+		recorder.stop();
+		assertFalse(recorder.isEnabled());
+
+		cache.get("a");				// stopped
+		assertEquals(5, recorder.getWrittenCount());
+		assertEquals(0, recorder.getDroppedCount());
+		assertEquals(4 + 5 * 17, file.length());
+
+		AccessTrace trace = AccessTrace.readRecording(file);
+		assertEquals(3, trace.length());
+		long a = AccessTraceRecorder.keyId("a");
+		assertEquals(a, trace.getKey(0));
+		assertEquals(AccessTraceRecorder.keyId("b"), trace.getKey(1));
+		assertEquals(a, trace.getKey(2));
+	}
+
+	@Test
+	public void testThreadsAndSampling() throws Exception {
+		File file = File.createTempFile("trace", ".rec");
+		file.deleteOnExit();
+
+		final LFUCache<Integer, Integer> cache = new LFUCache<Integer, Integer>(100);
+		final AccessTraceRecorder recorder = new AccessTraceRecorder(1 << 16);
+		recorder.setSampleRate(4);
+		cache.setTraceRecorder(recorder);
+		recorder.start(file);
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						cache.get(Integer.valueOf(i % 200));
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		recorder.stop();
+
+		// key sampling: only about a quarter of keys, each one with all accesses
+		long written = recorder.getWrittenCount() + recorder.getDroppedCount();
+		assertTrue(written > 0);
+		assertTrue(written < 40000);
+		assertEquals(0, written % 200);
+
+		AccessTrace trace = AccessTrace.readRecording(file);
+		assertEquals(recorder.getWrittenCount(), trace.length());
+		for (int i = 0; i < trace.length(); i++) {
+			assertEquals(0, trace.getKey(i) & 3);
+		}
+	}
+
+	@Test
+	public void testBuffersOfDeadThreadsRemoved() throws Exception {
+		File file = File.createTempFile("trace", ".rec");
+		file.deleteOnExit();
+
+		final AccessTraceRecorder recorder = new AccessTraceRecorder(16);
+		recorder.start(file);
+		for (int t = 0; t < 10; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100; i++) {
+						recorder.record(Integer.valueOf(i), AccessTraceRecorder.PUT);
+					}
+				}
+			};
+			thread.start();
+			thread.join();
+		}
+		recorder.record("main", AccessTraceRecorder.PUT);
+		recorder.stop();
+
+		assertEquals(1, recorder.buffers.size());		// only the buffer of this thread
+		assertEquals(1001, recorder.getWrittenCount() + recorder.getDroppedCount());
+	}
+
+	@Test
+	public void testFullBufferDrops() throws Exception {
+		File file = File.createTempFile("trace", ".rec");
+		file.deleteOnExit();
+
+		AccessTraceRecorder recorder = new AccessTraceRecorder(16);
+		recorder.start(file);
+		for (int i = 0; i < 100000; i++) {
+			recorder.record(Integer.valueOf(i), AccessTraceRecorder.PUT);
+		}
+		recorder.stop();
+		assertEquals(100000, recorder.getWrittenCount() + recorder.getDroppedCount());
+		assertTrue(recorder.getDroppedCount() > 0);
+	}
+}
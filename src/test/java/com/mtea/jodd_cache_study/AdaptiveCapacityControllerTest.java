@@ -0,0 +1,91 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveCapacityControllerTest {
+
+	@Test
+	public void testShrinkAndGrow() {
+		LRUCache<Integer, String> lru = new LRUCache<Integer, String>(1000);
+		FIFOCache<Integer, String> fifo = new FIFOCache<Integer, String>(1000);
+		for (int i = 0; i < 1000; i++) {
+			lru.put(Integer.valueOf(i), "v");
+			fifo.put(Integer.valueOf(i), "v");
+		}
+		lru.get(Integer.valueOf(0));
+
+		AdaptiveCapacityController controller = new AdaptiveCapacityController();
+		controller.register(lru, 600, 1200);
+		controller.register(fifo, 100, 1000);
+
+		controller.onMemoryUsage(0.9);
+		assertEquals(750, lru.getCacheSize());
+		assertEquals(750, lru.size());
+		assertNotNull(lru.get(Integer.valueOf(0)));    // most recently used stays
+		assertNull(lru.get(Integer.valueOf(1)));
+		assertEquals(750, fifo.size());
+		assertNull(fifo.get(Integer.valueOf(249)));
+		assertNotNull(fifo.get(Integer.valueOf(250)));
+
+		controller.onMemoryUsage(0.9);
+		assertEquals(600, lru.getCacheSize());          // floor
+		assertEquals(600, lru.size());
+		assertEquals(563, fifo.size());
+
+		controller.onMemoryUsage(0.6);                  // between watermarks
+		assertEquals(600, lru.getCacheSize());
+
+		controller.onMemoryUsage(0.1);
+		controller.onMemoryUsage(0.1);
+		controller.onMemoryUsage(0.1);
+		assertEquals(1173, lru.getCacheSize());
+		assertEquals(1000, fifo.getCacheSize());        // ceiling
+	}
+
+	@Test
+	public void testUnboundedAndSmallCaches() {
+		LRUCache<Integer, String> unbounded = new LRUCache<Integer, String>(0);
+		LRUCache<Integer, String> small = new LRUCache<Integer, String>(1);
+
+		AdaptiveCapacityController controller = new AdaptiveCapacityController();
+		controller.register(unbounded, 10, 100);
+		controller.register(small, 1, 100);
+
+		controller.onMemoryUsage(0.1);
+		assertEquals(0, unbounded.getCacheSize());      // stays unbounded
+		assertEquals(2, small.getCacheSize());
+		controller.onMemoryUsage(0.1);
+		assertEquals(3, small.getCacheSize());
+
+		controller.onMemoryUsage(0.9);
+		assertEquals(0, unbounded.getCacheSize());
+		assertEquals(2, small.getCacheSize());
+	}
+
+	@Test
+	public void testInvalidBounds() {
+		AdaptiveCapacityController controller = new AdaptiveCapacityController();
+		LRUCache<Integer, String> lru = new LRUCache<Integer, String>(10);
+		try {
+			controller.register(lru, 0, 10);
+			fail();
+		} catch (IllegalArgumentException ignore) {
+		}
+		try {
+			controller.register(lru, 20, 10);
+			fail();
+		} catch (IllegalArgumentException ignore) {
+		}
+		assertTrue(controller.registrations.isEmpty());
+	}
+
+	@Test
+	public void testStartStop() {
+		AdaptiveCapacityController controller = new AdaptiveCapacityController();
+		controller.start();
+		controller.stop();
+	}
+}
@@ -0,0 +1,122 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CLOCKCacheTest {
+
+	@Test
+	public void testCache() {
+		CLOCKCache<String, String> cache = new CLOCKCache<String, String>(3);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		assertTrue(cache.isFull());
+
+		assertEquals("1", cache.get("1"));		// referenced, gets second chance
+		cache.put("4", "4");
+		assertNull(cache.get("2"));
+		assertEquals("1", cache.get("1"));
+		assertEquals("3", cache.get("3"));
+		assertEquals("4", cache.get("4"));
+
+		// all referenced, hand clears bits and evicts at the next position
+		cache.put("5", "5");
+		assertEquals(3, cache.size());
+		assertEquals("5", cache.get("5"));
+	}
+
+	@Test
+	public void testRemoveAndReuse() {
+		CLOCKCache<Integer, Integer> cache = new CLOCKCache<Integer, Integer>(10);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+			if (i % 3 == 0) {
+				cache.remove(Integer.valueOf(i));
+			}
+			assertTrue(cache.size() <= 10);
+		}
+		cache.clear();
+		assertTrue(cache.isEmpty());
+		cache.put(Integer.valueOf(1), Integer.valueOf(1));
+		assertEquals(Integer.valueOf(1), cache.get(Integer.valueOf(1)));
+	}
+
+	@Test
+	public void testTimeout() {
+		CLOCKCache<String, String> cache = new CLOCKCache<String, String>(3, 50);
+		cache.put("1", "1");
+		cache.put("2", "2", 0);
+		ThreadUtil.sleep(100);
+		assertNull(cache.get("1"));
+		cache.put("3", "3");
+		cache.put("4", "4");
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.prune());		// full, hand evicts one
+		assertEquals(2, cache.size());
+		cache.put("5", "5");
+		assertEquals(3, cache.size());
+		assertEquals("5", cache.get("5"));
+	}
+
+	@Test
+	public void testUnlimited() {
+		CLOCKCache<Integer, Integer> cache = new CLOCKCache<Integer, Integer>(0);
+		for (int i = 0; i < 100; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		assertEquals(100, cache.size());
+		assertEquals(Integer.valueOf(99), cache.get(Integer.valueOf(99)));
+	}
+
+	@Test
+	public void testWeakValues() {
+		CLOCKCache<Integer, Object> cache = new CLOCKCache<Integer, Object>(0);
+		cache.setValueStrength(ValueStrength.WEAK);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(Integer.valueOf(i), new Object());
+		}
+		assertEquals(1000, cache.size());
+
+		for (int i = 0; i < 50 && cache.size() > 0; i++) {
+			System.gc();
+			ThreadUtil.sleep(10);
+			cache.prune();				// references are enqueued asynchronously
+		}
+		assertEquals(0, cache.size());
+		cache.put(Integer.valueOf(1), "1");
+		assertEquals("1", cache.get(Integer.valueOf(1)));
+	}
+
+	@Test
+	public void testConcurrentReads() throws InterruptedException {
+		final CLOCKCache<Integer, Integer> cache = new CLOCKCache<Integer, Integer>(100);
+		for (int i = 0; i < 100; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		final AtomicInteger misses = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						if (cache.get(Integer.valueOf(i % 100)) == null) {
+							misses.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, misses.get());
+	}
+}
@@ -0,0 +1,177 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import jodd.io.FileUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CacheEventsTest {
+
+	/**
+	 * Loads classes of this package itself and hides <code>jdk.jfr</code>,
+	 * as on a runtime without the flight recorder.
+	 */
+	static class NoFlightRecorderClassLoader extends ClassLoader {
+		NoFlightRecorderClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("jdk.jfr.")) {
+				throw new ClassNotFoundException(name);
+			}
+			if (name.startsWith("com.mtea.jodd_cache_study.") == false) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					byte[] bytes = readClass(name);
+					c = defineClass(name, bytes, 0, bytes.length);
+				}
+				if (resolve) {
+					resolveClass(c);
+				}
+				return c;
+			}
+		}
+
+		private byte[] readClass(String name) throws ClassNotFoundException {
+			InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+			if (in == null) {
+				throw new ClassNotFoundException(name);
+			}
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					out.write(buffer, 0, n);
+				}
+				in.close();
+				return out.toByteArray();
+			}
+			catch (IOException ioex) {
+				throw new ClassNotFoundException(name, ioex);
+			}
+		}
+	}
+
+	private static Map<String, Integer> count(List<RecordedEvent> events) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (RecordedEvent event : events) {
+			String name = event.getEventType().getName();
+			Integer count = counts.get(name);
+			counts.put(name, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+		}
+		return counts;
+	}
+
+	private static int count(Map<String, Integer> counts, String event) {
+		Integer count = counts.get("com.mtea.jodd_cache_study." + event);
+		return count == null ? 0 : count.intValue();
+	}
+
+	@Test
+	public void testEvents() throws Exception {
+		File dump = File.createTempFile("cache", ".jfr");
+		dump.deleteOnExit();
+		File file = File.createTempFile("cache", ".txt");
+		file.deleteOnExit();
+		FileUtil.writeBytes(file, new byte[10]);
+
+		LRUCache<String, String> cache = new LRUCache<String, String>(2);
+		FileLFUCache fileCache = new FileLFUCache(100);
+		CacheEvents.setAccessSampleRate(1);
+
+		// nothing is recorded before the recording
+		cache.put("0", "0");
+
+		Recording recording = new Recording();
+		try {
+			recording.enable(FlightRecorderEvents.AccessEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(FlightRecorderEvents.PruneEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(FlightRecorderEvents.SweepEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(FlightRecorderEvents.FileLoadEvent.class).withThreshold(Duration.ZERO);
+			recording.start();
+
+			cache.put("1", "1");
+			cache.put("2", "2");
+			cache.get("1");
+			cache.get("3");
+			cache.prune();
+			cache.sweepExpired();
+			fileCache.getFileBytes(file);
+			fileCache.getFileBytes(file);
+
+			recording.stop();
+			recording.dump(dump.toPath());
+		}
+		finally {
+			recording.close();
+			CacheEvents.setAccessSampleRate(100);
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+		Map<String, Integer> counts = count(events);
+		assertEquals(7, count(counts, "CacheAccess"));		// 2 puts and 2 gets, 2 gets and a put in file cache
+		assertEquals(2, count(counts, "CachePrune"));		// full put and explicit prune
+		assertEquals(1, count(counts, "CacheSweep"));
+		assertEquals(1, count(counts, "FileLoad"));
+		assertEquals(0, count(counts, "CacheLockWait"));	// not enabled
+
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().endsWith("FileLoad")) {
+				assertEquals(10, event.getInt("bytes"));
+				assertEquals(file.getPath(), event.getString("path"));
+				assertTrue(event.getBoolean("cached"));
+			}
+		}
+	}
+
+	@Test
+	public void testWithoutFlightRecorder() throws Exception {
+		ClassLoader loader = new NoFlightRecorderClassLoader(getClass().getClassLoader());
+
+		Class<?> events = loader.loadClass(CacheEvents.class.getName());
+		Method available = events.getDeclaredMethod("isAvailable");
+		available.setAccessible(true);
+		assertEquals(Boolean.FALSE, available.invoke(null));
+
+		Class<?> lruClass = loader.loadClass(LRUCache.class.getName());
+		Object lru = lruClass.getConstructor(int.class).newInstance(Integer.valueOf(2));
+		Method put = lruClass.getMethod("put", Object.class, Object.class);
+		Method get = lruClass.getMethod("get", Object.class);
+		put.invoke(lru, "1", "1");
+		put.invoke(lru, "2", "2");
+		put.invoke(lru, "3", "3");		// prune
+		assertEquals("3", get.invoke(lru, "3"));
+		assertNull(get.invoke(lru, "1"));
+		lruClass.getMethod("sweepExpired").invoke(lru);
+
+		File file = File.createTempFile("cache", ".txt");
+		file.deleteOnExit();
+		FileUtil.writeBytes(file, new byte[10]);
+		Class<?> fileCacheClass = loader.loadClass(FileLFUCache.class.getName());
+		Object fileCache = fileCacheClass.getConstructor(int.class).newInstance(Integer.valueOf(100));
+		byte[] bytes = (byte[]) fileCacheClass.getMethod("getFileBytes", File.class).invoke(fileCache, file);
+		assertEquals(10, bytes.length);
+
+		assertTrue(CacheEvents.AVAILABLE);
+	}
+}
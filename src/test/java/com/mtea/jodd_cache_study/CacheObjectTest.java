@@ -0,0 +1,93 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+public class CacheObjectTest {
+
+	@Test
+	public void testLayouts() {
+		FIFOCache<String, String> fifo = new FIFOCache<String, String>(3);
+		fifo.put("1", "1");
+		fifo.put("2", "2", 100);
+		assertEquals(AbstractCacheMap.CacheObject.class, fifo.cacheMap.get("1").getClass());
+		assertEquals(AbstractCacheMap.TimedCacheObject.class, fifo.cacheMap.get("2").getClass());
+
+		LFUCache<String, String> lfu = new LFUCache<String, String>(3);
+		lfu.put("1", "1");
+		lfu.put("2", "2", 100);
+		assertEquals(AbstractCacheMap.CountedCacheObject.class, lfu.cacheMap.get("1").getClass());
+		assertEquals(AbstractCacheMap.TimedCountedCacheObject.class, lfu.cacheMap.get("2").getClass());
+
+		lfu.get("1");
+		lfu.get("2");
+		lfu.get("2");
+		assertEquals(1, lfu.cacheMap.get("1").getAccessCount());
+		assertEquals(2, lfu.cacheMap.get("2").getAccessCount());
+		assertEquals(0, fifo.cacheMap.get("1").getAccessCount());
+	}
+
+	@Test
+	public void testDefaultTimeout() {
+		LRUCache<String, String> lru = new LRUCache<String, String>(3, 1000);
+		lru.put("1", "1");
+		lru.put("2", "2", 0);
+		assertEquals(1000, lru.cacheMap.get("1").getTtl());
+		assertEquals(AbstractCacheMap.CacheObject.class, lru.cacheMap.get("2").getClass());
+	}
+
+	// ---------------------------------------------------------------- layout sizes
+
+	/**
+	 * Measures per-object heap size of each layout with the thread allocation counter.
+	 */
+	@Test
+	public void testLayoutSizes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ((bean instanceof com.sun.management.ThreadMXBean) == false) {
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (threads.isThreadAllocatedMemorySupported() == false || threads.isThreadAllocatedMemoryEnabled() == false) {
+			return;
+		}
+
+		long plain = 0, counted = 0, timed = 0, timedCounted = 0;
+		for (int round = 0; round < 3; round++) {		// 第一轮用于预热
+			plain = measure(threads, 0);
+			counted = measure(threads, 1);
+			timed = measure(threads, 2);
+			timedCounted = measure(threads, 3);
+		}
+
+		assertTrue(plain < counted);
+		assertTrue(counted < timed);
+		assertTrue(timed < timedCounted);
+		assertTrue(timedCounted <= 48);
+	}
+
+	private static final int COUNT = 100000;
+
+	private long measure(com.sun.management.ThreadMXBean threads, int layout) {
+		Object[] objects = new Object[COUNT];
+		Object value = "value";
+		long threadId = Thread.currentThread().getId();
+		long start = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < COUNT; i++) {
+			switch (layout) {
+				case 0: objects[i] = new AbstractCacheMap.CacheObject<Object>(value); break;
+				case 1: objects[i] = new AbstractCacheMap.CountedCacheObject<Object>(value); break;
+				case 2: objects[i] = new AbstractCacheMap.TimedCacheObject<Object>(value, 100); break;
+				default: objects[i] = new AbstractCacheMap.TimedCountedCacheObject<Object>(value, 100);
+			}
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - start;
+		assertNotNull(objects[COUNT - 1]);
+		return Math.round((double) allocated / COUNT);
+	}
+}
@@ -0,0 +1,105 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.io.FileUtil;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class CacheRegistryTest {
+
+	@Test
+	public void testStatistics() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(2, 10);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		cache.get("1");
+		cache.get("2");
+		cache.get("3");
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2.0 / 3, cache.getHitRatio(), 0.0001);
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(0, cache.getExpirationCount());
+
+		cache.remove("2");
+		assertEquals(1, cache.getEvictionCount());
+
+		cache.resetStatistics();
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getHitRatio(), 0);
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		LFUCache<String, String> cache = new LFUCache<String, String>(10);
+		CacheRegistry.register("users", cache);
+		try {
+			CacheRegistry.register("users", cache);
+			fail();
+		}
+		catch (IllegalArgumentException ignore) {
+		}
+
+		for (int i = 0; i < 5; i++) {
+			cache.put(String.valueOf(i), "v");
+		}
+		cache.get("1");
+		cache.get("x");
+
+		ObjectName name = CacheRegistry.objectName("users");
+		assertTrue(server.isRegistered(name));
+		assertEquals(5, server.getAttribute(name, "Size"));
+		assertEquals(10, server.getAttribute(name, "CacheSize"));
+		assertEquals(0.5, (Double) server.getAttribute(name, "HitRatio"), 0.0001);
+		assertEquals(LFUCache.class.getName(), server.getAttribute(name, "Type"));
+
+		// resize
+		server.setAttribute(name, new Attribute("CacheSize", Integer.valueOf(3)));
+		assertEquals(3, cache.getCacheSize());
+		assertTrue(cache.size() <= 3);
+		assertEquals(Long.valueOf(5 - cache.size()), server.getAttribute(name, "EvictionCount"));
+
+		server.invoke(name, "clear", null, null);
+		assertEquals(0, cache.size());
+
+		assertTrue(CacheRegistry.getCaches().containsKey("users"));
+		assertSame(CacheRegistry.lookup("users"), CacheRegistry.getCaches().get("users"));
+		assertTrue(CacheRegistry.unregister("users"));
+		assertFalse(CacheRegistry.unregister("users"));
+		assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	public void testFileCache() throws Exception {
+		File file = File.createTempFile("registry", ".txt");
+		file.deleteOnExit();
+		FileUtil.writeBytes(file, new byte[10]);
+
+		FileLFUCache cache = new FileLFUCache(100);
+		CacheMXBean bean = CacheRegistry.register("files", cache);
+		try {
+			cache.getFileBytes(file);
+			cache.getFileBytes(file);
+			assertEquals(1, bean.getSize());
+			assertEquals(10, bean.getUsedSize());
+			assertEquals(100, bean.getCacheSize());
+			assertEquals(1, bean.getHitCount());
+
+			bean.setCacheSize(5);
+			assertEquals(0, bean.getUsedSize());
+			assertEquals(1, bean.getEvictionCount());
+		}
+		finally {
+			CacheRegistry.unregister("files");
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.io.FileUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CacheSimulatorTest {
+
+	private static CacheSimulator.Result find(List<CacheSimulator.Result> results, String policy, int size) {
+		for (CacheSimulator.Result result : results) {
+			if (result.policy.equals(policy) && result.cacheSize == size) {
+				return result;
+			}
+		}
+		throw new AssertionError(policy + size);
+	}
+
+	@Test
+	public void testPolicies() throws Exception {
+		CacheSimulator simulator = new CacheSimulator().addDefaultPolicies();
+		simulator.setThreads(2);
+
+		// loop bigger than the cache: LRU and FIFO never hit
+		AccessTrace loop = AccessTrace.loop(120, 1200, 10);
+		List<CacheSimulator.Result> results = simulator.run(loop, 100, 200);
+		assertEquals(14, results.size());
+		assertEquals(0, find(results, "LRU", 100).hits);
+		assertEquals(0, find(results, "FIFO", 100).hits);
+		assertTrue(find(results, "SAMPLED-LFU", 100).hits > 0);		// random victims break the loop
+		assertEquals(1080, find(results, "LRU", 200).hits);
+		assertEquals(0.9, find(results, "LRU", 200).getByteHitRatio(), 0.0001);
+		assertTrue(find(results, "LRU", 100).evictions > 1000);
+
+		// zipf: bigger cache, better hit ratio
+		AccessTrace zipf = AccessTrace.zipf(1000, 20000, 0.9, 100, 1);
+		results = simulator.run(zipf, 10, 100, 500);
+		for (String policy : new String[] {"LRU", "LFU", "ARC", "2Q", "CLOCK"}) {
+			assertTrue(policy, find(results, policy, 10).getHitRatio() < find(results, policy, 100).getHitRatio());
+			assertTrue(policy, find(results, policy, 100).getHitRatio() < find(results, policy, 500).getHitRatio());
+		}
+
+		String csv;
+		StringBuilder sb = new StringBuilder();
+		CacheSimulator.writeCsv(results, sb);
+		csv = sb.toString();
+		assertTrue(csv.startsWith("policy,cacheSize,requests,hits,hitRatio,byteHitRatio,evictions,putCostNanos\n"));
+		assertEquals(1 + 21, csv.split("\n").length);
+		assertTrue(CacheSimulator.toTable(results).contains("ARC"));
+	}
+
+	@Test
+	public void testMeasureCost() {
+		CacheSimulator simulator = new CacheSimulator().addDefaultPolicies();
+		AccessTrace loop = AccessTrace.loop(120, 1200, 10);
+		List<CacheSimulator.Result> results = simulator.run(loop, 100);
+		assertTrue(find(results, "LRU", 100).getPutCost() > 0);
+
+		simulator.setMeasureCost(false);
+		results = simulator.run(loop, 100);
+		assertEquals(0, find(results, "LRU", 100).putNanos);
+		assertEquals(0, find(results, "LRU", 100).hits);
+	}
+
+	@Test
+	public void testSortByTime() {
+		// two per-thread runs, with equal times
+		long[] times = new long[] {1, 4, 4, 9, 2, 4, 5, 0};
+		long[] keys = new long[] {10, 40, 41, 90, 20, 42, 50, 0};
+		AccessTrace.sortByTime(times, keys, 7);
+		assertArrayEquals(new long[] {1, 2, 4, 4, 4, 5, 9, 0}, times);
+		assertArrayEquals(new long[] {10, 20, 40, 41, 42, 50, 90, 0}, keys);
+	}
+
+	@Test
+	public void testScanResistance() {
+		AccessTrace trace = AccessTrace.concat("zipf+scan",
+				AccessTrace.zipf(200, 5000, 1.0, 1, 3),
+				AccessTrace.scan(100000, 2000, 1),
+				AccessTrace.zipf(200, 5000, 1.0, 1, 4));
+		CacheSimulator.Result lru = CacheSimulator.simulate("LRU", new LRUCache<Long, Integer>(50), trace);
+		CacheSimulator.Result twoQueue = CacheSimulator.simulate("2Q", new TwoQueueCache<Long, Integer>(50), trace);
+		assertTrue(twoQueue.hits > lru.hits);
+	}
+
+	@Test
+	public void testTraceFiles() throws Exception {
+		File text = File.createTempFile("trace", ".txt");
+		File binary = File.createTempFile("trace", ".bin");
+		try {
+			FileUtil.writeString(text, "# key size\n1 100\n2 200\n\nuser:1\n1 100\n");
+			AccessTrace trace = AccessTrace.readText(text);
+			assertEquals(4, trace.length());
+			assertEquals(2, trace.getKey(1));
+			assertEquals(200, trace.getSize(1));
+			assertEquals(1, trace.getSize(2));
+
+			trace.writeBinary(binary);
+			AccessTrace read = AccessTrace.readBinary(binary);
+			assertEquals(4, read.length());
+			assertEquals(trace.getKey(2), read.getKey(2));
+
+			CacheSimulator.Result result = CacheSimulator.simulate("LRU", new LRUCache<Long, Integer>(10), read);
+			assertEquals(1, result.hits);
+			assertEquals(100.0 / 401, result.getByteHitRatio(), 0.0001);
+		}
+		finally {
+			text.delete();
+			binary.delete();
+		}
+	}
+}
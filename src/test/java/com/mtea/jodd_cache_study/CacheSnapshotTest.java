@@ -0,0 +1,177 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.SystemUtil;
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class CacheSnapshotTest {
+
+	private File tempFolder = new File(SystemUtil.getTempDir());
+
+	private File file(String fileName) {
+		File file = new File(tempFolder, fileName);
+		file.delete();
+		new File(file.getPath() + ".old").delete();
+		file.deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		CacheSnapshot<String, String> snapshot = new CacheSnapshot<String, String>(new StringCodec(), new StringCodec());
+		File file = file("cache.snapshot");
+
+		LRUCache<String, String> cache = new LRUCache<String, String>(3);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3", 50);
+		cache.get("1");                // order: 2, 3, 1
+		cache.get("1");
+
+		assertEquals(3, snapshot.save(cache, file));
+
+		LRUCache<String, String> restored = new LRUCache<String, String>(3);
+		assertEquals(3, snapshot.load(restored, file));
+
+		Iterator<String> values = restored.iterator();
+		assertEquals("2", values.next());
+		assertEquals("3", values.next());
+		assertEquals("1", values.next());
+		assertFalse(values.hasNext());
+
+		ThreadUtil.sleep(100);
+		assertNull(restored.get("3"));  // remaining ttl is kept
+		assertNotNull(restored.get("2"));
+	}
+
+	@Test
+	public void testLoadIntoSmallerCache() throws IOException {
+		CacheSnapshot<String, String> snapshot = new CacheSnapshot<String, String>(new StringCodec(), new StringCodec());
+		File file = file("cache2.snapshot");
+
+		FIFOCache<String, String> cache = new FIFOCache<String, String>(3);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		snapshot.save(cache, file);
+
+		FIFOCache<String, String> restored = new FIFOCache<String, String>(2);
+		assertEquals(2, snapshot.load(restored, file));
+		assertEquals(2, restored.size());
+		assertNull(restored.get("1"));		// the eldest one is dropped
+		assertEquals("2", restored.get("2"));
+		assertEquals("3", restored.get("3"));
+
+		// room only for one more
+		LRUCache<String, String> partial = new LRUCache<String, String>(2);
+		partial.put("0", "0");
+		assertEquals(1, snapshot.load(partial, file));
+		assertEquals("0", partial.get("0"));
+		assertEquals("3", partial.get("3"));
+		assertNull(partial.get("2"));
+	}
+
+	@Test
+	public void testJournal() throws IOException {
+		CacheSnapshot<String, String> snapshot = new CacheSnapshot<String, String>(new StringCodec(), new StringCodec());
+		File file = file("cache3.snapshot");
+		File journalFile = file("cache3.journal");
+
+		LFUCache<String, String> cache = new LFUCache<String, String>(10);
+		CacheJournal<String, String> journal = new CacheJournal<String, String>(journalFile, new StringCodec(), new StringCodec());
+		cache.setJournal(journal);
+
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.get("2");
+		cache.get("2");
+		snapshot.save(cache, file);
+		assertFalse(new File(journalFile.getPath() + ".old").exists());
+
+		cache.put("3", "3");
+		cache.remove("1");
+		journal.close();
+
+		LFUCache<String, String> restored = new LFUCache<String, String>(10);
+		snapshot.load(restored, file);
+		assertEquals(2, restored.size());
+		assertEquals(2, restored.cacheMap.get("2").getAccessCount());
+
+		CacheJournal<String, String> journal2 = new CacheJournal<String, String>(journalFile, new StringCodec(), new StringCodec());
+		assertEquals(2, journal2.replay(restored));
+		journal2.close();
+
+		assertNull(restored.get("1"));
+		assertEquals("2", restored.get("2"));
+		assertEquals("3", restored.get("3"));
+	}
+
+	@Test
+	public void testJournalExpiration() throws IOException {
+		File journalFile = file("cache4.journal");
+		CacheJournal<String, String> journal = new CacheJournal<String, String>(journalFile, new StringCodec(), new StringCodec());
+		LRUCache<String, String> cache = new LRUCache<String, String>(10);
+		cache.setJournal(journal);
+
+		long expireAt = System.currentTimeMillis() + 30000;
+		cache.putExpiring("1", "1", 60000, expireAt);		// half of ttl already passed
+		cache.put("2", "2");
+		cache.putExpiring("3", "3", 10, System.currentTimeMillis() - 1);
+		journal.close();
+
+		LRUCache<String, String> restored = new LRUCache<String, String>(10);
+		restored.put("3", "old");
+		CacheJournal<String, String> journal2 = new CacheJournal<String, String>(journalFile, new StringCodec(), new StringCodec());
+		assertEquals(3, journal2.replay(restored));
+		journal2.close();
+
+		AbstractCacheMap.CacheObject<String> co = restored.cacheMap.get("1");
+		assertEquals(60000, co.getTtl());
+		assertEquals(expireAt, co.getLastAccess() + co.getTtl());
+		assertEquals("2", restored.get("2"));
+		assertNull(restored.get("3"));				// expired, older object removed too
+		assertEquals(2, restored.size());
+	}
+
+	@Test
+	public void testJournalFailures() throws IOException {
+		File journalFile = file("cache5.journal");
+		CacheJournal<String, String> journal = new CacheJournal<String, String>(journalFile, new StringCodec(), new CacheCodec<String>() {
+			public byte[] encode(String object) throws IOException {
+				if (object.equals("bad")) {
+					throw new IOException("bad");
+				}
+				return object.getBytes("UTF-8");
+			}
+
+			public String decode(byte[] bytes) throws IOException {
+				return new String(bytes, "UTF-8");
+			}
+		}, 16);
+		LRUCache<String, String> cache = new LRUCache<String, String>(10);
+		cache.setJournal(journal);
+
+		// encoding fails before the cache is changed
+		cache.put("1", "1");
+		try {
+			cache.put("1", "bad");
+			fail();
+		} catch (IllegalStateException ignore) {
+		}
+		assertEquals("1", cache.get("1"));
+		assertNull(journal.getLastError());
+
+		// write fails after the cache is changed, put doesn't fail
+		journal.close();
+		cache.put("2", "22222222222222222222");
+		assertEquals("22222222222222222222", cache.get("2"));
+		assertNotNull(journal.getLastError());
+	}
+}
@@ -0,0 +1,149 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentIterationTest {
+
+	@Test
+	public void testIterators() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(10);
+		cache.put("1", "a");
+		cache.put("2", "b");
+		cache.put("3", "c", 10);
+		ThreadUtil.sleep(50);
+
+		Set<String> keys = new HashSet<String>();
+		Iterator<String> keyIterator = cache.keyIterator();
+		while (keyIterator.hasNext()) {
+			keys.add(keyIterator.next());
+			cache.put("x" + keys.size(), "new");		// no ConcurrentModificationException
+		}
+		assertEquals(2, keys.size());
+		assertTrue(keys.contains("1") && keys.contains("2"));
+
+		Iterator<Map.Entry<String, String>> entries = cache.entryIterator();
+		int count = 0;
+		while (entries.hasNext()) {
+			Map.Entry<String, String> entry = entries.next();
+			assertNotNull(entry.getValue());
+			count++;
+		}
+		assertEquals(4, count);
+
+		Iterator<String> values = cache.iterator();
+		while (values.hasNext()) {
+			if (values.next().equals("new")) {
+				values.remove();
+			}
+		}
+		assertNull(cache.get("x1"));
+		assertEquals("a", cache.get("1"));
+		assertNull(cache.get("3"));				// expired, removed on get
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testParallelStream() {
+		LFUCache<Integer, Integer> cache = new LFUCache<Integer, Integer>(0);
+		for (int i = 0; i < 10000; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		long sum = 0;
+		Iterator<Map.Entry<Integer, Integer>> iterator = cache.entryIterator();
+		while (iterator.hasNext()) {
+			sum += iterator.next().getValue().intValue();
+		}
+		long parallelSum = 0;
+		for (Integer value : cache.stream().parallel().map(new java.util.function.Function<Map.Entry<Integer, Integer>, Integer>() {
+			public Integer apply(Map.Entry<Integer, Integer> entry) {
+				return entry.getValue();
+			}
+		}).collect(Collectors.<Integer>toList())) {
+			parallelSum += value.intValue();
+		}
+		assertEquals(49995000L, sum);
+		assertEquals(sum, parallelSum);
+		assertEquals(10000, cache.stream().parallel().count());
+	}
+
+	@Test
+	public void testChunkedTraversal() {
+		LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(0);
+		for (int i = 0; i < 2000; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+
+		// 后面的块还没有复制, 删除的对象不会再返回
+		Iterator<Integer> values = cache.iterator();
+		assertEquals(Integer.valueOf(0), values.next());
+		cache.remove(Integer.valueOf(1999));
+		int count = 1;
+		while (values.hasNext()) {
+			assertFalse(values.next().intValue() == 1999);
+			count++;
+		}
+		assertEquals(1999, count);
+
+		Spliterator<Map.Entry<Integer, Integer>> spliterator = cache.spliterator();
+		Spliterator<Map.Entry<Integer, Integer>> prefix = spliterator.trySplit();
+		assertNotNull(prefix);
+		assertEquals(2000, prefix.estimateSize() + spliterator.estimateSize());
+		final Set<Integer> keys = new HashSet<Integer>();
+		Consumer<Map.Entry<Integer, Integer>> action = new Consumer<Map.Entry<Integer, Integer>>() {
+			public void accept(Map.Entry<Integer, Integer> entry) {
+				assertTrue(keys.add(entry.getKey()));
+			}
+		};
+		prefix.forEachRemaining(action);
+		spliterator.forEachRemaining(action);
+		assertEquals(1999, keys.size());
+	}
+
+	@Test
+	public void testIterateWhileWriting() throws InterruptedException {
+		final LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(1000);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				int i = 0;
+				while (running.get()) {
+					cache.put(Integer.valueOf(i % 5000), Integer.valueOf(i));
+					cache.get(Integer.valueOf((i * 7) % 5000));
+					i++;
+				}
+			}
+		};
+		writer.start();
+		try {
+			for (int round = 0; round < 200; round++) {
+				Iterator<Integer> values = cache.iterator();
+				while (values.hasNext()) {
+					assertNotNull(values.next());
+				}
+				cache.stream().parallel().count();
+			}
+		}
+		catch (Throwable t) {
+			failure.set(t);
+		}
+		running.set(false);
+		writer.join();
+		assertNull(failure.get());
+	}
+}
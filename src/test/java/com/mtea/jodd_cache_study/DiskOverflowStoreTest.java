@@ -0,0 +1,115 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.SystemUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class DiskOverflowStoreTest {
+
+	private DiskOverflowStore<String, String> store;
+
+	@Before
+	public void setUp() throws IOException {
+		File folder = new File(SystemUtil.getTempDir(), "overflow-test");
+		store = new DiskOverflowStore<String, String>(folder, new StringCodec(), 64, 16);
+	}
+
+	@After
+	public void tearDown() {
+		store.close();
+	}
+
+	@Test
+	public void testLRUOverflow() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(2);
+		cache.setOverflowStore(store);
+
+		cache.put("1", "one");
+		cache.put("2", "two");
+		cache.put("3", "three");        // 1 goes to disk
+		assertEquals(2, cache.size());
+		assertEquals(1, store.size());
+
+		assertEquals("one", cache.get("1"));    // promoted, 2 goes to disk
+		assertEquals(2, cache.size());
+		assertEquals(1, store.size());
+		assertEquals("two", cache.get("2"));
+
+		cache.remove("3");
+		cache.remove("1");
+		assertNull(cache.get("1"));
+		assertNull(cache.get("3"));
+	}
+
+	@Test
+	public void testLFUOverflow() {
+		LFUCache<String, String> cache = new LFUCache<String, String>(2);
+		cache.setOverflowStore(store);
+
+		cache.put("1", "one");
+		cache.get("1");
+		cache.put("2", "two");
+		cache.put("3", "three");        // 2 goes to disk
+		assertEquals(1, store.size());
+		assertEquals("two", cache.get("2"));
+	}
+
+	@Test
+	public void testByteCapAndCompaction() {
+		for (int i = 0; i < 10; i++) {
+			store.put("k" + i, "123456", 0, 0);
+		}
+		// 2 records per segment, 4 segments at most
+		assertEquals(4, store.getSegmentCount());
+		assertEquals(64, store.getTotalBytes());
+		assertEquals(8, store.size());
+		assertNull(store.take("k0"));
+		assertEquals("123456", store.take("k9"));
+
+		store.setCompactionThreshold(0.4f);
+		store.remove("k2");
+		store.remove("k4");
+		store.compact();
+		assertEquals(5, store.size());
+		assertEquals(3, store.getSegmentCount());
+		assertEquals(3, new File(SystemUtil.getTempDir(), "overflow-test").list().length);	// old files deleted
+		assertEquals("123456", store.take("k3"));
+		assertEquals("123456", store.take("k5"));
+		assertEquals("123456", store.take("k6"));
+	}
+
+	@Test
+	public void testPromoteKeepsRemainingTtl() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(1);
+		cache.setOverflowStore(store);
+
+		cache.put("1", "one", 60000);
+		long expireAt = System.currentTimeMillis() + 30000;
+		cache.cacheMap.get("1").setLastAccess(expireAt - 60000);		// half of ttl passed
+		cache.put("2", "two");          // 1 goes to disk
+
+		assertEquals("one", cache.get("1"));
+		AbstractCacheMap.CacheObject<String> co = cache.cacheMap.get("1");
+		assertEquals(60000, co.getTtl());
+		assertEquals(expireAt, co.getLastAccess() + co.getTtl());
+
+		// expired on the disk, not promoted
+		store.put("3", "three", 60000, System.currentTimeMillis() - 1);
+		assertNull(cache.get("3"));
+		assertEquals(1, store.size());          // only 2, evicted by the promotion
+	}
+
+	@Test
+	public void testExpired() {
+		store.put("1", "one", 10, System.currentTimeMillis() - 1);
+		assertNull(store.take("1"));
+		assertEquals(0, store.size());
+	}
+}
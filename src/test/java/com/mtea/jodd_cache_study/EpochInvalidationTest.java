@@ -0,0 +1,264 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class EpochInvalidationTest {
+
+	/**
+	 * Namespace is the key prefix, up to the colon.
+	 */
+	static class PrefixLRUCache extends LRUCache<String, String> {
+		PrefixLRUCache(int cacheSize) {
+			super(cacheSize);
+		}
+
+		@Override
+		protected Object namespaceOf(String key) {
+			int ndx = key.indexOf(':');
+			return ndx == -1 ? null : key.substring(0, ndx);
+		}
+	}
+
+	/**
+	 * Collects reclaim tasks, so test decides when they run.
+	 */
+	static class QueueExecutor implements Executor {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			while (tasks.isEmpty() == false) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+
+	@Test
+	public void testLazyClear() {
+		RemovalListenerTest.Recorder recorder = new RemovalListenerTest.Recorder();
+		QueueExecutor reclaimer = new QueueExecutor();
+		LRUCache<String, String> cache = new LRUCache<String, String>(10);
+		cache.setEpochInvalidation(true, reclaimer);
+		cache.setRemovalListener(recorder, RemovalListenerTest.SAME_THREAD);
+
+		cache.put("1", "a");
+		cache.put("2", "b");
+		cache.clear();
+		assertEquals(0, cache.size());			// not counted, though not yet reclaimed
+		assertTrue(cache.isEmpty());
+		assertFalse(cache.iterator().hasNext());
+		assertEquals(1, reclaimer.tasks.size());
+
+		cache.put("3", "c");
+		assertEquals("c", cache.get("3"));
+		reclaimer.runAll();
+		assertEquals(1, cache.size());
+		assertNull(cache.get("1"));
+		assertEquals("[1=a:EXPLICIT, 2=b:EXPLICIT]", recorder.removals.toString());
+	}
+
+	@Test
+	public void testBackgroundReclaim() {
+		FIFOCache<Integer, Integer> cache = new FIFOCache<Integer, Integer>(0);
+		cache.setEpochInvalidation(true, RemovalListenerTest.SAME_THREAD);
+		for (int i = 0; i < 10000; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		cache.clear();
+		assertTrue(cache.isEmpty());
+	}
+
+	@Test
+	public void testPruneOnlyWhileStale() {
+		QueueExecutor reclaimer = new QueueExecutor();
+		LRUCache<String, String> cache = new LRUCache<String, String>(2);
+		cache.setEpochInvalidation(true, reclaimer);
+		assertFalse(cache.isPruneExpiredActive());
+
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.clear();
+		assertTrue(cache.isPruneExpiredActive());	// stale objects wait for reclaim
+
+		cache.put("3", "3");						// full, stale objects are pruned first
+		assertEquals(1, cache.size());
+		reclaimer.runAll();
+		assertFalse(cache.isPruneExpiredActive());
+
+		cache.put("4", "4");
+		cache.put("5", "5");
+		assertEquals(2, cache.size());
+		assertNull(cache.get("3"));
+	}
+
+	@Test
+	public void testNamespaces() {
+		PrefixLRUCache cache = new PrefixLRUCache(3);
+		cache.setEpochInvalidation(true, new QueueExecutor());
+		cache.put("user:1", "u1");
+		cache.put("user:2", "u2");
+		cache.put("page:1", "p1");
+
+		cache.invalidateNamespace("user");
+		cache.invalidateNamespace("none");
+		assertNull(cache.get("user:1"));
+		assertEquals("p1", cache.get("page:1"));
+
+		// stale objects are pruned first
+		cache.put("user:3", "u3");
+		cache.put("page:2", "p2");
+		assertEquals("p1", cache.get("page:1"));
+		assertEquals("u3", cache.get("user:3"));
+		assertEquals("p2", cache.get("page:2"));
+		assertEquals(3, cache.size());
+
+		cache.clear();
+		assertNull(cache.get("page:1"));
+	}
+
+	@Test
+	public void testNamespaceSize() {
+		QueueExecutor reclaimer = new QueueExecutor();
+		PrefixLRUCache cache = new PrefixLRUCache(0);
+		cache.setEpochInvalidation(true, reclaimer);
+		cache.put("user:1", "u1");
+		cache.put("user:2", "u2");
+		cache.put("page:1", "p1");
+		cache.put("1", "1");
+
+		cache.invalidateNamespace("user");
+		assertEquals(2, cache.size());
+		cache.put("user:1", "u11");				// replaces stale object
+		cache.put("user:3", "u3");
+		assertEquals(4, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		cache.put("user:4", "u4");
+		cache.invalidateNamespace("user");			// objects of the namespace are stale already
+		assertEquals(0, cache.size());
+		cache.put("page:2", "p2");
+		assertEquals(1, cache.size());
+
+		reclaimer.runAll();
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.cacheMap.size());
+	}
+
+	@Test
+	public void testNamespaceOverflow() throws Exception {
+		File directory = new File(System.getProperty("java.io.tmpdir"), "overflow-epoch-test");
+		DiskOverflowStore<String, String> store = new DiskOverflowStore<String, String>(directory, new StringCodec(), 1024, 256);
+		try {
+			PrefixLRUCache cache = new PrefixLRUCache(1);
+			cache.setEpochInvalidation(true, new QueueExecutor());
+			cache.setOverflowStore(store);
+			cache.put("user:1", "u1");
+			cache.put("page:1", "p1");			// evicts user:1 to the disk
+			assertEquals(1, store.size());
+
+			cache.invalidateNamespace("user");
+			assertNull(cache.get("user:1"));
+			assertEquals(0, store.size());
+			assertEquals("p1", cache.get("page:1"));
+		}
+		finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void testNamespaceJournal() throws Exception {
+		File file = new File(System.getProperty("java.io.tmpdir"), "epoch-test.journal");
+		file.delete();
+		CacheJournal<String, String> journal = new CacheJournal<String, String>(file, new StringCodec(), new StringCodec());
+		PrefixLRUCache cache = new PrefixLRUCache(0);
+		cache.setEpochInvalidation(true, new QueueExecutor());
+		cache.setJournal(journal);
+		cache.put("user:1", "u1");
+		cache.put("page:1", "p1");
+		cache.invalidateNamespace("user");
+		cache.put("user:2", "u2");
+		journal.close();
+
+		PrefixLRUCache restored = new PrefixLRUCache(0);
+		CacheJournal<String, String> journal2 = new CacheJournal<String, String>(file, new StringCodec(), new StringCodec());
+		assertEquals(4, journal2.replay(restored));
+		journal2.close();
+		file.delete();
+		assertNull(restored.get("user:1"));
+		assertEquals("p1", restored.get("page:1"));
+		assertEquals("u2", restored.get("user:2"));
+		assertEquals(2, restored.size());
+	}
+
+	@Test
+	public void testPolicies() {
+		CLOCKCache<String, String> clock = new CLOCKCache<String, String>(2);
+		clock.setEpochInvalidation(true, new QueueExecutor());
+		clock.put("1", "1");
+		clock.put("2", "2");
+		clock.get("1");
+		clock.get("2");
+		clock.clear();
+		clock.put("3", "3");
+		clock.put("4", "4");
+		assertEquals("3", clock.get("3"));
+		assertEquals("4", clock.get("4"));
+
+		ARCCache<String, String> arc = new ARCCache<String, String>(2);
+		arc.setEpochInvalidation(true, new QueueExecutor());
+		arc.put("1", "1");
+		arc.get("1");
+		arc.clear();
+		arc.reclaim();
+		assertTrue(arc.isEmpty());
+		assertTrue(arc.t1.isEmpty() && arc.t2.isEmpty());
+
+		arc.put("2", "2");
+		arc.get("2");
+		arc.put("3", "3");
+		arc.put("4", "4");						// 3 goes to the ghost list
+		assertFalse(arc.b1.isEmpty());
+		arc.clear();
+		assertTrue(arc.b1.isEmpty() && arc.b2.isEmpty());
+		assertEquals(0, arc.getTargetRecencySize());
+	}
+
+	@Test
+	public void testWeakValues() {
+		LRUCache<Integer, Object> cache = new LRUCache<Integer, Object>(0);
+		cache.setEpochInvalidation(true);
+		cache.setValueStrength(ValueStrength.WEAK);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(Integer.valueOf(i), new Object());
+		}
+		assertEquals(1000, cache.size());
+
+		for (int i = 0; i < 50 && cache.size() > 0; i++) {
+			System.gc();
+			ThreadUtil.sleep(10);
+			cache.prune();				// references are enqueued asynchronously
+		}
+		assertEquals(0, cache.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNotEmpty() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(2);
+		cache.put("1", "1");
+		cache.setEpochInvalidation(true);
+	}
+}
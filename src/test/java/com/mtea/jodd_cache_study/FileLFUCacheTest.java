@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
 
@@ -73,4 +74,68 @@ public class FileLFUCacheTest {
 		assertEquals(2, cache.getCachedFilesCount());
 		assertEquals(16, cache.getUsedSize());
 	}
+
+	@Test
+	public void testLatencyTracking() throws IOException {
+		FileLFUCache cache = new FileLFUCache(25);
+		cache.setLatencyTracking(true);
+		File a = file("a.txt", 10);
+
+		cache.getFileBytes(a);
+		cache.getFileBytes(a);
+		cache.getFileBytes(a);
+
+		assertEquals(2, cache.getHitLatency().snapshot().getCount());
+		assertEquals(1, cache.getMissLatency().snapshot().getCount());
+		assertEquals(1, cache.getCacheLatencyStats().getGetMiss().snapshot().getCount());
+		assertEquals(1, cache.getCacheLatencyStats().getPut().snapshot().getCount());
+
+		cache.setLatencyTracking(false);
+		cache.getFileBytes(a);
+		assertEquals(2, cache.getHitLatency().snapshot().getCount());
+	}
+
+	@Test
+	public void testConcurrentReadsAndResize() throws Exception {
+		final FileLFUCache cache = new FileLFUCache(500, 100);
+		final File[] files = new File[20];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = file("concurrent" + i, 10 + i * 3);
+		}
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 2000; i++) {
+							cache.getFileBytes(files[(i * (id + 1)) % files.length]);
+							if ((id == 0) && (i % 100 == 0)) {
+								cache.setMaxSize(i % 200 == 0 ? 150 : 500);
+							}
+						}
+					}
+					catch (IOException ioex) {
+						throw new IllegalStateException(ioex);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		int total = 0;
+		Iterator<byte[]> iterator = cache.cache.iterator();
+		while (iterator.hasNext()) {
+			total += iterator.next().length;
+		}
+		assertEquals(total, cache.getUsedSize());
+
+		cache.clear();
+		assertEquals(0, cache.getUsedSize());
+	}
 }
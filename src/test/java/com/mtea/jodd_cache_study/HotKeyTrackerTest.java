@@ -0,0 +1,115 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HotKeyTrackerTest {
+
+	@Test
+	public void testSpaceSaving() {
+		HotKeyTracker<Integer> tracker = new HotKeyTracker<Integer>(10, 1);
+		Random random = new Random(1);
+		int hot = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (i % 10 < 3) {
+				tracker.offer(Integer.valueOf(-1));		// 30% of traffic
+				hot++;
+			} else if (i % 10 == 3) {
+				tracker.offer(Integer.valueOf(-2));		// 10%
+			} else {
+				tracker.offer(Integer.valueOf(random.nextInt(100000)));
+			}
+		}
+		assertEquals(100000, tracker.getTotal());
+
+		List<HotKeyTracker.HotKey<Integer>> top = tracker.getTopKeys(2);
+		assertEquals(2, top.size());
+		assertEquals(Integer.valueOf(-1), top.get(0).getKey());
+		assertEquals(Integer.valueOf(-2), top.get(1).getKey());
+
+		// never underestimated, error bounded by total / capacity
+		HotKeyTracker.HotKey<Integer> first = top.get(0);
+		assertTrue(first.getCount() >= hot);
+		assertTrue(first.getCount() - first.getError() <= hot);
+		assertTrue(first.getError() <= 100000 / 10);
+		assertEquals(0.3, first.getShare(), 0.1);
+
+		List<HotKeyTracker.HotKey<Integer>> skewed = tracker.getKeysAbove(0.2);
+		assertEquals(1, skewed.size());
+		assertEquals(Integer.valueOf(-1), skewed.get(0).getKey());
+
+		assertEquals(10, tracker.getTopKeys(100).size());
+		tracker.reset();
+		assertEquals(0, tracker.getTotal());
+		assertTrue(tracker.getTopKeys(5).isEmpty());
+	}
+
+	@Test
+	public void testCacheFeed() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(10);
+		HotKeyTracker<String> tracker = new HotKeyTracker<String>(4, 1);
+		cache.setHotKeyTracker(tracker);
+		cache.put("a", "1");
+		for (int i = 0; i < 50; i++) {
+			cache.get("a");
+			cache.get("b" + (i % 5));
+		}
+		List<HotKeyTracker.HotKey<String>> top = tracker.getTopKeys(1);
+		assertEquals("a", top.get(0).getKey());
+		assertEquals(50, top.get(0).getCount());
+		assertEquals(100, tracker.getTotal());
+		assertTrue(top.get(0).getRate() >= 0);
+
+		CacheMXBean bean = new CacheRegistry.MapCacheBean("test", cache);
+		assertEquals(4, bean.getHotKeys().length);
+		assertTrue(bean.getHotKeys()[0].startsWith("a=50"));
+
+		cache.setHotKeyTracker(null);
+		cache.get("a");
+		assertEquals(100, tracker.getTotal());
+		assertEquals(0, new CacheRegistry.MapCacheBean("test", cache).getHotKeys().length);
+	}
+
+	@Test
+	public void testDefaultSampleRate() {
+		HotKeyTracker<Integer> tracker = new HotKeyTracker<Integer>(10);
+		assertEquals(HotKeyTracker.DEFAULT_SAMPLE_RATE, tracker.sampleRate);
+		for (int i = 0; i < 100000; i++) {
+			tracker.offer(Integer.valueOf(i % 4 == 0 ? -1 : i));
+		}
+		assertEquals(100000, tracker.getTotal(), 10000);		// scaled from samples
+
+		HotKeyTracker.HotKey<Integer> first = tracker.getTopKeys(1).get(0);
+		assertEquals(Integer.valueOf(-1), first.getKey());
+		assertEquals(25000, first.getCount(), 5000);
+		assertEquals(0.25, first.getShare(), 0.1);
+	}
+
+	@Test
+	public void testConcurrentOffers() throws Exception {
+		final HotKeyTracker<Integer> tracker = new HotKeyTracker<Integer>(8, 2);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						tracker.offer(Integer.valueOf(i % 2 == 0 ? 7 : i));
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(tracker.getTotal() > 0);
+		assertEquals(Integer.valueOf(7), tracker.getTopKeys(1).get(0).getKey());
+		assertEquals(0.5, tracker.getTopKeys(1).get(0).getShare(), 0.15);
+	}
+}
@@ -100,4 +100,33 @@ public class LRUCacheTest {
 		assertFalse(cache.isFull());
 	}
 
+	@Test
+	public void testWeakValues() {
+		LRUCache<String, Object> cache = new LRUCache<String, Object>(3);
+		cache.setValueStrength(ValueStrength.WEAK);
+
+		Object strong = new Object();
+		cache.put("1", strong);
+		cache.put("2", new Object());
+		cache.put("3", new Object());
+		assertTrue(cache.isFull());
+
+		for (int i = 0; i < 10 && (cache.get("2") != null || cache.get("3") != null); i++) {
+			System.gc();
+			ThreadUtil.sleep(10);
+		}
+		assertNull(cache.get("2"));
+		assertEquals(3, cache.size());      // cleared, but not yet removed
+		assertFalse(cache.iterator().next() == null);
+
+		int removed = 0;
+		for (int i = 0; i < 10 && removed < 2; i++) {
+			removed += cache.prune();      // references are enqueued asynchronously
+			ThreadUtil.sleep(10);
+		}
+		assertEquals(2, removed);
+		assertEquals(1, cache.size());
+		assertSame(strong, cache.get("1"));
+	}
+
 }
@@ -0,0 +1,81 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		long[] values = new long[] {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+		for (long value : values) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(index < LatencyHistogram.BUCKETS);
+			long high = LatencyHistogram.bucketValue(index);
+			assertTrue(high >= value);
+			assertTrue(high - value <= value / LatencyHistogram.SUB_BUCKETS);
+		}
+		for (int i = 1; i < LatencyHistogram.BUCKETS; i++) {
+			assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketValue(i)));
+			assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketValue(i - 1) + 1));
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		histogram.record(-5);
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1001, snapshot.getCount());
+		assertEquals(1000000, snapshot.getMax());
+		assertEquals(500000, snapshot.getValueAtPercentile(50), 500000 / 8);
+		assertEquals(990000, snapshot.getValueAtPercentile(99), 990000 / 8);
+		assertEquals(1000000, snapshot.getValueAtPercentile(100));
+		assertEquals(0, snapshot.getValueAtPercentile(0));
+		assertTrue(snapshot.toString().contains("p999="));
+
+		// reset
+		assertEquals(1001, histogram.snapshot(true).getCount());
+		snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMax());
+		assertEquals(0, snapshot.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testCacheLatencies() {
+		FIFOCache<String, String> cache = new FIFOCache<String, String>(2);
+		assertNull(cache.getLatencyStats());
+		cache.setLatencyTracking(true);
+
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");		// prunes
+		cache.get("2");
+		cache.get("3");
+		cache.get("4");
+		cache.remove("2");
+		cache.prune();
+
+		CacheLatencyStats stats = cache.getLatencyStats();
+		assertEquals(2, stats.getGetHit().snapshot().getCount());
+		assertEquals(1, stats.getGetMiss().snapshot().getCount());
+		assertEquals(3, stats.getPut().snapshot().getCount());
+		assertEquals(2, stats.getPrune().snapshot().getCount());
+		assertEquals(8, stats.getLockWait().snapshot().getCount());
+		assertEquals(8, stats.getLockHold().snapshot().getCount());
+
+		stats.reset();
+		assertEquals(0, stats.getPut().snapshot().getCount());
+
+		cache.setLatencyTracking(false);
+		cache.get("3");
+		assertNull(cache.getLatencyStats());
+	}
+}
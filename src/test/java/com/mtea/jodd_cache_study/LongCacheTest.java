@@ -0,0 +1,94 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongCacheTest {
+
+	@Test
+	public void testLRU() {
+		LongLRUCache<String> cache = new LongLRUCache<String>(3);
+		cache.put(1, "1");
+		cache.put(2, "2");
+		assertFalse(cache.isFull());
+		cache.put(3, "3");
+		assertTrue(cache.isFull());
+
+		assertNotNull(cache.get(1));
+		assertNotNull(cache.get(2));
+		cache.put(4, "4");
+		assertNull(cache.get(3));
+		assertNotNull(cache.get(1));
+		assertNotNull(cache.get(2));
+		cache.put(3, "3");
+		assertNull(cache.get(4));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testLFU() {
+		LongLFUCache<String> cache = new LongLFUCache<String>(3);
+		cache.put(1, "1");
+		cache.put(2, "2");
+		cache.put(3, "3");
+		cache.get(1);
+		cache.get(1);
+		cache.get(2);
+		cache.put(4, "4");
+		assertNull(cache.get(3));
+		cache.put(5, "5");
+		assertNull(cache.get(4));
+		assertEquals("1", cache.get(1));
+		assertEquals("2", cache.get(2));
+		assertEquals("5", cache.get(5));
+	}
+
+	@Test
+	public void testTimeout() {
+		LongLRUCache<String> cache = new LongLRUCache<String>(3);
+		cache.put(1, "1");
+		cache.put(2, "2", 50);
+		ThreadUtil.sleep(100);
+		assertNull(cache.get(2));
+		assertEquals(1, cache.size());
+
+		cache.put(3, "3", 50);
+		ThreadUtil.sleep(100);
+		assertEquals(1, cache.prune());
+		assertEquals("1", cache.get(1));
+	}
+
+	@Test
+	public void testRandomOperations() {
+		LongLRUCache<Long> cache = new LongLRUCache<Long>(1000);
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		Random random = new Random(7);
+
+		// keys from small range, so cache never evicts and must match the map
+		for (int i = 0; i < 100000; i++) {
+			long key = random.nextInt(900) * 1024L;
+			if (random.nextInt(3) == 0) {
+				cache.remove(key);
+				expected.remove(key);
+			} else {
+				Long value = Long.valueOf(i);
+				cache.put(key, value);
+				expected.put(key, value);
+			}
+			long probe = random.nextInt(900) * 1024L;
+			assertEquals(expected.get(probe), cache.get(probe));
+		}
+		assertEquals(expected.size(), cache.size());
+
+		cache.clear();
+		assertTrue(cache.isEmpty());
+		assertNull(cache.get(0));
+	}
+}
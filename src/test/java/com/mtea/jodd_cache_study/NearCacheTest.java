@@ -0,0 +1,74 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class NearCacheTest {
+
+	@Test
+	public void testNearCache() {
+		LFUCache<String, String> lfu = new LFUCache<String, String>(10);
+		NearCache<String, String> cache = new NearCache<String, String>(lfu, 16, 10000);
+		cache.put("1", "one");
+		assertEquals("one", cache.get("1"));		// read through
+		assertEquals("one", cache.get("1"));		// from thread table
+		assertEquals("one", cache.get("1"));
+		assertEquals(1, lfu.cacheMap.get("1").getAccessCount());
+
+		cache.put("1", "ONE");
+		assertEquals("ONE", cache.get("1"));
+
+		lfu.remove("1");							// directly on the backing cache
+		assertNull(cache.get("1"));
+
+		lfu.put("2", "two");
+		assertEquals("two", cache.get("2"));
+		lfu.clear();
+		assertNull(cache.get("2"));
+		assertNull(cache.get("3"));
+	}
+
+	@Test
+	public void testWindow() {
+		LRUCache<String, String> lru = new LRUCache<String, String>(10, 30);
+		NearCache<String, String> cache = new NearCache<String, String>(lru, 4, 10);
+		cache.put("1", "one");
+		assertEquals("one", cache.get("1"));
+		ThreadUtil.sleep(60);
+		assertNull(cache.get("1"));				// window passed, backing object expired
+	}
+
+	@Test
+	public void testOtherThread() throws InterruptedException {
+		final NearCache<String, String> cache = new NearCache<String, String>(new LRUCache<String, String>(10), 4, 10000);
+		cache.put("1", "one");
+		assertEquals("one", cache.get("1"));
+
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				cache.get("1");
+				cache.put("1", "uno");
+			}
+		};
+		thread.start();
+		thread.join();
+		assertEquals("uno", cache.get("1"));
+
+		final AtomicReference<String> other = new AtomicReference<String>();
+		thread = new Thread() {
+			@Override
+			public void run() {
+				other.set(cache.get("1"));
+			}
+		};
+		thread.start();
+		thread.join();
+		assertEquals("uno", other.get());
+	}
+}
@@ -0,0 +1,183 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OffHeapCacheTest {
+
+	private OffHeapCache<String, String> cache(OffHeapCache.Policy policy, int cacheSize, long maxBytes) {
+		return new OffHeapCache<String, String>(policy, cacheSize, maxBytes, 256, 0, new StringCodec());
+	}
+
+	@Test
+	public void testLRU() {
+		Cache<String, String> cache = cache(OffHeapCache.Policy.LRU, 3, 1024);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		assertTrue(cache.isFull());
+
+		assertEquals("1", cache.get("1"));
+		cache.put("4", "4");
+		assertNull(cache.get("2"));
+		assertEquals("1", cache.get("1"));
+		assertEquals("3", cache.get("3"));
+		assertEquals("4", cache.get("4"));
+	}
+
+	@Test
+	public void testLFU() {
+		Cache<String, String> cache = cache(OffHeapCache.Policy.LFU, 3, 1024);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		cache.get("1");
+		cache.get("2");
+		cache.get("1");
+		cache.put("4", "4");
+		assertNull(cache.get("3"));
+		assertEquals("1", cache.get("1"));
+		assertEquals("2", cache.get("2"));
+	}
+
+	@Test
+	public void testFIFO() {
+		Cache<String, String> cache = cache(OffHeapCache.Policy.FIFO, 2, 1024);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.get("1");
+		cache.put("3", "3");
+		assertNull(cache.get("1"));
+
+		Iterator<String> values = cache.iterator();
+		assertEquals("2", values.next());
+		assertEquals("3", values.next());
+		assertFalse(values.hasNext());
+	}
+
+	@Test
+	public void testMemoryLimit() {
+		// two slabs, 64 bytes chunks: 8 values at most
+		OffHeapCache<String, String> cache = cache(OffHeapCache.Policy.FIFO, 0, 512);
+		for (int i = 0; i < 10; i++) {
+			cache.put(String.valueOf(i), "value" + i);
+		}
+		assertEquals(8, cache.size());
+		assertEquals(512, cache.getOffHeapSize());
+		assertEquals(512, cache.getUsedOffHeapSize());
+		assertNull(cache.get("0"));
+		assertEquals("value9", cache.get("9"));
+
+		cache.remove("9");
+		assertEquals(448, cache.getUsedOffHeapSize());
+		cache.put("a", "a");
+		assertEquals(512, cache.getOffHeapSize());
+
+		cache.put("big", new String(new char[300]));    // larger than slab
+		assertNull(cache.get("big"));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getOffHeapSize());
+	}
+
+	@Test
+	public void testSlabsMoveBetweenSizeClasses() {
+		// two slabs, both taken by 64 bytes chunks
+		OffHeapCache<String, String> cache = new OffHeapCache<String, String>(OffHeapCache.Policy.FIFO, 0, 2048, 1024, 0, new StringCodec());
+		for (int i = 0; i < 32; i++) {
+			cache.put(String.valueOf(i), "v" + i);
+		}
+		assertEquals(32, cache.size());
+
+		String large = new String(new char[500]);
+		cache.put("large", large);
+		assertEquals(large, cache.get("large"));
+		assertEquals(17, cache.size());			// the first slab is freed and reused
+		assertNull(cache.get("15"));
+		assertEquals("v16", cache.get("16"));
+		assertEquals(2048, cache.getOffHeapSize());
+	}
+
+	@Test
+	public void testEvictionBySizeClass() {
+		// one slab of 64 bytes chunks, one of 128 bytes chunks
+		OffHeapCache<String, String> cache = cache(OffHeapCache.Policy.FIFO, 0, 512);
+		for (int i = 0; i < 4; i++) {
+			cache.put("s" + i, "s" + i);
+		}
+		String medium = new String(new char[90]);		// 128 bytes chunk
+		for (int i = 0; i < 2; i++) {
+			cache.put("m" + i, medium);
+		}
+		cache.put("m2", medium);
+		assertNull(cache.get("m0"));			// chunk of the same size class is reused
+		assertEquals("s0", cache.get("s0"));
+		assertEquals(6, cache.size());
+
+		cache.put("s4", "s4");
+		assertNull(cache.get("s0"));
+		assertEquals(medium, cache.get("m1"));
+	}
+
+	@Test
+	public void testLFUManyOperations() {
+		OffHeapCache<String, String> cache = cache(OffHeapCache.Policy.LFU, 50, 64 * 1024);
+		Random random = new Random(1);
+		for (int i = 0; i < 20000; i++) {
+			String key = String.valueOf(random.nextInt(200));
+			String value = cache.get(key);
+			if (value == null) {
+				cache.put(key, key + (i % 2 == 0 ? "" : new String(new char[70])));
+			} else {
+				assertTrue(value.startsWith(key));
+			}
+			if (i % 13 == 0) {
+				cache.remove(String.valueOf(random.nextInt(200)));
+			}
+			assertTrue(cache.size() <= 50);
+		}
+		int count = 0;
+		Iterator<String> values = cache.iterator();
+		while (values.hasNext()) {
+			assertNotNull(values.next());
+			count++;
+		}
+		assertEquals(cache.size(), count);
+		cache.clear();
+		assertTrue(cache.isEmpty());
+	}
+
+	@Test
+	public void testFailedPutRemovesOldValue() {
+		OffHeapCache<String, String> cache = cache(OffHeapCache.Policy.LRU, 0, 1024);
+		cache.put("1", "1");
+		cache.put("1", new String(new char[300]));		// larger than slab
+		assertNull(cache.get("1"));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getUsedOffHeapSize());
+
+		try {
+			cache(OffHeapCache.Policy.LRU, 0, 100);
+			fail();
+		} catch (IllegalArgumentException ignore) {
+		}
+	}
+
+	@Test
+	public void testTimeout() {
+		Cache<String, String> cache = cache(OffHeapCache.Policy.LRU, 3, 1024);
+		cache.put("1", "1", 50);
+		cache.put("2", "2");
+		ThreadUtil.sleep(100);
+		assertNull(cache.get("1"));
+		assertEquals(0, cache.prune());
+		assertEquals(1, cache.size());
+	}
+}
@@ -0,0 +1,152 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ParallelSweepTest {
+
+	@Test
+	public void testSweep() {
+		TimedCache<Integer, Integer> cache = new TimedCache<Integer, Integer>(0);
+		for (int i = 0; i < 50000; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i), (i % 2 == 0) ? 10 : 0);
+		}
+		ThreadUtil.sleep(50);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(25000, cache.sweepExpired(pool));
+			assertEquals(0, cache.sweepExpired(pool));
+		}
+		finally {
+			pool.shutdown();
+		}
+		assertEquals(25000, cache.size());
+		assertNull(cache.get(Integer.valueOf(0)));
+		assertEquals(Integer.valueOf(1), cache.get(Integer.valueOf(1)));
+	}
+
+	@Test
+	public void testReplacedNotRemoved() {
+		LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(0);
+		cache.put(Integer.valueOf(1), Integer.valueOf(1), 10);
+		cache.put(Integer.valueOf(2), Integer.valueOf(2), 10);
+		ThreadUtil.sleep(50);
+
+		Object[][] snapshot = cache.snapshotReferences(16);
+		cache.put(Integer.valueOf(1), Integer.valueOf(11));		// replaced after the snapshot
+		int[] indexes = new int[] {0, 1};
+		assertEquals(1, cache.removeExpired(snapshot[0], (AbstractCacheMap.CacheObject<?>[]) snapshot[1], indexes, 2));
+		assertEquals(Integer.valueOf(11), cache.get(Integer.valueOf(1)));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testChunkedSnapshot() {
+		LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(0);
+		for (int i = 0; i < 10; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		Object[][] snapshot = cache.snapshotReferences(3);
+		assertEquals(10, snapshot[0].length);
+		assertEquals(10, snapshot[1].length);
+		assertEquals(10, new HashSet<Object>(Arrays.asList(snapshot[0])).size());
+	}
+
+	@Test
+	public void testScanWithConcurrentChanges() {
+		LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(0);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		Object[] keys = new Object[16];
+		AbstractCacheMap.CacheObject<?>[] objects = new AbstractCacheMap.CacheObject<?>[16];
+		Set<Object> scanned = new HashSet<Object>();
+		int position = 0;
+		int next = 1000;
+		while (true) {
+			int count = cache.scanReferences(position, 16, keys, objects, 0);
+			if (count == -1) {
+				break;
+			}
+			for (int i = 0; i < count; i++) {
+				assertTrue(scanned.add(keys[i]));		// never copied twice
+			}
+			position += 16;
+
+			// 访问顺序, 删除, 新增和扩容都不影响已有对象的位置
+			for (int i = 0; i < 1000; i += 37) {
+				cache.get(Integer.valueOf(i));
+			}
+			cache.remove(Integer.valueOf(999 - position / 16));
+			for (int i = 0; i < 5; i++) {
+				cache.put(Integer.valueOf(next), Integer.valueOf(next));
+				next++;
+			}
+		}
+		for (int i = 0; i < 900; i++) {
+			assertTrue(scanned.contains(Integer.valueOf(i)));
+		}
+	}
+
+	@Test
+	public void testSweepWithConcurrentWrites() throws InterruptedException {
+		final TimedCache<Integer, Integer> cache = new TimedCache<Integer, Integer>(0);
+		for (int i = 0; i < 50000; i++) {
+			cache.put(Integer.valueOf(i), Integer.valueOf(i), 10);
+		}
+		ThreadUtil.sleep(50);
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				int i = 100000;
+				while (running.get()) {
+					cache.put(Integer.valueOf(i++), Integer.valueOf(i));
+				}
+			}
+		};
+		writer.start();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			int removed = 0;
+			for (int i = 0; i < 10 && removed < 50000; i++) {
+				removed += cache.sweepExpired(pool);		// missed objects are swept next time
+			}
+			assertEquals(50000, removed);
+		}
+		finally {
+			running.set(false);
+			writer.join();
+			pool.shutdown();
+		}
+		assertNull(cache.get(Integer.valueOf(0)));
+	}
+
+	@Test
+	public void testScheduledSweep() {
+		TimedCache<String, String> cache = new TimedCache<String, String>(20);
+		cache.setParallelSweep(true);
+		cache.schedulePrune(10);
+		try {
+			cache.put("1", "1");
+			cache.put("2", "2");
+			for (int i = 0; i < 100 && cache.size() > 0; i++) {
+				ThreadUtil.sleep(10);
+			}
+			assertEquals(0, cache.size());
+		}
+		finally {
+			cache.cancelPruneSchedule();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PolicyCacheTest {
+
+	@Test
+	public void testLRU() {
+		RemovalListenerTest.Recorder recorder = new RemovalListenerTest.Recorder();
+		PolicyCache<String, String> cache = new PolicyCache<String, String>(2, new LRUEvictionPolicy<String>());
+		cache.setRemovalListener(recorder, RemovalListenerTest.SAME_THREAD);
+		cache.put("1", "a");
+		cache.put("2", "b");
+		cache.get("1");
+		cache.put("3", "c");
+		assertNull(cache.get("2"));
+		assertEquals("a", cache.get("1"));
+		cache.remove("3");
+		assertEquals("[2=b:SIZE, 3=c:EXPLICIT]", recorder.removals.toString());
+
+		cache = new PolicyCache<String, String>(3, new LRUEvictionPolicy<String>());
+		cache.put("1", "a");
+		cache.put("2", "b");
+		cache.put("1", "A");			// replace counts as access
+		cache.put("3", "c");
+		cache.put("4", "d");
+		assertNull(cache.get("2"));
+		assertEquals("A", cache.get("1"));
+	}
+
+	@Test
+	public void testFIFO() {
+		PolicyCache<String, String> cache = new PolicyCache<String, String>(2, new FIFOEvictionPolicy<String>());
+		cache.put("1", "a");
+		cache.put("2", "b");
+		cache.get("1");
+		cache.put("3", "c");
+		assertNull(cache.get("1"));
+		assertEquals("b", cache.get("2"));
+		assertEquals("c", cache.get("3"));
+	}
+
+	@Test
+	public void testLFU() {
+		LFUEvictionPolicy<String> policy = new LFUEvictionPolicy<String>();
+		PolicyCache<String, String> cache = new PolicyCache<String, String>(3, policy);
+		cache.put("1", "a");
+		cache.put("2", "b");
+		cache.put("3", "c");
+		cache.get("1");
+		cache.get("1");
+		cache.get("2");
+		assertEquals(3, policy.getFrequency("1"));
+		assertEquals(2, policy.getFrequency("2"));
+		assertEquals(1, policy.getFrequency("3"));
+
+		cache.put("4", "d");
+		assertNull(cache.get("3"));
+		cache.put("5", "e");			// 4 and 5 have the same frequency, 4 is older
+		assertNull(cache.get("4"));
+		assertEquals(0, policy.getFrequency("4"));
+		assertEquals("a", cache.get("1"));
+		assertEquals("b", cache.get("2"));
+	}
+
+	@Test
+	public void testTimeoutAndClear() {
+		PolicyCache<String, String> cache = new PolicyCache<String, String>(2, 20, new LFUEvictionPolicy<String>());
+		cache.put("1", "a");
+		cache.put("2", "b", 0);
+		ThreadUtil.sleep(50);
+		cache.put("3", "c");			// 1 is expired, so no eviction
+		assertEquals("b", cache.get("2"));
+		assertEquals(2, cache.size());
+		cache.clear();
+		assertNull(cache.getPolicy().selectVictim());
+	}
+
+	@Test
+	public void testConsistency() {
+		LFUEvictionPolicy<Integer> policy = new LFUEvictionPolicy<Integer>();
+		PolicyCache<Integer, Integer> cache = new PolicyCache<Integer, Integer>(50, policy);
+		Random random = new Random(7);
+		for (int i = 0; i < 20000; i++) {
+			Integer key = Integer.valueOf(random.nextInt(200));
+			switch (random.nextInt(4)) {
+				case 0:
+					cache.remove(key);
+					break;
+				case 1:
+					cache.put(key, key);
+					break;
+				default:
+					if (cache.get(key) == null) {
+						cache.put(key, key);
+					}
+			}
+			assertTrue(cache.size() <= 50);
+		}
+		int count = 0;
+		while (policy.selectVictim() != null) {
+			Integer victim = policy.selectVictim();
+			assertNotNull(cache.get(victim));
+			policy.onRemove(victim);
+			count++;
+		}
+		assertEquals(cache.size(), count);
+	}
+}
@@ -0,0 +1,99 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RemovalListenerTest {
+
+	static class Recorder implements RemovalListener<String, String> {
+		final List<String> removals = new ArrayList<String>();
+
+		public synchronized void onRemoval(String key, String value, RemovalCause cause) {
+			removals.add(key + '=' + value + ':' + cause);
+		}
+	}
+
+	static final Executor SAME_THREAD = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Test
+	public void testLRU() {
+		Recorder recorder = new Recorder();
+		LRUCache<String, String> cache = new LRUCache<String, String>(2);
+		cache.setRemovalListener(recorder, SAME_THREAD);
+
+		cache.put("1", "a");
+		cache.put("1", "b");
+		cache.put("2", "c");
+		cache.put("3", "d");
+		cache.remove("2");
+		cache.put("4", "e", 10);
+		ThreadUtil.sleep(50);
+		assertNull(cache.get("4"));
+		cache.clear();
+
+		assertEquals("[1=a:REPLACED, 1=b:SIZE, 2=c:EXPLICIT, 4=e:EXPIRED, 3=d:EXPLICIT]", recorder.removals.toString());
+	}
+
+	@Test
+	public void testFIFOAndLFU() {
+		Recorder recorder = new Recorder();
+		FIFOCache<String, String> fifo = new FIFOCache<String, String>(2);
+		fifo.setRemovalListener(recorder, SAME_THREAD);
+		fifo.put("1", "a");
+		fifo.put("2", "b", 10);
+		ThreadUtil.sleep(50);
+		fifo.put("3", "c");
+		fifo.put("4", "d");
+		assertEquals("[2=b:EXPIRED, 1=a:SIZE]", recorder.removals.toString());
+
+		recorder = new Recorder();
+		LFUCache<String, String> lfu = new LFUCache<String, String>(2);
+		lfu.setRemovalListener(recorder, SAME_THREAD);
+		lfu.put("1", "a");
+		lfu.get("1");
+		lfu.put("2", "b");
+		lfu.put("3", "c");
+		assertEquals("[2=b:SIZE]", recorder.removals.toString());
+	}
+
+	@Test
+	public void testTimed() {
+		Recorder recorder = new Recorder();
+		TimedCache<String, String> cache = new TimedCache<String, String>(10);
+		cache.setRemovalListener(recorder, SAME_THREAD);
+		cache.put("1", "a");
+		ThreadUtil.sleep(50);
+		assertEquals(1, cache.prune());
+		assertEquals("[1=a:EXPIRED]", recorder.removals.toString());
+	}
+
+	@Test
+	public void testAsyncDispatch() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final List<Thread> threads = new ArrayList<Thread>();
+		LRUCache<String, String> cache = new LRUCache<String, String>(1);
+		cache.setRemovalListener(new RemovalListener<String, String>() {
+			public void onRemoval(String key, String value, RemovalCause cause) {
+				threads.add(Thread.currentThread());
+				latch.countDown();
+			}
+		});
+		cache.put("1", "a");
+		cache.put("2", "b");
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertNotSame(Thread.currentThread(), threads.get(0));
+	}
+}
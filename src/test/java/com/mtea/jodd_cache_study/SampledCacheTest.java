@@ -0,0 +1,123 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampledCacheTest {
+
+	@Test
+	public void testAccessCount() {
+		SampledCache<Integer, String> cache = new SampledCache<Integer, String>(10, 0, SampledCache.Metric.ACCESS_COUNT, 100);
+		for (int i = 0; i < 10; i++) {
+			cache.put(Integer.valueOf(i), "v" + i);
+		}
+		for (int i = 0; i < 9; i++) {
+			cache.get(Integer.valueOf(i));
+		}
+		cache.put(Integer.valueOf(10), "v10");
+		assertEquals(10, cache.size());
+		assertNull(cache.get(Integer.valueOf(9)));
+		for (int i = 0; i < 9; i++) {
+			assertNotNull(cache.get(Integer.valueOf(i)));
+		}
+	}
+
+	@Test
+	public void testLastAccess() {
+		SampledCache<Integer, String> cache = new SampledCache<Integer, String>(3, 0, SampledCache.Metric.LAST_ACCESS, 50);
+		cache.put(Integer.valueOf(1), "1");
+		ThreadUtil.sleep(5);
+		cache.put(Integer.valueOf(2), "2");
+		ThreadUtil.sleep(5);
+		cache.put(Integer.valueOf(3), "3");
+		ThreadUtil.sleep(5);
+		cache.get(Integer.valueOf(1));
+		cache.put(Integer.valueOf(4), "4");
+		assertNull(cache.get(Integer.valueOf(2)));
+		assertNotNull(cache.get(Integer.valueOf(1)));
+	}
+
+	@Test
+	public void testExpiry() {
+		SampledCache<Integer, String> cache = new SampledCache<Integer, String>(3, 0, SampledCache.Metric.EXPIRY, 50);
+		cache.put(Integer.valueOf(1), "1");
+		cache.put(Integer.valueOf(2), "2", 5000);
+		cache.put(Integer.valueOf(3), "3", 10000);
+		cache.put(Integer.valueOf(4), "4");
+		assertNull(cache.get(Integer.valueOf(2)));
+		cache.put(Integer.valueOf(5), "5");
+		assertNull(cache.get(Integer.valueOf(3)));
+		assertNotNull(cache.get(Integer.valueOf(1)));
+	}
+
+	@Test
+	public void testExpiredFirst() {
+		SampledCache<Integer, String> cache = new SampledCache<Integer, String>(3, 0, SampledCache.Metric.ACCESS_COUNT, 50);
+		cache.put(Integer.valueOf(1), "1", 20);
+		cache.put(Integer.valueOf(2), "2");
+		cache.put(Integer.valueOf(3), "3");
+		ThreadUtil.sleep(50);
+		cache.get(Integer.valueOf(2));
+		cache.get(Integer.valueOf(3));
+		cache.put(Integer.valueOf(4), "4");
+		assertEquals(3, cache.size());
+		assertNotNull(cache.get(Integer.valueOf(2)));
+		assertNotNull(cache.get(Integer.valueOf(3)));
+
+		cache.put(Integer.valueOf(5), "5", 20);
+		cache.remove(Integer.valueOf(4));
+		ThreadUtil.sleep(50);
+		assertEquals(1, cache.prune());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testEpochInvalidation() {
+		SampledCache<String, String> cache = new SampledCache<String, String>(3, SampledCache.Metric.LAST_ACCESS);
+		cache.setEpochInvalidation(true, new EpochInvalidationTest.QueueExecutor());
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		cache.clear();
+		assertNull(cache.get("1"));
+
+		// stale objects are pruned first
+		cache.put("4", "4");
+		cache.put("5", "5");
+		cache.put("6", "6");
+		assertEquals("4", cache.get("4"));
+		assertEquals("5", cache.get("5"));
+		assertEquals("6", cache.get("6"));
+
+		cache.reclaim();
+		assertEquals(3, cache.size());
+		assertNull(cache.get("3"));
+	}
+
+	@Test
+	public void testManyOperations() {
+		SampledCache<Integer, Integer> cache = new SampledCache<Integer, Integer>(100, SampledCache.Metric.ACCESS_COUNT);
+		for (int i = 0; i < 10000; i++) {
+			Integer key = Integer.valueOf(i % 300);
+			if (cache.get(key) == null) {
+				cache.put(key, key);
+			}
+			if (i % 7 == 0) {
+				cache.remove(Integer.valueOf(i % 100));
+			}
+			assertTrue(cache.size() <= 100);
+		}
+		int count = 0;
+		CacheValuesIterator<Integer> iterator = (CacheValuesIterator<Integer>) cache.iterator();
+		while (iterator.hasNext()) {
+			assertNotNull(iterator.next());
+			count++;
+		}
+		assertEquals(cache.size(), count);
+		cache.clear();
+		assertTrue(cache.isEmpty());
+	}
+}
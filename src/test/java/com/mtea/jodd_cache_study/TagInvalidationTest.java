@@ -0,0 +1,89 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.SystemUtil;
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class TagInvalidationTest {
+
+	@Test
+	public void testInvalidateTag() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(10);
+		cache.put("user:1:profile", "p1", "user:1");
+		cache.put("user:1:orders", "o1", "user:1", "orders");
+		cache.put("user:2:orders", "o2", "user:2", "orders");
+		cache.put("other", "x");
+		assertEquals(2, cache.getTagSize("user:1"));
+		assertEquals(2, cache.getTagSize("orders"));
+
+		assertEquals(2, cache.invalidateTag("user:1"));
+		assertNull(cache.get("user:1:profile"));
+		assertNull(cache.get("user:1:orders"));
+		assertEquals("o2", cache.get("user:2:orders"));
+		assertEquals(1, cache.getTagSize("orders"));	// removed from other tags, too
+
+		assertEquals(1, cache.invalidateTag("orders"));
+		assertEquals(0, cache.invalidateTag("orders"));
+		assertEquals(0, cache.invalidateTag("none"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEvictionAndExpiry() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(2);
+		cache.put("1", "1", "t");
+		cache.put("2", "2", 20L, new Object[] {"t"});
+		cache.put("3", "3");						// 1 is evicted
+		assertEquals(1, cache.getTagSize("t"));
+		ThreadUtil.sleep(50);
+		assertNull(cache.get("2"));
+		assertEquals(0, cache.getTagSize("t"));
+		assertEquals(0, cache.invalidateTag("t"));
+		assertEquals("3", cache.get("3"));
+	}
+
+	@Test
+	public void testReplace() {
+		LFUCache<String, String> cache = new LFUCache<String, String>(10);
+		cache.put("1", "a", "old");
+		cache.put("1", "b", "new");
+		assertEquals(0, cache.getTagSize("old"));
+		assertEquals(0, cache.invalidateTag("old"));
+		assertEquals("b", cache.get("1"));
+
+		cache.put("1", "c");						// untagged now
+		assertEquals(0, cache.invalidateTag("new"));
+		assertEquals("c", cache.get("1"));
+
+		cache.put("2", "d", "new");
+		cache.remove("2");
+		cache.clear();
+		assertEquals(0, cache.getTagSize("new"));
+	}
+
+	@Test
+	public void testOverflowStore() throws Exception {
+		File folder = new File(SystemUtil.getTempDir(), "overflow-tag-test");
+		DiskOverflowStore<String, String> store = new DiskOverflowStore<String, String>(folder, new StringCodec(), 1024, 256);
+		try {
+			LRUCache<String, String> cache = new LRUCache<String, String>(1);
+			cache.setOverflowStore(store);
+			cache.put("1", "1", "t");
+			cache.put("2", "2");					// tagged 1 is evicted, not stored
+			cache.put("3", "3");					// 2 goes to disk
+			assertEquals(1, store.size());
+
+			assertEquals(0, cache.invalidateTag("t"));
+			assertNull(cache.get("1"));				// stale copy can't come back
+			assertEquals("2", cache.get("2"));
+		}
+		finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TwoQueueCacheTest {
+
+	@Test
+	public void testCache() {
+		TwoQueueCache<String, String> cache = new TwoQueueCache<String, String>(4, 0, 2, 2);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		cache.put("4", "4");
+		assertTrue(cache.isFull());
+
+		assertEquals("1", cache.get("1"));		// promoted
+		assertTrue(cache.protect.contains("1"));
+
+		cache.put("5", "5");					// oldest probationary is 2
+		assertNull(cache.get("2"));
+		assertTrue(cache.ghost.contains("2"));
+		assertEquals("1", cache.get("1"));
+
+		cache.put("2", "2");					// ghost hit, goes to protected queue
+		assertTrue(cache.protect.contains("2"));
+		assertFalse(cache.ghost.contains("2"));
+		assertEquals(4, cache.size());
+	}
+
+	@Test
+	public void testDemotion() {
+		TwoQueueCache<String, String> cache = new TwoQueueCache<String, String>(4, 0, 2, 2);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");
+		cache.get("1");
+		cache.get("2");
+		cache.get("3");							// 1 is demoted
+		assertEquals(2, cache.protect.size());
+		assertTrue(cache.probation.contains("1"));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testUpdateWhenFull() {
+		TwoQueueCache<String, String> cache = new TwoQueueCache<String, String>(2, 0, 1, 2);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("1", "11");              // 1 is the oldest probationary, but it is being inserted
+		assertEquals("11", cache.get("1"));
+		assertNull(cache.get("2"));
+		assertFalse(cache.ghost.contains("1"));
+		assertTrue(cache.ghost.contains("2"));
+
+		TwoQueueCache<String, String> single = new TwoQueueCache<String, String>(1, 0, 0, 1);
+		single.put("1", "1");
+		single.put("1", "11");
+		assertEquals("11", single.get("1"));
+		assertEquals(1, single.size());
+		assertTrue(single.ghost.isEmpty());
+	}
+
+	@Test
+	public void testScanResistance() {
+		TwoQueueCache<Integer, String> cache = new TwoQueueCache<Integer, String>(100);
+		LRUCache<Integer, String> lru = new LRUCache<Integer, String>(100);
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < 50; i++) {
+				Integer key = Integer.valueOf(i);
+				if (cache.get(key) == null) {
+					cache.put(key, "hot");
+				}
+				if (lru.get(key) == null) {
+					lru.put(key, "hot");
+				}
+			}
+		}
+		for (int i = 1000; i < 2000; i++) {
+			cache.put(Integer.valueOf(i), "scan");
+			lru.put(Integer.valueOf(i), "scan");
+		}
+		int hits = 0;
+		int lruHits = 0;
+		for (int i = 0; i < 50; i++) {
+			if (cache.get(Integer.valueOf(i)) != null) {
+				hits++;
+			}
+			if (lru.get(Integer.valueOf(i)) != null) {
+				lruHits++;
+			}
+		}
+		assertEquals(50, hits);
+		assertEquals(0, lruHits);
+	}
+
+	@Test
+	public void testTimeoutAndClear() {
+		TwoQueueCache<String, String> cache = new TwoQueueCache<String, String>(3);
+		cache.put("1", "1", 50);
+		cache.put("2", "2");
+		ThreadUtil.sleep(100);
+		assertEquals(1, cache.prune());
+		assertEquals(1, cache.size());
+		assertTrue(cache.probation.contains("2"));
+		assertFalse(cache.probation.contains("1"));
+
+		cache.clear();
+		assertTrue(cache.isEmpty());
+		assertTrue(cache.probation.isEmpty() && cache.protect.isEmpty() && cache.ghost.isEmpty());
+	}
+}
@@ -0,0 +1,257 @@
+package com.mtea.jodd_cache_study;
+// Copyright (c) 2003-2012, Jodd Team (jodd.org). All Rights Reserved.
+
+import jodd.exception.UncheckedException;
+import jodd.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindCacheTest {
+
+	/**
+	 * In-memory fake store.
+	 */
+	static class FakeStore implements CacheWriter<String, String> {
+		final Map<String, String> data = new ConcurrentHashMap<String, String>();
+		final AtomicInteger batches = new AtomicInteger();
+		final AtomicInteger writes = new AtomicInteger();
+		volatile boolean fail;
+		volatile long delay;
+
+		public void write(Map<String, String> objects) throws Exception {
+			ThreadUtil.sleep(delay);
+			if (fail) {
+				throw new Exception("store down");
+			}
+			batches.incrementAndGet();
+			writes.addAndGet(objects.size());
+			data.putAll(objects);
+		}
+
+		public void delete(Collection<String> keys) throws Exception {
+			if (fail) {
+				throw new Exception("store down");
+			}
+			batches.incrementAndGet();
+			for (String key : keys) {
+				data.remove(key);
+			}
+		}
+	}
+
+	@Test
+	public void testCoalescing() {
+		FakeStore store = new FakeStore();
+		WriteBehindCache<String, String> cache = new WriteBehindCache<String, String>(
+				new LRUCache<String, String>(10), store, 100, 10000, 1000);
+
+		cache.put("1", "a");
+		cache.put("1", "b");
+		cache.put("1", "c");
+		cache.put("2", "x");
+		cache.remove("2");
+		cache.put("3", "y");
+		assertEquals(3, cache.getDirtyCount());
+		assertTrue(store.data.isEmpty());
+
+		assertEquals(3, cache.flush());
+		assertEquals(2, store.writes.get());
+		assertEquals("c", store.data.get("1"));
+		assertEquals("y", store.data.get("3"));
+		assertFalse(store.data.containsKey("2"));
+		assertEquals(0, cache.getDirtyCount());
+		assertEquals(0, cache.flush());
+		cache.close();
+	}
+
+	/**
+	 * Pauses the writer of value "a", or a remove, right after the wrapped cache is changed.
+	 */
+	static class PausingCache extends LRUCache<String, String> {
+		final CountDownLatch paused = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+
+		PausingCache() {
+			super(10);
+		}
+
+		@Override
+		public void put(String key, String object, long timeout) {
+			super.put(key, object, timeout);
+			if ("a".equals(object)) {
+				pause();
+			}
+		}
+
+		@Override
+		public void remove(String key) {
+			super.remove(key);
+			pause();
+		}
+
+		private void pause() {
+			paused.countDown();
+			try {
+				proceed.await(1, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentPutsOfSameKey() throws InterruptedException {
+		FakeStore store = new FakeStore();
+		PausingCache lru = new PausingCache();
+		final WriteBehindCache<String, String> cache = new WriteBehindCache<String, String>(lru, store, 100, 10000, 1000);
+
+		Thread first = new Thread() {
+			@Override
+			public void run() {
+				cache.put("1", "a");
+			}
+		};
+		Thread second = new Thread() {
+			@Override
+			public void run() {
+				cache.put("1", "b");
+			}
+		};
+		first.start();
+		lru.paused.await();
+		second.start();
+		second.join(200);			// must wait for the first put to complete
+		lru.proceed.countDown();
+		first.join();
+		second.join();
+
+		cache.flush();
+		assertEquals(lru.get("1"), store.data.get("1"));
+		cache.close();
+	}
+
+	@Test
+	public void testGetDuringRemove() throws InterruptedException {
+		FakeStore store = new FakeStore();
+		PausingCache lru = new PausingCache();
+		final WriteBehindCache<String, String> cache = new WriteBehindCache<String, String>(lru, store, 100, 10000, 1000);
+		cache.put("1", "x");
+
+		Thread remover = new Thread() {
+			@Override
+			public void run() {
+				cache.remove("1");
+			}
+		};
+		final AtomicReference<String> read = new AtomicReference<String>("none");
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				read.set(cache.get("1"));
+			}
+		};
+		remover.start();
+		lru.paused.await();
+		reader.start();
+		reader.join(200);
+		lru.proceed.countDown();
+		remover.join();
+		reader.join();
+
+		assertNull(read.get());		// dirty value must not be seen after remove
+		cache.close();
+	}
+
+	@Test
+	public void testFlushBySizeAndTime() {
+		FakeStore store = new FakeStore();
+		WriteBehindCache<String, String> cache = new WriteBehindCache<String, String>(
+				new LRUCache<String, String>(100), store, 5, 100, 50);
+
+		for (int i = 0; i < 5; i++) {
+			cache.put(String.valueOf(i), "v" + i);
+		}
+		for (int i = 0; i < 100 && store.data.size() < 5; i++) {
+			ThreadUtil.sleep(5);
+		}
+		assertEquals(5, store.data.size());
+
+		cache.put("x", "x");
+		ThreadUtil.sleep(300);
+		assertEquals("x", store.data.get("x"));
+		cache.close();
+	}
+
+	@Test
+	public void testPinnedUntilFlushed() {
+		FakeStore store = new FakeStore();
+		WriteBehindCache<String, String> cache = new WriteBehindCache<String, String>(
+				new LRUCache<String, String>(2), store, 100, 10000, 100);
+		cache.put("1", "1");
+		cache.put("2", "2");
+		cache.put("3", "3");					// 1 is evicted from LRU
+		assertEquals(2, cache.size());
+		assertEquals("1", cache.get("1"));		// but still readable
+		cache.flush();
+		assertNull(cache.get("1"));
+		assertEquals("1", store.data.get("1"));
+		cache.close();
+	}
+
+	@Test
+	public void testFailureRetry() {
+		FakeStore store = new FakeStore();
+		WriteBehindCache<String, String> cache = new WriteBehindCache<String, String>(
+				new LRUCache<String, String>(10), store, 100, 10000, 100);
+		cache.put("1", "a");
+		cache.put("2", "b");
+		store.fail = true;
+		try {
+			cache.flush();
+			fail();
+		}
+		catch (UncheckedException ignore) {
+		}
+		assertNotNull(cache.getLastError());
+		assertEquals(2, cache.getDirtyCount());
+
+		cache.put("1", "newer");
+		store.fail = false;
+		assertEquals(2, cache.flush());
+		assertEquals("newer", store.data.get("1"));
+		assertEquals("b", store.data.get("2"));
+		cache.close();
+	}
+
+	@Test
+	public void testBackpressure() throws InterruptedException {
+		final FakeStore store = new FakeStore();
+		store.delay = 20;
+		final WriteBehindCache<String, String> cache = new WriteBehindCache<String, String>(
+				new LRUCache<String, String>(1000), store, 2, 10000, 4);
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 40; i++) {
+					cache.put(String.valueOf(i), "v");
+					assertTrue(cache.getDirtyCount() <= 8);
+				}
+			}
+		};
+		writer.start();
+		writer.join();
+		cache.close();
+		assertEquals(40, store.data.size());
+		assertEquals(0, cache.getDirtyCount());
+	}
+}